@@ -0,0 +1,112 @@
+/*
+ * Copyright 2013 Classmethod, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.classmethod.testing.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import jp.classmethod.testing.database.BinaryDataSet;
+import jp.classmethod.testing.database.YamlDataSet;
+
+import org.dbunit.dataset.DataSetException;
+import org.dbunit.dataset.IDataSet;
+
+/**
+ * ベンチマークで利用するフィクスチャを生成するクラス。
+ * <p>usersテーブルに、id、name、age、emailの4カラムのレコードを指定した件数だけ生成する。</p>
+ *
+ * @since 1.0
+ * @author shuji
+ */
+class BenchmarkFixtures {
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+    static final String TABLE = "users";
+    static final String[] COLUMNS = { "id", "name", "age", "email" };
+
+    private BenchmarkFixtures() {
+    }
+
+    static String yaml(int rows) {
+        StringBuilder yaml = new StringBuilder(rows * 64).append(TABLE).append(":\n");
+        for (int i = 1; i <= rows; i++) {
+            yaml.append("  - id: ").append(i).append('\n');
+            yaml.append("    name: user").append(i).append('\n');
+            yaml.append("    age: ").append(20 + i % 50).append('\n');
+            yaml.append("    email: user").append(i).append("@example.com\n");
+        }
+        return yaml.toString();
+    }
+
+    static byte[] yamlBytes(int rows) {
+        return yaml(rows).getBytes(UTF8);
+    }
+
+    static IDataSet dataSet(int rows) {
+        return YamlDataSet.load(new ByteArrayInputStream(yamlBytes(rows)));
+    }
+
+    static File csvDirectory(int rows) throws IOException {
+        File dir = createTempDirectory("cmtest-csv");
+        write(new File(dir, "table-ordering.txt"), TABLE + "\n");
+        StringBuilder csv = new StringBuilder(rows * 48).append("id,name,age,email\n");
+        for (int i = 1; i <= rows; i++) {
+            csv.append(i).append(",user").append(i).append(',').append(20 + i % 50).append(",user").append(i)
+                    .append("@example.com\n");
+        }
+        write(new File(dir, TABLE + ".csv"), csv.toString());
+        return dir;
+    }
+
+    static File binaryFile(int rows) throws IOException, DataSetException {
+        File file = File.createTempFile("cmtest", ".bin");
+        file.deleteOnExit();
+        try (OutputStream output = new FileOutputStream(file)) {
+            BinaryDataSet.write(dataSet(rows), output);
+        }
+        return file;
+    }
+
+    static void createUsersTable(Connection conn) throws SQLException {
+        try (Statement stat = conn.createStatement()) {
+            stat.execute("DROP TABLE IF EXISTS users");
+            stat.execute("CREATE TABLE users (id INT PRIMARY KEY, name VARCHAR(32), age INT, email VARCHAR(64))");
+        }
+    }
+
+    private static File createTempDirectory(String prefix) throws IOException {
+        File dir = File.createTempFile(prefix, "");
+        if (!dir.delete() || !dir.mkdir()) throw new IOException("Can't create directory: " + dir);
+        dir.deleteOnExit();
+        return dir;
+    }
+
+    private static void write(File file, String content) throws IOException {
+        file.deleteOnExit();
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), UTF8)) {
+            writer.write(content);
+        }
+    }
+}
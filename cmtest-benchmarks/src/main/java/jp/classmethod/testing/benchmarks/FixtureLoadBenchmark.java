@@ -0,0 +1,107 @@
+/*
+ * Copyright 2013 Classmethod, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.classmethod.testing.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import jp.classmethod.testing.database.BinaryDataSet;
+import jp.classmethod.testing.database.YamlDataSet;
+
+import org.dbunit.dataset.IDataSet;
+import org.dbunit.dataset.ITable;
+import org.dbunit.dataset.ITableIterator;
+import org.dbunit.dataset.RowOutOfBoundsException;
+import org.dbunit.dataset.csv.CsvDataSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * フィクスチャの読み込みのベンチマーク。
+ * <p>YAML、ストリーミングのYAML、CSV、バイナリ形式のフィクスチャを読み込み、すべての値を参照するまでの時間を測定する。</p>
+ *
+ * @since 1.0
+ * @author shuji
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FixtureLoadBenchmark {
+
+    @Param({ "1000", "100000" })
+    int rows;
+
+    byte[] yaml;
+    File csvDirectory;
+    File binaryFile;
+
+    @Setup
+    public void setUp() throws Exception {
+        yaml = BenchmarkFixtures.yamlBytes(rows);
+        csvDirectory = BenchmarkFixtures.csvDirectory(rows);
+        binaryFile = BenchmarkFixtures.binaryFile(rows);
+    }
+
+    @Benchmark
+    public void yaml(Blackhole bh) throws Exception {
+        consume(YamlDataSet.load(new ByteArrayInputStream(yaml)), bh);
+    }
+
+    @Benchmark
+    public void yamlStream(Blackhole bh) throws Exception {
+        consume(YamlDataSet.stream(new ByteArrayInputStream(yaml)), bh);
+    }
+
+    @Benchmark
+    public void csv(Blackhole bh) throws Exception {
+        consume(new CsvDataSet(csvDirectory), bh);
+    }
+
+    @Benchmark
+    public void binary(Blackhole bh) throws Exception {
+        consume(BinaryDataSet.load(binaryFile), bh);
+    }
+
+    static void consume(IDataSet dataSet, Blackhole bh) throws Exception {
+        ITableIterator it = dataSet.iterator();
+        while (it.next()) {
+            ITable table = it.getTable();
+            try {
+                for (int row = 0;; row++) {
+                    for (String column : BenchmarkFixtures.COLUMNS) {
+                        bh.consume(table.getValue(row, column));
+                    }
+                }
+            } catch (RowOutOfBoundsException e) {
+                // end of table
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2013 Classmethod, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.classmethod.testing.benchmarks;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import jp.classmethod.testing.verifier.FieldVerifier;
+import jp.classmethod.testing.verifier.IterableVerifier;
+import jp.classmethod.testing.verifier.ObjectVerifier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * エンティティのリストの比較検証のベンチマーク。
+ * <p>
+ * フィールド毎にassertThatを呼び出す手書きのObjectVerifierと、FieldVerifierで、
+ * createdAt以外のフィールドが等しいエンティティのリストを比較検証する時間を、逐次と並列のそれぞれで測定する。
+ * </p>
+ *
+ * @since 1.0
+ * @author shuji
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ObjectVerifierBenchmark {
+
+    @Param({ "1000", "100000" })
+    int size;
+
+    List<Item> actual;
+    List<Item> expected;
+
+    @Setup
+    public void setUp() {
+        actual = new ArrayList<>(size);
+        expected = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            actual.add(new Item(i, "item" + i, i * 10, "description" + i, new Date(i)));
+            expected.add(new Item(i, "item" + i, i * 10, "description" + i, new Date()));
+        }
+    }
+
+    @Benchmark
+    public void handWritten() throws Exception {
+        new IterableVerifier<Item>(new ItemVerifier()).verify(actual, expected);
+    }
+
+    @Benchmark
+    public void fieldVerifier() throws Exception {
+        new IterableVerifier<Item>(FieldVerifier.of(Item.class, "createdAt")).verify(actual, expected);
+    }
+
+    @Benchmark
+    public void handWrittenParallel() throws Exception {
+        new IterableVerifier<Item>(new ItemVerifier()).parallel().verify(actual, expected);
+    }
+
+    @Benchmark
+    public void fieldVerifierParallel() throws Exception {
+        new IterableVerifier<Item>(FieldVerifier.of(Item.class, "createdAt")).parallel().verify(actual, expected);
+    }
+
+    public static class Item {
+        long id;
+        String name;
+        int price;
+        String description;
+        Date createdAt;
+
+        Item(long id, String name, int price, String description, Date createdAt) {
+            this.id = id;
+            this.name = name;
+            this.price = price;
+            this.description = description;
+            this.createdAt = createdAt;
+        }
+    }
+
+    static class ItemVerifier extends ObjectVerifier<Item> {
+        @Override
+        public void verifyNotNullObject(Item actual, Item expected) throws AssertionError {
+            assertThat("id", actual.id, is(expected.id));
+            assertThat("name", actual.name, is(expected.name));
+            assertThat("price", actual.price, is(expected.price));
+            assertThat("description", actual.description, is(expected.description));
+        }
+    }
+}
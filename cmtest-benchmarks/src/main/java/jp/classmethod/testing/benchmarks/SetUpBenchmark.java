@@ -0,0 +1,143 @@
+/*
+ * Copyright 2013 Classmethod, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.classmethod.testing.benchmarks;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+import jp.classmethod.testing.database.BatchInsertOperation;
+import jp.classmethod.testing.database.DbUnitTester;
+import jp.classmethod.testing.database.H2SnapshotOperation;
+import jp.classmethod.testing.database.IncrementalOperation;
+
+import org.dbunit.database.DatabaseConnection;
+import org.dbunit.database.IDatabaseConnection;
+import org.dbunit.dataset.IDataSet;
+import org.dbunit.operation.DatabaseOperation;
+import org.junit.runner.Description;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * H2のインメモリデータベースへのフィクスチャのセットアップのベンチマーク。
+ * <p>
+ * DbUnitのCLEAN_INSERT、{@link BatchInsertOperation}、{@link H2SnapshotOperation}、{@link IncrementalOperation}で
+ * セットアップする時間と、1レコードを更新するテストを{@link DbUnitTester}で実行する時間を
+ * CLEAN_INSERT、差分の更新、ロールバックモードで比較する。
+ * </p>
+ *
+ * @since 1.0
+ * @author shuji
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SetUpBenchmark {
+
+    static final String URL = "jdbc:h2:mem:SetUpBenchmark;DB_CLOSE_DELAY=-1";
+
+    @Param({ "100", "10000" })
+    int rows;
+
+    IDataSet dataSet;
+    IDatabaseConnection connection;
+    H2SnapshotOperation snapshot;
+    DbUnitTester cleanInsertTester;
+    DbUnitTester incrementalTester;
+    DbUnitTester rollbackTester;
+    Description description;
+
+    @Setup
+    public void setUp() throws Exception {
+        Class.forName("org.h2.Driver");
+        Connection conn = DriverManager.getConnection(URL);
+        BenchmarkFixtures.createUsersTable(conn);
+        connection = new DatabaseConnection(conn);
+        dataSet = BenchmarkFixtures.dataSet(rows);
+        snapshot = new H2SnapshotOperation(BatchInsertOperation.CLEAN_INSERT);
+        cleanInsertTester = DbUnitTester.forJdbc("org.h2.Driver", URL).create(dataSet);
+        incrementalTester = DbUnitTester.forJdbc("org.h2.Driver", URL)
+                .setUpOperation(IncrementalOperation.CLEAN_INSERT).create(dataSet);
+        rollbackTester = DbUnitTester.forJdbc("org.h2.Driver", URL).rollback().create(dataSet);
+        description = Description.createTestDescription(SetUpBenchmark.class, "test");
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        connection.close();
+    }
+
+    @Benchmark
+    public void dbunitCleanInsert() throws Exception {
+        DatabaseOperation.CLEAN_INSERT.execute(connection, dataSet);
+    }
+
+    @Benchmark
+    public void batchCleanInsert() throws Exception {
+        BatchInsertOperation.CLEAN_INSERT.execute(connection, dataSet);
+    }
+
+    @Benchmark
+    public void h2Snapshot() throws Exception {
+        snapshot.execute(connection, dataSet);
+    }
+
+    @Benchmark
+    public void incrementalCleanInsert() throws Exception {
+        IncrementalOperation.CLEAN_INSERT.execute(connection, dataSet);
+    }
+
+    @Benchmark
+    public void testWithCleanInsert() throws Throwable {
+        runUpdatingTest(cleanInsertTester);
+    }
+
+    @Benchmark
+    public void testWithIncremental() throws Throwable {
+        runUpdatingTest(incrementalTester);
+    }
+
+    @Benchmark
+    public void testWithRollback() throws Throwable {
+        runUpdatingTest(rollbackTester);
+    }
+
+    private void runUpdatingTest(final DbUnitTester tester) throws Throwable {
+        tester.apply(new org.junit.runners.model.Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                try (Statement stat = tester.getConnection().getConnection().createStatement()) {
+                    stat.executeUpdate("UPDATE users SET age = age + 1 WHERE id = 1");
+                }
+            }
+        }, description).evaluate();
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2013 Classmethod, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.classmethod.testing.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import jp.classmethod.testing.verifier.ArrayVerifier;
+import jp.classmethod.testing.verifier.IterableVerifier;
+import jp.classmethod.testing.verifier.MapVerifier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 反復要素、配列、Mapの比較検証のベンチマーク。
+ * <p>同じ値を持つ別のインスタンスを、equalsで比較検証する時間を測定する。</p>
+ *
+ * @since 1.0
+ * @author shuji
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class VerifierBenchmark {
+
+    @Param({ "1000", "1000000" })
+    int size;
+
+    List<String> actualList;
+    List<String> expectedList;
+    String[] actualArray;
+    String[] expectedArray;
+    Map<Integer, String> actualMap;
+    Map<Integer, String> expectedMap;
+
+    @Setup
+    public void setUp() {
+        actualList = new ArrayList<>(size);
+        expectedList = new ArrayList<>(size);
+        actualMap = new HashMap<>();
+        expectedMap = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            actualList.add("value" + i);
+            expectedList.add("value" + i);
+            actualMap.put(i, "value" + i);
+            expectedMap.put(i, "value" + i);
+        }
+        actualArray = actualList.toArray(new String[size]);
+        expectedArray = expectedList.toArray(new String[size]);
+    }
+
+    @Benchmark
+    public void iterableVerifier() throws Exception {
+        new IterableVerifier<String>().verify(actualList, expectedList);
+    }
+
+    @Benchmark
+    public void iterableVerifierStreaming() throws Exception {
+        new IterableVerifier<String>().streaming().verify(actualList, expectedList);
+    }
+
+    @Benchmark
+    public void arrayVerifier() throws Exception {
+        new ArrayVerifier<String>().verify(actualArray, expectedArray);
+    }
+
+    @Benchmark
+    public void mapVerifier() throws Exception {
+        new MapVerifier<String>().verify(actualMap, expectedMap);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2013 Classmethod, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.classmethod.testing.benchmarks;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.concurrent.TimeUnit;
+
+import jp.classmethod.testing.database.BatchInsertOperation;
+import jp.classmethod.testing.database.DbUnitTester;
+
+import org.dbunit.database.DatabaseConnection;
+import org.dbunit.dataset.Column;
+import org.dbunit.dataset.DefaultTable;
+import org.dbunit.dataset.ITable;
+import org.dbunit.dataset.datatype.DataType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link DbUnitTester#verifyTable(String, ITable, String...)}のベンチマーク。
+ * <p>テーブル全体の検証と、WHERE句や主キーで1レコードに絞り込んだ検証の時間を測定する。</p>
+ *
+ * @since 1.0
+ * @author shuji
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class VerifyTableBenchmark {
+
+    static final String URL = "jdbc:h2:mem:VerifyTableBenchmark;DB_CLOSE_DELAY=-1";
+
+    @Param({ "1000", "100000" })
+    int rows;
+
+    DbUnitTester tester;
+    ITable expected;
+    ITable expectedRow;
+
+    @Setup
+    public void setUp() throws Exception {
+        Class.forName("org.h2.Driver");
+        try (Connection conn = DriverManager.getConnection(URL)) {
+            BenchmarkFixtures.createUsersTable(conn);
+            expected = BenchmarkFixtures.dataSet(rows).getTable(BenchmarkFixtures.TABLE);
+            BatchInsertOperation.CLEAN_INSERT.execute(new DatabaseConnection(conn),
+                    BenchmarkFixtures.dataSet(rows));
+        }
+        Column[] columns = new Column[BenchmarkFixtures.COLUMNS.length];
+        Object[] values = new Object[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = new Column(BenchmarkFixtures.COLUMNS[i], DataType.UNKNOWN);
+            values[i] = expected.getValue(rows / 2, BenchmarkFixtures.COLUMNS[i]);
+        }
+        DefaultTable row = new DefaultTable(BenchmarkFixtures.TABLE, columns);
+        row.addRow(values);
+        expectedRow = row;
+        tester = DbUnitTester.forJdbc("org.h2.Driver", URL).schema("PUBLIC").create();
+    }
+
+    @Benchmark
+    public void verifyTable() throws Exception {
+        tester.verifyTable(BenchmarkFixtures.TABLE, expected);
+    }
+
+    @Benchmark
+    public void verifyTableWhere() throws Exception {
+        tester.verifyTable(BenchmarkFixtures.TABLE, "id = " + (rows / 2 + 1), expectedRow);
+    }
+
+    @Benchmark
+    public void verifyRows() throws Exception {
+        tester.verifyRows(BenchmarkFixtures.TABLE, expectedRow);
+    }
+}
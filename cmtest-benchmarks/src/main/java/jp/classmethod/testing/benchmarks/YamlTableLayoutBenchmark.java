@@ -0,0 +1,92 @@
+/*
+ * Copyright 2013 Classmethod, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.classmethod.testing.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import jp.classmethod.testing.database.YamlDataSet;
+
+import org.dbunit.dataset.ITable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.yaml.snakeyaml.Yaml;
+
+/**
+ * YAMLのテーブルの値の保持方法を比較するベンチマーク。
+ * <p>
+ * YamlDataSetのカラム毎の配列と、SnakeYAMLが返すレコード毎のMapで、すべての値を参照する時間を比較する。
+ * メモリ使用量は<code>-prof gc</code>で割り当て量を比較する。
+ * </p>
+ *
+ * @since 1.0
+ * @author shuji
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class YamlTableLayoutBenchmark {
+
+    @Param({ "1000", "100000" })
+    int rows;
+
+    ITable columnar;
+    List<Map<String, Object>> mapPerRow;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        byte[] yaml = BenchmarkFixtures.yamlBytes(rows);
+        columnar = YamlDataSet.load(new ByteArrayInputStream(yaml)).getTable(BenchmarkFixtures.TABLE);
+        Map<String, List<Map<String, Object>>> tables = (Map<String, List<Map<String, Object>>>) new Yaml()
+                .load(new ByteArrayInputStream(yaml));
+        mapPerRow = tables.get(BenchmarkFixtures.TABLE);
+    }
+
+    @Benchmark
+    public void columnar(Blackhole bh) throws Exception {
+        for (int row = 0; row < rows; row++) {
+            for (String column : BenchmarkFixtures.COLUMNS) {
+                bh.consume(columnar.getValue(row, column));
+            }
+        }
+    }
+
+    @Benchmark
+    public void mapPerRow(Blackhole bh) {
+        for (int row = 0; row < rows; row++) {
+            Map<String, Object> values = mapPerRow.get(row);
+            for (String column : BenchmarkFixtures.COLUMNS) {
+                bh.consume(values.get(column));
+            }
+        }
+    }
+}
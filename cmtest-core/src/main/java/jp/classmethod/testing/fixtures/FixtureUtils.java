@@ -15,7 +15,13 @@
  */
 package jp.classmethod.testing.fixtures;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * フィクスチャを構築する場合に使うユーティリティクラス。
@@ -25,6 +31,18 @@ import java.lang.reflect.Field;
  */
 public class FixtureUtils {
 
+    /** フィールドに値を設定するMethodHandleの型 (Object, Object)void */
+    static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    /** クラス毎に、フィールド名とフィールドに値を設定するMethodHandleを保持するキャッシュ */
+    static final ClassValue<ConcurrentMap<String, MethodHandle>> SETTERS =
+            new ClassValue<ConcurrentMap<String, MethodHandle>>() {
+                @Override
+                protected ConcurrentMap<String, MethodHandle> computeValue(Class<?> type) {
+                    return new ConcurrentHashMap<>();
+                }
+            };
+
     /**
      * プライベートフィールドなどアクセスできないフィールドに値を設定するためのヘルパクラスを作成する。
      * 
@@ -37,6 +55,60 @@ public class FixtureUtils {
         return new FieldInjecter<T>(target);
     }
 
+    /**
+     * フィールドに値を設定するMethodHandleを返す。
+     * <p>
+     * フィールドの検索はクラスとフィールド名の組み合わせ毎に1度だけ行い、
+     * 結果は{@link ClassValue}でクラス毎にキャッシュする。
+     * </p>
+     * 
+     * @param clazz 値を設定するオブジェクトのクラス
+     * @param fieldName フィールド名
+     * @return (Object, Object)voidの型のMethodHandle
+     * @throws NoSuchFieldException フィールドが見つからない場合
+     * @throws IllegalAccessException フィールドにアクセスできない場合
+     */
+    static MethodHandle setter(Class<?> clazz, String fieldName) throws NoSuchFieldException,
+            IllegalAccessException {
+        ConcurrentMap<String, MethodHandle> setters = SETTERS.get(clazz);
+        MethodHandle setter = setters.get(fieldName);
+        if (setter == null) {
+            setter = createSetter(findField(clazz, fieldName));
+            MethodHandle existing = setters.putIfAbsent(fieldName, setter);
+            if (existing != null) setter = existing;
+        }
+        return setter;
+    }
+
+    static MethodHandle createSetter(Field field) throws IllegalAccessException {
+        if (!field.isAccessible()) {
+            field.setAccessible(true);
+        }
+        MethodHandle setter;
+        if (Modifier.isFinal(field.getModifiers())) {
+            // finalのフィールドはMethodHandleで設定できないため、Field.setを経由する
+            try {
+                setter = MethodHandles.lookup().findVirtual(Field.class, "set", SETTER_TYPE).bindTo(field);
+            } catch (NoSuchMethodException e) {
+                throw new IllegalStateException(e);
+            }
+        } else if (Modifier.isStatic(field.getModifiers())) {
+            setter = MethodHandles.dropArguments(MethodHandles.lookup().unreflectSetter(field), 0, Object.class);
+        } else {
+            setter = MethodHandles.lookup().unreflectSetter(field);
+        }
+        return setter.asType(SETTER_TYPE);
+    }
+
+    static Field findField(Class<?> clazz, String fieldName) throws NoSuchFieldException {
+        for (Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (field.getName().equals(fieldName)) return field;
+            }
+        }
+        throw new NoSuchFieldException(fieldName);
+    }
+
     /**
      * プライベートフィールドなどアクセスできないフィールドに値を設定するためのヘルパクラス
      * 
@@ -54,7 +126,8 @@ public class FixtureUtils {
 
         /**
          * フィールド名を指定し、値を設定する。
-         * <p>本メソッドでは、セッターメソッドなどは無視し、フィールド名に対してリフレクションAPIで設定する。</p>
+         * <p>本メソッドでは、セッターメソッドなどは無視し、フィールド名に対してリフレクションAPIで設定する。
+         * 解決したフィールドはMethodHandleとしてクラス毎にキャッシュされるため、同じクラスへの2回目以降の設定は直接の代入に近い速度で行われる。</p>
          * 
          * @param fieldName フィールド名
          * @param value 設定する値
@@ -63,29 +136,15 @@ public class FixtureUtils {
          */
         public FieldInjecter<T> field(String fieldName, Object value) {
             try {
-                Field field = findField(clazz, fieldName);
-                if (!field.isAccessible()) {
-                    field.setAccessible(true);
-                }
-                field.set(target, value);
+                setter(clazz, fieldName).invokeExact((Object) target, value);
                 return this;
-            } catch (Exception e) {
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable e) {
                 throw new AssertionError(e);
             }
         }
 
-        private Field findField(Class<?> clazz, String fieldName) throws NoSuchFieldException {
-            try {
-                return clazz.getDeclaredField(fieldName);
-            } catch (NoSuchFieldException e) {
-                Class<?> superClass = clazz.getSuperclass();
-                if (superClass == null) {
-                    throw e;
-                }
-                return findField(superClass, fieldName);
-            }
-        }
-        
         /**
          * オブジェクトを返す。
          * @return フィールドを設定されたオブジェクト
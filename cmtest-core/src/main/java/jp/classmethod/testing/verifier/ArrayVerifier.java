@@ -30,12 +30,16 @@ import jp.classmethod.testing.internal.AssertionErrorMessages;
  * サイズが同じ場合は各要素に対し、 {@link ObjectVerifier}を適用して比較検証を行う。
  * {@link ObjectVerifier}を指定しない場合は、単純なequalsによる比較で比較検証する。
  * 
+ * {@link #parallel()}を呼び出した場合、要素数が下限以上の配列はインデックスの範囲に分割して並列に比較検証する。
+ * 並列に比較検証する場合も、失敗した要素のうち最も小さいインデックスの失敗を報告する。
+ * 
  * @author shuji
  * @param <T> 比較検証する反復要素の型
  */
 public class ArrayVerifier<T> {
 
     private ObjectVerifier<T> verifier;
+    private int parallelThreshold = Integer.MAX_VALUE;
 
     /**
      * equalsメソッドで比較検証するObjectVerifierで、インスタンスを生成する。
@@ -53,6 +57,27 @@ public class ArrayVerifier<T> {
         this.verifier = verifier;
     }
 
+    /**
+     * 要素数が{@value ParallelVerification#DEFAULT_THRESHOLD}以上の配列を並列に比較検証する。
+     * <p>ObjectVerifierは複数のスレッドから呼び出されるため、スレッドセーフでなければならない。</p>
+     * @return このオブジェクト
+     */
+    public ArrayVerifier<T> parallel() {
+        return parallel(ParallelVerification.DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * 要素数が下限以上の配列を並列に比較検証する。
+     * <p>ObjectVerifierは複数のスレッドから呼び出されるため、スレッドセーフでなければならない。</p>
+     * @param threshold 並列に比較検証する要素数の下限
+     * @return このオブジェクト
+     */
+    public ArrayVerifier<T> parallel(int threshold) {
+        if (threshold < 1) throw new IllegalArgumentException("threshold must be positive: " + threshold);
+        this.parallelThreshold = threshold;
+        return this;
+    }
+
     /**
      * 配列の比較検証を行う。
      * @param actual 配列の実測値
@@ -75,6 +100,15 @@ public class ArrayVerifier<T> {
             throw new AssertionError(msg);
         }
         assert actualLength == expectedLength;
+        if (parallelThreshold <= actualLength) {
+            ParallelVerification.Failure failure = ParallelVerification.verify(verifier, Arrays.asList(actual),
+                    Arrays.asList(expected));
+            if (failure != null) {
+                failure.rethrow(String.format("AssertionError at index: %s%n%s", failure.index,
+                        AssertionErrorMessages.toString(Arrays.toString(actual), Arrays.toString(expected))));
+            }
+            return;
+        }
         for (int index = 0; index < actualLength; index++) {
             try {
                 verifier.verifyObject(actual[index], expected[index]);
@@ -0,0 +1,268 @@
+/*
+ * Copyright 2013 Classmethod, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.classmethod.testing.verifier;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * フィールド毎に比較検証を行う{@link ObjectVerifier}。
+ * 
+ * クラス毎にObjectVerifierのサブクラスを作成する代わりに、クラスのすべてのインスタンスフィールドを比較する。
+ * 比較するフィールドとその値を取得するMethodHandleは生成時に1度だけ解決し、
+ * すべてのフィールドの比較を1つのMethodHandle（比較計画）に連結してキャッシュする。
+ * 検証ではリフレクションやMatcherの生成を行わずに値を直接比較する。
+ * プリミティブ型のフィールドはボクシングせずに比較し、参照型のフィールドは
+ * {@link Objects#deepEquals(Object, Object)}で比較する。
+ * 値が異なる場合のみ、<code>assertThat(フィールド名, actual, is(expected))</code>と同じAssertionErrorを送出する。
+ * 
+ * <code><pre>
+ * // createdAt以外のフィールドを比較する
+ * FieldVerifier.of(Item.class, "createdAt").verifyObject(actual, expected);
+ * new IterableVerifier&lt;Item&gt;(FieldVerifier.of(Item.class, "createdAt")).verify(actual, expected);
+ * </pre></code>
+ * 
+ * @param <T> 比較する型
+ * @author shuji
+ * @since 1.0
+ */
+public class FieldVerifier<T> extends ObjectVerifier<T> {
+
+    static final ClassValue<ConcurrentMap<Set<String>, FieldVerifier<?>>> VERIFIERS =
+            new ClassValue<ConcurrentMap<Set<String>, FieldVerifier<?>>>() {
+                @Override
+                protected ConcurrentMap<Set<String>, FieldVerifier<?>> computeValue(Class<?> type) {
+                    return new ConcurrentHashMap<>();
+                }
+            };
+
+    static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private final Class<T> type;
+    private final FieldComparator[] comparators;
+    /** (Object, Object)boolean - すべてのフィールドの比較を連結した比較計画 */
+    private final MethodHandle plan;
+
+    FieldVerifier(Class<T> type, Set<String> ignoredFields) {
+        this.type = type;
+        List<FieldComparator> comparators = new ArrayList<>();
+        Set<String> unknownFields = new HashSet<>(ignoredFields);
+        for (Field field : fields(type)) {
+            unknownFields.remove(field.getName());
+            if (ignoredFields.contains(field.getName())) continue;
+            comparators.add(new FieldComparator(field));
+        }
+        if (!unknownFields.isEmpty()) {
+            throw new IllegalArgumentException("Unknown fields of " + type.getName() + ": " + unknownFields);
+        }
+        this.comparators = comparators.toArray(new FieldComparator[comparators.size()]);
+        this.plan = plan(this.comparators);
+    }
+
+    /**
+     * フィールドの比較を1つのMethodHandleに連結する。
+     * <p>
+     * 連結したMethodHandleは、フィールドを順に比較して異なる値があればその時点でfalseを返す。
+     * 1回の呼び出しですべてのフィールドを比較するため、JITコンパイラがまとめて最適化できる。
+     * </p>
+     */
+    static MethodHandle plan(FieldComparator[] comparators) {
+        MethodHandle plan = MethodHandles.dropArguments(MethodHandles.constant(boolean.class, true), 0,
+                Object.class, Object.class);
+        MethodHandle unmatched = MethodHandles.dropArguments(MethodHandles.constant(boolean.class, false), 0,
+                Object.class, Object.class);
+        for (int i = comparators.length - 1; 0 <= i; i--) {
+            plan = MethodHandles.guardWithTest(comparators[i].matcher, plan, unmatched);
+        }
+        return plan;
+    }
+
+    /**
+     * クラスと比較しないフィールドを指定して、ObjectVerifierを取得する。
+     * <p>ObjectVerifierはクラスと比較しないフィールドの組み合わせ毎にキャッシュされ、複数のスレッドから利用できる。</p>
+     * 
+     * @param type 比較する型
+     * @param ignoredFields 比較しないフィールド名
+     * @return ObjectVerifier
+     * @throws IllegalArgumentException 比較しないフィールドがクラスに存在しない場合
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> FieldVerifier<T> of(Class<T> type, String... ignoredFields) throws IllegalArgumentException {
+        if (type == null) throw new IllegalArgumentException("type can't be null.");
+        Set<String> key = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(ignoredFields)));
+        ConcurrentMap<Set<String>, FieldVerifier<?>> verifiers = VERIFIERS.get(type);
+        FieldVerifier<?> verifier = verifiers.get(key);
+        if (verifier == null) {
+            verifier = new FieldVerifier<>(type, key);
+            FieldVerifier<?> existing = verifiers.putIfAbsent(key, verifier);
+            if (existing != null) verifier = existing;
+        }
+        return (FieldVerifier<T>) verifier;
+    }
+
+    /**
+     * 比較するフィールド名を返す。
+     * @return スーパークラスのフィールドから順に並べたフィールド名
+     */
+    public List<String> getFieldNames() {
+        List<String> names = new ArrayList<>(comparators.length);
+        for (FieldComparator comparator : comparators) {
+            names.add(comparator.name);
+        }
+        return names;
+    }
+
+    @Override
+    public void verifyNotNullObject(T actual, T expected) throws AssertionError {
+        boolean matches;
+        try {
+            matches = (boolean) plan.invokeExact((Object) actual, (Object) expected);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+        if (matches) return;
+        // 異なるフィールドを探し、assertThatで失敗させる
+        for (FieldComparator comparator : comparators) {
+            comparator.verify(actual, expected);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FieldVerifier[" + type.getName() + ", fields=" + getFieldNames() + "]";
+    }
+
+    static List<Field> fields(Class<?> type) {
+        List<Class<?>> hierarchy = new ArrayList<>();
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            hierarchy.add(0, c);
+        }
+        List<Field> fields = new ArrayList<>();
+        for (Class<?> c : hierarchy) {
+            for (Field field : c.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers()) || field.isSynthetic()) continue;
+                fields.add(field);
+            }
+        }
+        return fields;
+    }
+
+    static boolean equal(int actual, int expected) {
+        return actual == expected;
+    }
+
+    static boolean equal(long actual, long expected) {
+        return actual == expected;
+    }
+
+    static boolean equal(boolean actual, boolean expected) {
+        return actual == expected;
+    }
+
+    static boolean equal(short actual, short expected) {
+        return actual == expected;
+    }
+
+    static boolean equal(byte actual, byte expected) {
+        return actual == expected;
+    }
+
+    static boolean equal(char actual, char expected) {
+        return actual == expected;
+    }
+
+    /** Double#equalsと同じく、NaN同士は等しく、0.0と-0.0は異なるとみなす。 */
+    static boolean equal(double actual, double expected) {
+        return Double.doubleToLongBits(actual) == Double.doubleToLongBits(expected);
+    }
+
+    /** Float#equalsと同じく、NaN同士は等しく、0.0と-0.0は異なるとみなす。 */
+    static boolean equal(float actual, float expected) {
+        return Float.floatToIntBits(actual) == Float.floatToIntBits(expected);
+    }
+
+    static boolean equal(Object actual, Object expected) {
+        return Objects.deepEquals(actual, expected);
+    }
+
+    /**
+     * 1つのフィールドを比較するクラス。
+     */
+    static class FieldComparator {
+        final String name;
+        /** (Object)Object - 値を取得する */
+        final MethodHandle getter;
+        /** (Object, Object)boolean - 実測値と期待値のフィールドの値を比較する */
+        final MethodHandle matcher;
+
+        FieldComparator(Field field) {
+            this.name = field.getName();
+            field.setAccessible(true);
+            try {
+                MethodHandle getter = LOOKUP.unreflectGetter(field);
+                Class<?> type = field.getType().isPrimitive() ? field.getType() : Object.class;
+                getter = getter.asType(MethodType.methodType(type, Object.class));
+                MethodHandle equal = LOOKUP.findStatic(FieldVerifier.class, "equal",
+                        MethodType.methodType(boolean.class, type, type));
+                this.matcher = MethodHandles.filterArguments(equal, 0, getter, getter);
+                this.getter = getter.asType(MethodType.methodType(Object.class, Object.class));
+            } catch (IllegalAccessException | NoSuchMethodException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        void verify(Object actual, Object expected) throws AssertionError {
+            if (!matches(actual, expected)) assertThat(name, value(actual), is(value(expected)));
+        }
+
+        boolean matches(Object actual, Object expected) {
+            try {
+                return (boolean) matcher.invokeExact(actual, expected);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        Object value(Object target) {
+            try {
+                return (Object) getter.invokeExact(target);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -19,7 +19,10 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertThat;
 
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
+import java.util.RandomAccess;
 
 import jp.classmethod.testing.internal.AssertionErrorMessages;
 import jp.classmethod.testing.internal.Iterables;
@@ -31,12 +34,23 @@ import jp.classmethod.testing.internal.Iterables;
  * サイズが同じ場合は各要素に対し、 {@link ObjectVerifier}を適用して比較検証を行う。
  * {@link ObjectVerifier}を指定しない場合は、単純なequalsによる比較で比較検証する。
  * 
+ * 実測値と期待値のどちらかが{@link Collection}でない場合、または{@link #streaming()}を呼び出した場合は、
+ * サイズを事前に求めずに、2つのイテレータを1度だけ並行して反復するストリーミングモードで比較検証する。
+ * ストリーミングモードでは、要素の比較検証が先に行われ、サイズが異なることは短い方の反復が終わった時点で検出する。
+ * そのため、データベースのカーソルなど1度しか反復できない反復要素も比較検証できる。
+ * 
+ * {@link #parallel()}を呼び出した場合、実測値と期待値がどちらも{@link RandomAccess}を実装したリストで、
+ * 要素数が下限以上であれば、インデックスの範囲に分割して並列に比較検証する。
+ * 並列に比較検証する場合も、失敗した要素のうち最も小さいインデックスの失敗を報告する。
+ * 
  * @author shuji
  * @param <T> 比較検証する反復要素の型
  */
 public class IterableVerifier<T> {
 
     private ObjectVerifier<T> verifier;
+    private boolean streaming = false;
+    private int parallelThreshold = Integer.MAX_VALUE;
 
     /**
      * equalsメソッドで比較検証するObjectVerifierで、インスタンスを生成する。
@@ -54,6 +68,36 @@ public class IterableVerifier<T> {
         this.verifier = verifier;
     }
 
+    /**
+     * 実測値と期待値が{@link Collection}であっても、ストリーミングモードで比較検証する。
+     * @return このオブジェクト
+     */
+    public IterableVerifier<T> streaming() {
+        this.streaming = true;
+        return this;
+    }
+
+    /**
+     * 要素数が{@value ParallelVerification#DEFAULT_THRESHOLD}以上のランダムアクセスできるリストを並列に比較検証する。
+     * <p>ObjectVerifierは複数のスレッドから呼び出されるため、スレッドセーフでなければならない。</p>
+     * @return このオブジェクト
+     */
+    public IterableVerifier<T> parallel() {
+        return parallel(ParallelVerification.DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * 要素数が下限以上のランダムアクセスできるリストを並列に比較検証する。
+     * <p>ObjectVerifierは複数のスレッドから呼び出されるため、スレッドセーフでなければならない。</p>
+     * @param threshold 並列に比較検証する要素数の下限
+     * @return このオブジェクト
+     */
+    public IterableVerifier<T> parallel(int threshold) {
+        if (threshold < 1) throw new IllegalArgumentException("threshold must be positive: " + threshold);
+        this.parallelThreshold = threshold;
+        return this;
+    }
+
     /**
      * 反復要素の比較検証を行う。
      * @param actual 反復要素の実測値
@@ -66,6 +110,15 @@ public class IterableVerifier<T> {
         } else if (actual == null) {
             throw new AssertionError("actual is null, but expected is :" + expected);
         }
+        if (isRandomAccessList(actual) && isRandomAccessList(expected)
+                && parallelThreshold <= Math.min(((List<T>) actual).size(), ((List<T>) expected).size())) {
+            verifyParallel((List<T>) actual, (List<T>) expected);
+            return;
+        }
+        if (streaming || !(actual instanceof Collection) || !(expected instanceof Collection)) {
+            verifyStreaming(actual, expected);
+            return;
+        }
         int actualSize = Iterables.size(actual);
         int expectedSize = Iterables.size(expected);
         if (actualSize != expectedSize) {
@@ -88,4 +141,48 @@ public class IterableVerifier<T> {
         }
     }
 
+    private static boolean isRandomAccessList(Iterable<?> iterable) {
+        return iterable instanceof List && iterable instanceof RandomAccess;
+    }
+
+    private void verifyParallel(List<T> actual, List<T> expected) throws Exception {
+        if (actual.size() != expected.size()) {
+            String msg = String.format("Size is unmatched.%nExpected size: %s%nActual size: %s%n%s", expected.size(),
+                    actual.size(), AssertionErrorMessages.toString(actual, expected));
+            throw new AssertionError(msg);
+        }
+        ParallelVerification.Failure failure = ParallelVerification.verify(verifier, actual, expected);
+        if (failure != null) {
+            failure.rethrow(String.format("AssertionError at index: %s%n%s", failure.index,
+                    AssertionErrorMessages.toString(actual, expected)));
+        }
+    }
+
+    /**
+     * 2つのイテレータを1度だけ並行して反復し、比較検証を行う。
+     * <p>サイズが異なる場合は、長い方のイテレータの残りの要素を数えてサイズを求める。</p>
+     */
+    private void verifyStreaming(Iterable<T> actual, Iterable<T> expected) throws Exception {
+        int index = 0;
+        Iterator<T> actualIter = actual.iterator();
+        Iterator<T> expectedIter = expected.iterator();
+        while (actualIter.hasNext() && expectedIter.hasNext()) {
+            try {
+                verifier.verifyObject(actualIter.next(), expectedIter.next());
+            } catch (AssertionError e) {
+                String msg = String.format("AssertionError at index: %s%n%s", index,
+                        AssertionErrorMessages.toString(actual, expected));
+                throw AssertionErrorMessages.insert(e, msg);
+            }
+            index++;
+        }
+        if (actualIter.hasNext() || expectedIter.hasNext()) {
+            int actualSize = index + Iterables.size(actualIter);
+            int expectedSize = index + Iterables.size(expectedIter);
+            String msg = String.format("Size is unmatched.%nExpected size: %s%nActual size: %s%n%s", expectedSize,
+                    actualSize, AssertionErrorMessages.toString(actual, expected));
+            throw new AssertionError(msg);
+        }
+    }
+
 }
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2013 Classmethod, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.classmethod.testing.verifier;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+
+import jp.classmethod.testing.internal.AssertionErrorMessages;
+
+/**
+ * 配列やランダムアクセスできるリストの要素を、インデックスの範囲に分割して並列に比較検証するクラス。
+ * <p>
+ * 範囲はfork/joinで分割し、分割した範囲毎に要素を順に比較検証する。
+ * 失敗した要素が見つかった場合、それより後ろのインデックスの比較検証は打ち切るが、
+ * 前のインデックスの比較検証は続けるため、常に最も小さいインデックスの失敗を報告する。
+ * </p>
+ *
+ * @since 1.0
+ * @author shuji
+ */
+class ParallelVerification {
+
+    /** 並列に比較検証する要素数のデフォルトの下限 */
+    static final int DEFAULT_THRESHOLD = 10000;
+    /** 分割した範囲の要素数の下限 */
+    static final int MIN_CHUNK_SIZE = 256;
+
+    static final ForkJoinPool POOL = new ForkJoinPool();
+
+    private ParallelVerification() {
+    }
+
+    /**
+     * 比較検証に失敗した要素。
+     */
+    static class Failure {
+        final int index;
+        final Throwable cause;
+
+        Failure(int index, Throwable cause) {
+            this.index = index;
+            this.cause = cause;
+        }
+
+        /**
+         * 失敗の原因となった例外を送出する。
+         * @param message AssertionErrorのメッセージの先頭に挿入するメッセージ
+         */
+        void rethrow(String message) throws Exception {
+            if (cause instanceof AssertionError) {
+                throw AssertionErrorMessages.insert((AssertionError) cause, message);
+            }
+            if (cause instanceof Exception) throw (Exception) cause;
+            throw (Error) cause;
+        }
+    }
+
+    /**
+     * 同じ長さのリストの要素を並列に比較検証する。
+     * @param verifier 要素を比較検証するObjectVerifier（複数のスレッドから呼び出される）
+     * @param actual 実測値
+     * @param expected 期待値
+     * @return 最も小さいインデックスの失敗、すべての要素が等しい場合はnull
+     */
+    static <T> Failure verify(ObjectVerifier<T> verifier, List<? extends T> actual, List<? extends T> expected) {
+        int size = actual.size();
+        int chunkSize = Math.max(MIN_CHUNK_SIZE, size / (POOL.getParallelism() * 8));
+        AtomicReference<Failure> failure = new AtomicReference<>();
+        POOL.invoke(new VerifyAction<>(verifier, actual, expected, 0, size, chunkSize, failure));
+        return failure.get();
+    }
+
+    static class VerifyAction<T> extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final ObjectVerifier<T> verifier;
+        final List<? extends T> actual;
+        final List<? extends T> expected;
+        final int from;
+        final int to;
+        final int chunkSize;
+        final AtomicReference<Failure> failure;
+
+        VerifyAction(ObjectVerifier<T> verifier, List<? extends T> actual, List<? extends T> expected, int from,
+                int to, int chunkSize, AtomicReference<Failure> failure) {
+            this.verifier = verifier;
+            this.actual = actual;
+            this.expected = expected;
+            this.from = from;
+            this.to = to;
+            this.chunkSize = chunkSize;
+            this.failure = failure;
+        }
+
+        @Override
+        protected void compute() {
+            if (isAfterFailure(from)) return;
+            if (to - from <= chunkSize) {
+                for (int index = from; index < to && !isAfterFailure(index); index++) {
+                    try {
+                        verifier.verifyObject(actual.get(index), expected.get(index));
+                    } catch (Throwable e) {
+                        fail(index, e);
+                        return;
+                    }
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new VerifyAction<>(verifier, actual, expected, from, mid, chunkSize, failure),
+                    new VerifyAction<>(verifier, actual, expected, mid, to, chunkSize, failure));
+        }
+
+        boolean isAfterFailure(int index) {
+            Failure current = failure.get();
+            return current != null && current.index < index;
+        }
+
+        void fail(int index, Throwable cause) {
+            Failure update = new Failure(index, cause);
+            while (true) {
+                Failure current = failure.get();
+                if (current != null && current.index < index) return;
+                if (failure.compareAndSet(current, update)) return;
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package jp.classmethod.testing.fixtures;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class FixtureUtilsTest {
+
+    @Test
+    public void injectToはプライベートフィールドとスーパークラスのフィールドに値を設定する() throws Exception {
+        // Exercise
+        User actual = FixtureUtils.injectTo(new User())
+                .field("id", 1L)
+                .field("name", "Tom")
+                .field("age", 23)
+                .field("code", "U01")
+                .returnObject();
+        // Verify
+        assertThat(actual.id, is(1L));
+        assertThat(actual.name, is("Tom"));
+        assertThat(actual.age, is(23));
+        assertThat(((Entity) actual).code, is("U01"));
+    }
+
+    @Test
+    public void injectToはfinalフィールドに値を設定する() throws Exception {
+        // Exercise
+        User actual = FixtureUtils.injectTo(new User()).field("version", 2).returnObject();
+        // Verify
+        assertThat(actual.getVersion(), is(2));
+    }
+
+    @Test
+    public void setterは同じクラスとフィールド名に同じMethodHandleを返す() throws Exception {
+        // Exercise
+        Object first = FixtureUtils.setter(User.class, "name");
+        Object second = FixtureUtils.setter(User.class, "name");
+        // Verify
+        assertThat(second, is(sameInstance(first)));
+    }
+
+    @Test
+    public void 存在しないフィールドはAssertionErrorをthrowする() throws Exception {
+        try {
+            FixtureUtils.injectTo(new User()).field("unknown", 1);
+            fail("AssertionError expected");
+        } catch (AssertionError e) {
+            assertThat(e.getCause(), is(instanceOf(NoSuchFieldException.class)));
+        }
+    }
+
+    @Test
+    public void 型が異なる値はAssertionErrorをthrowする() throws Exception {
+        try {
+            FixtureUtils.injectTo(new User()).field("age", "23");
+            fail("AssertionError expected");
+        } catch (AssertionError e) {
+            assertThat(e.getCause(), is(instanceOf(ClassCastException.class)));
+        }
+    }
+
+    static class Entity {
+        private String code;
+    }
+
+    static class User extends Entity {
+        private Long id;
+        private String name;
+        private int age;
+        private final int version;
+
+        User() {
+            this.version = 1;
+        }
+
+        int getVersion() {
+            return version;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package jp.classmethod.testing.verifier;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import org.junit.Test;
+
+public class FieldVerifierTest {
+
+    @Test
+    public void 比較しないフィールド以外のすべてのフィールドを比較する() throws Exception {
+        // Setup
+        FieldVerifier<Item> sut = FieldVerifier.of(Item.class, "createdAt");
+        // Exercise
+        sut.verifyObject(newItem(1L, "test", 2000, new Date(0)), newItem(1L, "test", 2000, new Date()));
+        // Verify
+        assertThat(sut.getFieldNames(), is(Arrays.asList("id", "name", "price", "ratio", "tags")));
+    }
+
+    @Test
+    public void 値が異なるフィールドはassertThatと同じメッセージでAssertionErrorを送出する() throws Exception {
+        // Setup
+        FieldVerifier<Item> sut = FieldVerifier.of(Item.class, "createdAt");
+        try {
+            // Exercise
+            sut.verifyObject(newItem(1L, "test", 2000, null), newItem(1L, "test", 2001, null));
+            fail("AssertionError expected");
+        } catch (AssertionError e) {
+            // Verify
+            assertThat(e.getMessage(), containsString(String.format("price%nExpected: is <2001>%n     but: was <2000>")));
+        }
+    }
+
+    @Test
+    public void 配列のフィールドは要素を比較する() throws Exception {
+        // Setup
+        FieldVerifier<Item> sut = FieldVerifier.of(Item.class, "createdAt");
+        Item actual = newItem(1L, "test", 2000, null);
+        Item expected = newItem(1L, "test", 2000, null);
+        expected.tags = new String[] { "a", "c" };
+        try {
+            // Exercise
+            sut.verifyObject(actual, expected);
+            fail("AssertionError expected");
+        } catch (AssertionError e) {
+            // Verify
+            assertThat(e.getMessage(), containsString("tags"));
+        }
+    }
+
+    @Test
+    public void doubleのフィールドはNaN同士を等しいとみなす() throws Exception {
+        // Setup
+        Item actual = newItem(1L, "test", 2000, null);
+        Item expected = newItem(1L, "test", 2000, null);
+        actual.ratio = Double.NaN;
+        expected.ratio = Double.NaN;
+        // Exercise
+        FieldVerifier.of(Item.class, "createdAt").verifyObject(actual, expected);
+    }
+
+    @Test
+    public void 同じクラスと比較しないフィールドの組み合わせには同じインスタンスを返す() throws Exception {
+        assertThat(FieldVerifier.of(Item.class, "createdAt"), is(sameInstance(FieldVerifier.of(Item.class, "createdAt"))));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void 存在しないフィールドを比較しないフィールドに指定した場合は例外を送出する() throws Exception {
+        FieldVerifier.of(Item.class, "updatedAt");
+    }
+
+    static Item newItem(long id, String name, int price, Date createdAt) {
+        Item item = new Item();
+        item.id = id;
+        item.name = name;
+        item.price = price;
+        item.ratio = 0.5;
+        item.tags = new String[] { "a", "b" };
+        item.createdAt = createdAt;
+        return item;
+    }
+
+    static class Entity {
+        long id;
+    }
+
+    static class Item extends Entity {
+        static int COUNT = 0;
+        String name;
+        int price;
+        double ratio;
+        String[] tags;
+        Date createdAt;
+    }
+}
@@ -0,0 +1,108 @@
+package jp.classmethod.testing.verifier;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+public class IterableVerifierTest {
+
+    @Test
+    public void 一度しか反復できない反復要素を比較検証する() throws Exception {
+        // Setup
+        OneShot<String> actual = new OneShot<>(Arrays.asList("a", "b", "c"));
+        OneShot<String> expected = new OneShot<>(Arrays.asList("a", "b", "c"));
+        // Exercise
+        new IterableVerifier<String>().verify(actual, expected);
+        // Verify
+        assertThat(actual.nextCount, is(3));
+        assertThat(expected.nextCount, is(3));
+    }
+
+    @Test
+    public void ストリーミングモードではサイズの違いを反復の最後に検出する() throws Exception {
+        // Setup
+        OneShot<String> actual = new OneShot<>(Arrays.asList("a", "b"));
+        OneShot<String> expected = new OneShot<>(Arrays.asList("a", "b", "c", "d"));
+        try {
+            // Exercise
+            new IterableVerifier<String>().verify(actual, expected);
+            fail("AssertionError expected");
+        } catch (AssertionError e) {
+            // Verify
+            assertThat(e.getMessage(), containsString(String.format("Expected size: 4%nActual size: 2")));
+        }
+    }
+
+    @Test
+    public void ストリーミングモードではサイズより先に異なる要素を報告する() throws Exception {
+        // Setup
+        List<String> actual = Arrays.asList("a", "x", "c");
+        List<String> expected = Arrays.asList("a", "b", "c", "d");
+        try {
+            // Exercise
+            new IterableVerifier<String>().streaming().verify(actual, expected);
+            fail("AssertionError expected");
+        } catch (AssertionError e) {
+            // Verify
+            assertThat(e.getMessage(), containsString(String.format("Expected: is \"b\"%n     but: was \"x\"")));
+        }
+    }
+
+    @Test
+    public void Collectionの場合はサイズの違いを先に検出する() throws Exception {
+        // Setup
+        List<String> actual = Arrays.asList("a", "x", "c");
+        List<String> expected = Arrays.asList("a", "b", "c", "d");
+        try {
+            // Exercise
+            new IterableVerifier<String>().verify(actual, expected);
+            fail("AssertionError expected");
+        } catch (AssertionError e) {
+            // Verify
+            assertThat(e.getMessage(), containsString("Size is unmatched."));
+        }
+    }
+
+    /**
+     * 1度しか反復できない反復要素。
+     */
+    static class OneShot<T> implements Iterable<T> {
+        final Iterator<T> iterator;
+        boolean iterated = false;
+        int nextCount = 0;
+
+        OneShot(List<T> values) {
+            this.iterator = values.iterator();
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            if (iterated) throw new IllegalStateException("already iterated.");
+            iterated = true;
+            return new Iterator<T>() {
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public T next() {
+                    nextCount++;
+                    return iterator.next();
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package jp.classmethod.testing.verifier;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class ParallelVerificationTest {
+
+    static final int SIZE = 100000;
+
+    @Test
+    public void 配列を並列に比較検証し最も小さいインデックスの失敗を報告する() throws Exception {
+        // Setup
+        Integer[] actual = new Integer[SIZE];
+        Integer[] expected = new Integer[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            actual[i] = i;
+            expected[i] = i;
+        }
+        actual[30001] = -1;
+        actual[70000] = -2;
+        actual[99999] = -3;
+        for (int i = 0; i < 10; i++) {
+            try {
+                // Exercise
+                new ArrayVerifier<Integer>().parallel().verify(actual, expected);
+                fail("AssertionError expected");
+            } catch (AssertionError e) {
+                // Verify
+                assertThat(e.getMessage(), containsString("but: was <-1>"));
+            }
+        }
+    }
+
+    @Test
+    public void リストを並列に比較検証する() throws Exception {
+        // Setup
+        RecordingVerifier verifier = new RecordingVerifier();
+        List<Integer> actual = range(SIZE);
+        List<Integer> expected = range(SIZE);
+        // Exercise
+        new IterableVerifier<Integer>(verifier).parallel(1000).verify(actual, expected);
+        // Verify
+        assertThat(verifier.count, is(SIZE));
+    }
+
+    @Test
+    public void 下限未満の要素数では呼び出したスレッドで比較検証する() throws Exception {
+        // Setup
+        RecordingVerifier verifier = new RecordingVerifier();
+        // Exercise
+        new IterableVerifier<Integer>(verifier).parallel(SIZE + 1).verify(range(SIZE), range(SIZE));
+        // Verify
+        assertThat(verifier.threads, is(Collections.singleton(Thread.currentThread().getName())));
+    }
+
+    @Test
+    public void ObjectVerifierのチェック例外を伝搬する() throws Exception {
+        // Setup
+        ObjectVerifier<Integer> verifier = new ObjectVerifier<Integer>() {
+            @Override
+            public void verifyNotNullObject(Integer actual, Integer expected) throws Exception {
+                if (actual == 5000 || actual == 90000) throw new IOException("failed at " + actual);
+            }
+        };
+        try {
+            // Exercise
+            new IterableVerifier<Integer>(verifier).parallel().verify(range(SIZE), range(SIZE));
+            fail("IOException expected");
+        } catch (IOException e) {
+            // Verify
+            assertThat(e.getMessage(), is("failed at 5000"));
+        }
+    }
+
+    static List<Integer> range(int size) {
+        List<Integer> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(i);
+        }
+        return list;
+    }
+
+    static class RecordingVerifier extends ObjectVerifier<Integer> {
+        final Set<String> threads = Collections.synchronizedSet(new HashSet<String>());
+        int count = 0;
+
+        @Override
+        public void verifyNotNullObject(Integer actual, Integer expected) throws AssertionError {
+            threads.add(Thread.currentThread().getName());
+            synchronized (this) {
+                count++;
+            }
+            assertThat(actual, is(expected));
+        }
+    }
+}
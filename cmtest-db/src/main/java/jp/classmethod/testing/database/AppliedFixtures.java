@@ -0,0 +1,66 @@
+/*
+ * Copyright 2013 Classmethod, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.classmethod.testing.database;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * データベースにセットアップされ、変更されていないフィクスチャを記録するクラス。
+ * <p>
+ * {@link DbUnitTester}はセットアップしたフィクスチャを記録し、{@link ReadOnly}でないテストの終了時に記録を破棄する。
+ * 記録が残っているフィクスチャと同じフィクスチャであれば、セットアップ操作を省略できる。
+ * ロールバックモードの{@link RollbackSession}も同じ記録を使う。
+ * </p>
+ *
+ * @since 1.0
+ * @author shuji
+ */
+class AppliedFixtures {
+
+    private static final Map<DatabaseConnectionManager, Object> APPLIED = new HashMap<>();
+
+    private AppliedFixtures() {
+    }
+
+    /**
+     * フィクスチャがセットアップされたまま変更されていないかを返す。
+     * @param connectionManager コネクション管理オブジェクト
+     * @param fixture フィクスチャを識別するオブジェクト
+     * @return フィクスチャがセットアップされたままの場合はtrue
+     */
+    static synchronized boolean isApplied(DatabaseConnectionManager connectionManager, Object fixture) {
+        Object applied = APPLIED.get(connectionManager);
+        return applied != null && (applied == fixture || applied.equals(fixture));
+    }
+
+    /**
+     * フィクスチャをセットアップしたことを記録する。
+     * @param connectionManager コネクション管理オブジェクト
+     * @param fixture フィクスチャを識別するオブジェクト
+     */
+    static synchronized void markApplied(DatabaseConnectionManager connectionManager, Object fixture) {
+        APPLIED.put(connectionManager, fixture);
+    }
+
+    /**
+     * データベースが変更された可能性があることを記録する。
+     * @param connectionManager コネクション管理オブジェクト
+     */
+    static synchronized void markDirty(DatabaseConnectionManager connectionManager) {
+        APPLIED.remove(connectionManager);
+    }
+}
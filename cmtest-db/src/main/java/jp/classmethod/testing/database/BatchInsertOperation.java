@@ -0,0 +1,266 @@
+/*
+ * Copyright 2013 Classmethod, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.classmethod.testing.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.dbunit.DatabaseUnitException;
+import org.dbunit.database.IDatabaseConnection;
+import org.dbunit.dataset.Column;
+import org.dbunit.dataset.IDataSet;
+import org.dbunit.dataset.ITable;
+import org.dbunit.dataset.ITableIterator;
+import org.dbunit.dataset.ITableMetaData;
+import org.dbunit.dataset.RowOutOfBoundsException;
+import org.dbunit.operation.AbstractOperation;
+import org.dbunit.operation.CompositeOperation;
+import org.dbunit.operation.DatabaseOperation;
+
+/**
+ * JDBCのバッチ更新でデータセットのレコードを挿入するDbUnitのオペレーション。
+ * <p>
+ * DbUnitのINSERTオペレーションはレコード毎にステートメントを実行するが、
+ * このオペレーションはaddBatch/executeBatchでまとめてレコードを挿入する。
+ * 複数行のVALUES句に対応したデータベース（MySQL、PostgreSQL、H2など）では、
+ * 1つのINSERT文で複数のレコードを挿入する。
+ * </p>
+ * <p>
+ * 値が{@link ITable#NO_VALUE}のカラムはINSERT文から除外し、データベースのデフォルト値を使用する。
+ * </p>
+ * <p>
+ * {@link DbUnitTester}のセットアップオペレーションとして利用する場合は{@link #CLEAN_INSERT}を指定する。
+ * </p>
+ * 
+ * @since 1.0
+ * @author shuji
+ */
+public class BatchInsertOperation extends AbstractOperation {
+
+    /** 1回のexecuteBatchで挿入するレコード数のデフォルト値 */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    /** 1つのINSERT文にバインドするパラメータ数の上限 */
+    public static final int MAX_PARAMETERS = 1000;
+    /** デフォルトのバッチサイズで挿入するオペレーション */
+    public static final DatabaseOperation INSERT = new BatchInsertOperation(DEFAULT_BATCH_SIZE);
+    /** 全レコードを削除した後、デフォルトのバッチサイズで挿入するオペレーション */
+    public static final DatabaseOperation CLEAN_INSERT = cleanInsert(DEFAULT_BATCH_SIZE);
+
+    static final List<String> MULTI_ROW_VALUES_PRODUCTS = Arrays.asList("MySQL", "MariaDB", "PostgreSQL", "H2",
+            "HSQL Database Engine", "Microsoft SQL Server");
+
+    final int batchSize;
+
+    /**
+     * バッチサイズを指定して、インスタンスを生成する。
+     * @param batchSize 1回のexecuteBatchで挿入するレコード数
+     * @throws IllegalArgumentException バッチサイズが1未満の場合
+     * @since 1.0
+     */
+    public BatchInsertOperation(int batchSize) throws IllegalArgumentException {
+        if (batchSize < 1) throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * 全レコードを削除した後、バッチサイズを指定して挿入するオペレーションを生成する。
+     * @param batchSize 1回のexecuteBatchで挿入するレコード数
+     * @return オペレーション
+     * @since 1.0
+     */
+    public static DatabaseOperation cleanInsert(int batchSize) {
+        return new CompositeOperation(DatabaseOperation.DELETE_ALL, new BatchInsertOperation(batchSize));
+    }
+
+    @Override
+    public void execute(IDatabaseConnection connection, IDataSet dataSet) throws DatabaseUnitException,
+            SQLException {
+        boolean multiRowValues = supportsMultiRowValues(connection.getConnection());
+        IDataSet databaseDataSet = connection.createDataSet();
+        ITableIterator iterator = dataSet.iterator();
+        while (iterator.next()) {
+            insert(connection, databaseDataSet, iterator.getTable(), multiRowValues);
+        }
+    }
+
+    void insert(IDatabaseConnection connection, IDataSet databaseDataSet, ITable table, boolean multiRowValues)
+            throws DatabaseUnitException, SQLException {
+        ITableMetaData metaData = table.getTableMetaData();
+        Column[] columns = metaData.getColumns();
+        if (columns.length == 0) return;
+        ITableMetaData dbMetaData = databaseDataSet.getTableMetaData(metaData.getTableName());
+        Column[] dbColumns = new Column[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            dbColumns[i] = dbMetaData.getColumns()[dbMetaData.getColumnIndex(columns[i].getColumnName())];
+        }
+        String tableName = getQualifiedName(connection.getSchema(), dbMetaData.getTableName(), connection);
+
+        Batch batch = null;
+        try {
+            for (int row = 0;; row++) {
+                Object[] values = readRow(table, row, columns);
+                if (values == null) break;
+                boolean[] present = presentColumns(values);
+                if (batch == null || !Arrays.equals(batch.present, present)) {
+                    if (batch != null) {
+                        batch.finish();
+                        batch.close();
+                    }
+                    batch = new Batch(connection, tableName, dbColumns, present, multiRowValues);
+                }
+                batch.add(values);
+            }
+            if (batch != null) batch.finish();
+        } finally {
+            if (batch != null) batch.close();
+        }
+    }
+
+    static boolean[] presentColumns(Object[] values) {
+        boolean[] present = new boolean[values.length];
+        for (int i = 0; i < values.length; i++) {
+            present[i] = values[i] != ITable.NO_VALUE;
+        }
+        return present;
+    }
+
+    String insertSql(String tableName, Column[] columns, int rows, IDatabaseConnection connection) {
+        StringBuilder sql = new StringBuilder("insert into ").append(tableName).append(" (");
+        StringBuilder values = new StringBuilder("(");
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                sql.append(", ");
+                values.append(", ");
+            }
+            sql.append(getQualifiedName(null, columns[i].getColumnName(), connection));
+            values.append("?");
+        }
+        values.append(")");
+        sql.append(") values ");
+        for (int row = 0; row < rows; row++) {
+            if (row > 0) sql.append(", ");
+            sql.append(values);
+        }
+        return sql.toString();
+    }
+
+    static Object[] readRow(ITable table, int row, Column[] columns) throws DatabaseUnitException {
+        Object[] values = new Object[columns.length];
+        try {
+            for (int i = 0; i < columns.length; i++) {
+                Object value = table.getValue(row, columns[i].getColumnName());
+                values[i] = value;
+            }
+        } catch (RowOutOfBoundsException e) {
+            return null;
+        }
+        return values;
+    }
+
+    static void bind(PreparedStatement statement, Object[][] rows, int rowCount, Column[] columns)
+            throws DatabaseUnitException, SQLException {
+        int index = 1;
+        for (int row = 0; row < rowCount; row++) {
+            for (int i = 0; i < columns.length; i++) {
+                columns[i].getDataType().setSqlValue(rows[row][i], index++, statement);
+            }
+        }
+    }
+
+    static boolean supportsMultiRowValues(Connection connection) throws SQLException {
+        return MULTI_ROW_VALUES_PRODUCTS.contains(connection.getMetaData().getDatabaseProductName());
+    }
+
+    /**
+     * 値のあるカラムの組み合わせが同じ、連続したレコードをまとめて挿入するバッチ。
+     */
+    class Batch {
+
+        final IDatabaseConnection connection;
+        final String tableName;
+        final boolean[] present;
+        final Column[] columns;
+        final int rowsPerStatement;
+        final Object[][] buffer;
+        int buffered = 0;
+        int pending = 0;
+        PreparedStatement statement;
+
+        Batch(IDatabaseConnection connection, String tableName, Column[] dbColumns, boolean[] present,
+                boolean multiRowValues) {
+            this.connection = connection;
+            this.tableName = tableName;
+            this.present = present;
+            List<Column> columns = new ArrayList<>();
+            for (int i = 0; i < dbColumns.length; i++) {
+                if (present[i]) columns.add(dbColumns[i]);
+            }
+            this.columns = columns.toArray(new Column[columns.size()]);
+            this.rowsPerStatement = multiRowValues
+                    ? Math.max(1, Math.min(batchSize, MAX_PARAMETERS / Math.max(1, this.columns.length))) : 1;
+            this.buffer = new Object[rowsPerStatement][];
+        }
+
+        void add(Object[] values) throws DatabaseUnitException, SQLException {
+            Object[] row = new Object[columns.length];
+            for (int i = 0, j = 0; i < values.length; i++) {
+                if (present[i]) row[j++] = values[i];
+            }
+            buffer[buffered++] = row;
+            if (buffered < rowsPerStatement) return;
+            if (statement == null) {
+                statement = connection.getConnection().prepareStatement(
+                        insertSql(tableName, columns, rowsPerStatement, connection));
+            }
+            bind(statement, buffer, buffered, columns);
+            statement.addBatch();
+            pending += buffered;
+            buffered = 0;
+            if (pending >= batchSize) {
+                statement.executeBatch();
+                pending = 0;
+            }
+        }
+
+        void finish() throws DatabaseUnitException, SQLException {
+            if (pending > 0) {
+                statement.executeBatch();
+                pending = 0;
+            }
+            if (buffered > 0) {
+                try (PreparedStatement remainder = connection.getConnection().prepareStatement(
+                        insertSql(tableName, columns, buffered, connection))) {
+                    bind(remainder, buffer, buffered, columns);
+                    remainder.executeUpdate();
+                }
+                buffered = 0;
+            }
+        }
+
+        void close() throws SQLException {
+            if (statement != null) statement.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "BatchInsertOperation[batchSize=" + batchSize + "]";
+    }
+}
@@ -0,0 +1,434 @@
+/*
+ * Copyright 2013 Classmethod, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.classmethod.testing.database;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.dbunit.dataset.AbstractTable;
+import org.dbunit.dataset.Column;
+import org.dbunit.dataset.DataSetException;
+import org.dbunit.dataset.DefaultTableIterator;
+import org.dbunit.dataset.DefaultTableMetaData;
+import org.dbunit.dataset.IDataSet;
+import org.dbunit.dataset.ITable;
+import org.dbunit.dataset.ITableIterator;
+import org.dbunit.dataset.ITableMetaData;
+import org.dbunit.dataset.NoSuchTableException;
+import org.dbunit.dataset.RowOutOfBoundsException;
+import org.dbunit.dataset.datatype.DataType;
+
+/**
+ * YAMLやCSVのフィクスチャをコンパイルしたバイナリ形式のリソースに対応するデータセット。
+ * <p>
+ * ファイルはNIOでメモリにマップし、テーブルのレコードは参照された時に1レコードずつデコードする。
+ * ファイル以外のリソース（jarファイル内のリソースなど）はヒープに読み込む。
+ * バイナリ形式のフィクスチャは{@link BinaryFixtureCompiler}で作成する。
+ * </p>
+ * <p>
+ * ファイルの形式は、マジックナンバー、バージョン、テーブル数に続き、テーブル毎に
+ * テーブル名、カラム名、レコード数、レコードの開始位置の索引、レコードを格納する。
+ * 値は型を表す1バイトのタグに続けて格納する。カラムのデータ型はYAMLと同様に{@link DataType#UNKNOWN}とする。
+ * </p>
+ * 
+ * @since 1.0
+ * @author shuji
+ */
+public class BinaryDataSet implements IDataSet {
+
+    static final int MAGIC = 0x434d5442; // "CMTB"
+    static final int VERSION = 1;
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    static final byte NULL = 0;
+    static final byte STRING = 1;
+    static final byte INTEGER = 2;
+    static final byte LONG = 3;
+    static final byte DOUBLE = 4;
+    static final byte BOOLEAN = 5;
+    static final byte DECIMAL = 6;
+    static final byte BIG_INTEGER = 7;
+    static final byte DATE = 8;
+    static final byte TIMESTAMP = 9;
+    static final byte SQL_DATE = 10;
+    static final byte TIME = 11;
+    static final byte BYTES = 12;
+
+    private final Map<String, BinaryTable> tables = new LinkedHashMap<>();
+
+    BinaryDataSet(ByteBuffer buffer) throws DataSetException {
+        if (buffer.getInt(0) != MAGIC) throw new DataSetException("Not a binary fixture.");
+        int version = buffer.getInt(4);
+        if (version != VERSION) throw new DataSetException("Unsupported binary fixture version: " + version);
+        int tableCount = buffer.getInt(8);
+        int position = 12;
+        for (int t = 0; t < tableCount; t++) {
+            BinaryTable table = new BinaryTable(buffer, position);
+            tables.put(table.getTableMetaData().getTableName().toUpperCase(Locale.ENGLISH), table);
+            position = table.end;
+        }
+    }
+
+    /**
+     * バイナリ形式のファイルを読み込む。
+     * <p>ファイルはメモリにマップされ、レコードは参照された時にデコードされる。</p>
+     * @param file ファイル
+     * @return データセット
+     * @throws IOException ファイルの読み込みに失敗した場合
+     * @throws DataSetException ファイルの形式が正しくない場合
+     * @since 1.0
+     */
+    public static BinaryDataSet load(File file) throws IOException, DataSetException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            return new BinaryDataSet(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * バイナリ形式のリソースを読み込む。
+     * <p>ファイルの場合はメモリにマップし、それ以外のリソースはヒープに読み込む。</p>
+     * @param url リソース
+     * @return データセット
+     * @throws IOException リソースの読み込みに失敗した場合
+     * @throws DataSetException リソースの形式が正しくない場合
+     * @since 1.0
+     */
+    public static BinaryDataSet load(URL url) throws IOException, DataSetException {
+        if ("file".equals(url.getProtocol())) {
+            try {
+                return load(new File(url.toURI()));
+            } catch (URISyntaxException e) {
+                throw new IOException(e);
+            }
+        }
+        try (InputStream input = url.openStream()) {
+            return load(input);
+        }
+    }
+
+    /**
+     * バイナリ形式のストリームをヒープに読み込む。
+     * @param input ストリーム
+     * @return データセット
+     * @throws IOException ストリームの読み込みに失敗した場合
+     * @throws DataSetException ストリームの形式が正しくない場合
+     * @since 1.0
+     */
+    public static BinaryDataSet load(InputStream input) throws IOException, DataSetException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        for (int n; (n = input.read(buf)) != -1;) {
+            bytes.write(buf, 0, n);
+        }
+        return new BinaryDataSet(ByteBuffer.wrap(bytes.toByteArray()));
+    }
+
+    /**
+     * データセットをバイナリ形式で書き出す。
+     * <p>テーブルのレコードは先頭から順に読み込むため、ストリーミングのデータセットも書き出すことができる。</p>
+     * @param dataSet データセット
+     * @param output 出力先のストリーム
+     * @throws IOException 書き出しに失敗した場合
+     * @throws DataSetException データセットの読み込みに失敗した場合
+     * @since 1.0
+     */
+    public static void write(IDataSet dataSet, OutputStream output) throws IOException, DataSetException {
+        List<byte[]> tableBytes = new ArrayList<>();
+        ITableIterator it = dataSet.iterator();
+        while (it.next()) {
+            tableBytes.add(encode(it.getTable()));
+        }
+        DataOutputStream out = new DataOutputStream(output);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(tableBytes.size());
+        for (byte[] bytes : tableBytes) {
+            out.write(bytes);
+        }
+        out.flush();
+    }
+
+    private static byte[] encode(ITable table) throws IOException, DataSetException {
+        ITableMetaData metaData = table.getTableMetaData();
+        Column[] columns = metaData.getColumns();
+        ByteArrayOutputStream rowBytes = new ByteArrayOutputStream();
+        DataOutputStream rows = new DataOutputStream(rowBytes);
+        List<Integer> offsets = new ArrayList<>();
+        for (int row = 0;; row++) {
+            Object[] values = new Object[columns.length];
+            try {
+                for (int i = 0; i < columns.length; i++) {
+                    values[i] = table.getValue(row, columns[i].getColumnName());
+                }
+            } catch (RowOutOfBoundsException e) {
+                break;
+            }
+            offsets.add(rows.size());
+            for (Object value : values) {
+                writeValue(rows, value);
+            }
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeString(out, metaData.getTableName());
+        out.writeInt(columns.length);
+        for (Column column : columns) {
+            writeString(out, column.getColumnName());
+        }
+        out.writeInt(offsets.size());
+        out.writeInt(rows.size());
+        for (int offset : offsets) {
+            out.writeInt(offset);
+        }
+        rowBytes.writeTo(out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            out.writeByte(INTEGER);
+            out.writeInt(((Number) value).intValue());
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Double || value instanceof Float) {
+            out.writeByte(DOUBLE);
+            out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof BigDecimal) {
+            out.writeByte(DECIMAL);
+            writeString(out, value.toString());
+        } else if (value instanceof BigInteger) {
+            out.writeByte(BIG_INTEGER);
+            writeString(out, value.toString());
+        } else if (value instanceof Timestamp) {
+            out.writeByte(TIMESTAMP);
+            out.writeLong(((Timestamp) value).getTime());
+            out.writeInt(((Timestamp) value).getNanos());
+        } else if (value instanceof java.sql.Date) {
+            out.writeByte(SQL_DATE);
+            out.writeLong(((Date) value).getTime());
+        } else if (value instanceof Time) {
+            out.writeByte(TIME);
+            out.writeLong(((Date) value).getTime());
+        } else if (value instanceof Date) {
+            out.writeByte(DATE);
+            out.writeLong(((Date) value).getTime());
+        } else if (value instanceof byte[]) {
+            out.writeByte(BYTES);
+            out.writeInt(((byte[]) value).length);
+            out.write((byte[]) value);
+        } else {
+            out.writeByte(STRING);
+            writeString(out, value.toString());
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String str) throws IOException {
+        byte[] bytes = str.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    @Override
+    public String[] getTableNames() throws DataSetException {
+        String[] names = new String[tables.size()];
+        int i = 0;
+        for (BinaryTable table : tables.values()) {
+            names[i++] = table.getTableMetaData().getTableName();
+        }
+        return names;
+    }
+
+    @Override
+    public ITableMetaData getTableMetaData(String tableName) throws DataSetException {
+        return getTable(tableName).getTableMetaData();
+    }
+
+    @Override
+    public ITable getTable(String tableName) throws DataSetException {
+        BinaryTable table = tables.get(tableName.toUpperCase(Locale.ENGLISH));
+        if (table == null) throw new NoSuchTableException(tableName);
+        return table;
+    }
+
+    @Override
+    @Deprecated
+    public ITable[] getTables() throws DataSetException {
+        return tables.values().toArray(new ITable[tables.size()]);
+    }
+
+    @Override
+    public ITableIterator iterator() throws DataSetException {
+        return new DefaultTableIterator(getTables());
+    }
+
+    @Override
+    public ITableIterator reverseIterator() throws DataSetException {
+        return new DefaultTableIterator(getTables(), true);
+    }
+
+    @Override
+    public boolean isCaseSensitiveTableNames() {
+        return false;
+    }
+
+    /**
+     * バイナリ形式のテーブル。
+     * <p>最後にデコードしたレコードを保持するため、レコードの順に読み込む場合は各レコードを1度だけデコードする。</p>
+     */
+    static class BinaryTable extends AbstractTable {
+
+        final ByteBuffer buffer;
+        final ITableMetaData metaData;
+        final int columnCount;
+        final int rowCount;
+        final int offsetsStart;
+        final int rowsStart;
+        final int end;
+        private int decodedRow = -1;
+        private Object[] decodedValues;
+
+        BinaryTable(ByteBuffer buffer, int position) throws DataSetException {
+            this.buffer = buffer;
+            int[] pos = { position };
+            String tableName = readString(buffer, pos);
+            int columnCount = buffer.getInt(pos[0]);
+            pos[0] += 4;
+            Column[] columns = new Column[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                columns[i] = new Column(readString(buffer, pos), DataType.UNKNOWN);
+            }
+            this.metaData = new DefaultTableMetaData(tableName, columns);
+            this.columnCount = columnCount;
+            this.rowCount = buffer.getInt(pos[0]);
+            int rowsLength = buffer.getInt(pos[0] + 4);
+            this.offsetsStart = pos[0] + 8;
+            this.rowsStart = offsetsStart + rowCount * 4;
+            this.end = rowsStart + rowsLength;
+        }
+
+        @Override
+        public ITableMetaData getTableMetaData() {
+            return metaData;
+        }
+
+        @Override
+        public int getRowCount() {
+            return rowCount;
+        }
+
+        @Override
+        public synchronized Object getValue(int row, String column) throws DataSetException {
+            assertValidRowIndex(row);
+            int index = getColumnIndex(column);
+            if (row != decodedRow) {
+                decodedValues = decode(row);
+                decodedRow = row;
+            }
+            return decodedValues[index];
+        }
+
+        private Object[] decode(int row) {
+            Object[] values = new Object[columnCount];
+            int[] pos = { rowsStart + buffer.getInt(offsetsStart + row * 4) };
+            for (int i = 0; i < values.length; i++) {
+                values[i] = readValue(buffer, pos);
+            }
+            return values;
+        }
+    }
+
+    static Object readValue(ByteBuffer buffer, int[] pos) {
+        byte tag = buffer.get(pos[0]++);
+        switch (tag) {
+        case NULL:
+            return null;
+        case STRING:
+            return readString(buffer, pos);
+        case INTEGER:
+            return buffer.getInt(advance(pos, 4));
+        case LONG:
+            return buffer.getLong(advance(pos, 8));
+        case DOUBLE:
+            return buffer.getDouble(advance(pos, 8));
+        case BOOLEAN:
+            return buffer.get(advance(pos, 1)) != 0;
+        case DECIMAL:
+            return new BigDecimal(readString(buffer, pos));
+        case BIG_INTEGER:
+            return new BigInteger(readString(buffer, pos));
+        case TIMESTAMP:
+            Timestamp timestamp = new Timestamp(buffer.getLong(advance(pos, 8)));
+            timestamp.setNanos(buffer.getInt(advance(pos, 4)));
+            return timestamp;
+        case SQL_DATE:
+            return new java.sql.Date(buffer.getLong(advance(pos, 8)));
+        case TIME:
+            return new Time(buffer.getLong(advance(pos, 8)));
+        case DATE:
+            return new Date(buffer.getLong(advance(pos, 8)));
+        case BYTES:
+            return readBytes(buffer, pos);
+        default:
+            throw new IllegalStateException("Unknown value tag: " + tag);
+        }
+    }
+
+    private static int advance(int[] pos, int length) {
+        int position = pos[0];
+        pos[0] += length;
+        return position;
+    }
+
+    private static String readString(ByteBuffer buffer, int[] pos) {
+        return new String(readBytes(buffer, pos), UTF8);
+    }
+
+    private static byte[] readBytes(ByteBuffer buffer, int[] pos) {
+        int length = buffer.getInt(advance(pos, 4));
+        byte[] bytes = new byte[length];
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(advance(pos, length));
+        slice.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2013 Classmethod, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.classmethod.testing.database;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.dbunit.dataset.DataSetException;
+import org.dbunit.dataset.IDataSet;
+import org.dbunit.dataset.csv.CsvDataSet;
+
+/**
+ * YAMLとCSVのフィクスチャをバイナリ形式にコンパイルするコマンドラインツール。
+ * <p>
+ * <code>java jp.classmethod.testing.database.BinaryFixtureCompiler &lt;source&gt; &lt;target&gt;</code>
+ * </p>
+ * <ul>
+ * <li>sourceがYAMLファイル（.yaml, .yml）の場合は、targetにバイナリ形式のファイルを作成する。</li>
+ * <li>sourceがtable-ordering.txtを含むディレクトリの場合は、CSVのフィクスチャとしてtargetにファイルを作成する。</li>
+ * <li>それ以外のディレクトリの場合は、ディレクトリ内のフィクスチャを同じ相対パスでtargetディレクトリに作成する。
+ * ファイル名の拡張子は{@value #EXTENSION}となる。</li>
+ * </ul>
+ * 
+ * @since 1.0
+ * @author shuji
+ * @see BinaryDataSet
+ */
+public class BinaryFixtureCompiler {
+
+    /** バイナリ形式のフィクスチャの拡張子 */
+    public static final String EXTENSION = ".bin";
+
+    private BinaryFixtureCompiler() {
+    }
+
+    /**
+     * フィクスチャをコンパイルする。
+     * @param args コンパイルするファイルまたはディレクトリと、出力先のファイルまたはディレクトリ
+     * @throws Exception コンパイルに失敗した場合
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.err.println("Usage: BinaryFixtureCompiler <source> <target>");
+            System.exit(1);
+        }
+        int count = compile(new File(args[0]), new File(args[1]));
+        System.out.println(count + " fixture(s) compiled.");
+    }
+
+    /**
+     * フィクスチャをコンパイルする。
+     * @param source コンパイルするファイルまたはディレクトリ
+     * @param target 出力先のファイルまたはディレクトリ
+     * @return コンパイルしたフィクスチャの数
+     * @throws IOException ファイルの読み書きに失敗した場合
+     * @throws DataSetException フィクスチャの読み込みに失敗した場合
+     * @since 1.0
+     */
+    public static int compile(File source, File target) throws IOException, DataSetException {
+        if (source.isFile()) {
+            if (!isYaml(source)) return 0;
+            try (InputStream input = new FileInputStream(source)) {
+                write(YamlDataSet.load(input), target);
+            }
+            return 1;
+        }
+        if (isCsv(source)) {
+            write(new CsvDataSet(source), target);
+            return 1;
+        }
+        int count = 0;
+        File[] children = source.listFiles();
+        if (children == null) throw new IOException("Can't read: " + source);
+        for (File child : children) {
+            if (child.isFile()) {
+                count += compile(child, new File(target, baseName(child) + EXTENSION));
+            } else if (isCsv(child)) {
+                count += compile(child, new File(target, child.getName() + EXTENSION));
+            } else {
+                count += compile(child, new File(target, child.getName()));
+            }
+        }
+        return count;
+    }
+
+    private static void write(IDataSet dataSet, File target) throws IOException, DataSetException {
+        File dir = target.getAbsoluteFile().getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Can't create directory: " + dir);
+        try (OutputStream output = new BufferedOutputStream(new FileOutputStream(target))) {
+            BinaryDataSet.write(dataSet, output);
+        }
+    }
+
+    private static boolean isYaml(File file) {
+        String name = file.getName();
+        return name.endsWith(".yaml") || name.endsWith(".yml");
+    }
+
+    private static boolean isCsv(File dir) {
+        return new File(dir, "table-ordering.txt").isFile();
+    }
+
+    private static String baseName(File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? name : name.substring(0, dot);
+    }
+}
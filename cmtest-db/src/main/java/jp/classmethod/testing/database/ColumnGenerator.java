@@ -0,0 +1,279 @@
+/*
+ * Copyright 2013 Classmethod, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.classmethod.testing.database;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.dbunit.dataset.DataSetException;
+
+/**
+ * {@link GeneratedDataSet}のテーブルの1カラム分の値を生成するクラス。
+ * <p>
+ * 値は行番号から都度計算し、レコードを保持しない。
+ * 乱数も行番号とシードから計算するため、同じ行番号には常に同じ値を返す。
+ * </p>
+ *
+ * @since 1.0
+ * @author shuji
+ */
+abstract class ColumnGenerator {
+
+    static final String ROW_NUMBER = "{n}";
+
+    /**
+     * 行番号を指定して値を生成する。
+     * @param row 0から始まる行番号
+     * @return 値
+     */
+    abstract Object value(int row);
+
+    /**
+     * カラムの定義からカラムを生成する。
+     * <ul>
+     * <li><code>{sequence: 1, step: 1}</code> - 連番。開始値が日付の場合、stepは秒とする。</li>
+     * <li><code>{range: [1, 10]}</code> - 最小値から最大値までを順に繰り返す。</li>
+     * <li><code>{random: [1, 10]}</code> - 最小値から最大値までの乱数。</li>
+     * <li><code>{cycle: [a, b, c]}</code> - 値を順に繰り返す。</li>
+     * <li><code>{choice: [a, b, c]}</code> - 値から乱数で選ぶ。</li>
+     * <li><code>"user-{n}"</code> - <code>{n}</code>を1から始まる行番号に置き換えた文字列。</li>
+     * <li>それ以外の値 - 定数。</li>
+     * </ul>
+     * @param column カラム名
+     * @param definition カラムの定義
+     * @param seed テーブルの乱数のシード
+     * @return カラム
+     * @throws DataSetException カラムの定義が正しくない場合
+     */
+    static ColumnGenerator of(String column, Object definition, long seed) throws DataSetException {
+        if (definition instanceof String && ((String) definition).contains(ROW_NUMBER)) {
+            return new FormatColumn((String) definition);
+        }
+        if (!(definition instanceof Map)) return new ConstantColumn(definition);
+        Map<?, ?> map = (Map<?, ?>) definition;
+        long columnSeed = seed * 31 + column.toUpperCase(Locale.ENGLISH).hashCode();
+        if (map.containsKey("sequence")) {
+            Object start = map.get("sequence");
+            long step = longValue(column, "step", map.containsKey("step") ? map.get("step") : 1);
+            if (start instanceof Date) return new DateSequenceColumn(((Date) start).getTime(), step * 1000);
+            return new SequenceColumn(longValue(column, "sequence", start), step);
+        }
+        if (map.containsKey("range")) {
+            long[] bounds = bounds(column, "range", map.get("range"));
+            return new RangeColumn(bounds[0], bounds[1]);
+        }
+        if (map.containsKey("random")) {
+            long[] bounds = bounds(column, "random", map.get("random"));
+            return new RandomColumn(bounds[0], bounds[1], columnSeed);
+        }
+        if (map.containsKey("cycle")) {
+            return new CycleColumn(values(column, "cycle", map.get("cycle")));
+        }
+        if (map.containsKey("choice")) {
+            return new ChoiceColumn(values(column, "choice", map.get("choice")), columnSeed);
+        }
+        throw new DataSetException("Unknown generator of column " + column + ": " + definition);
+    }
+
+    static long longValue(String column, String name, Object value) throws DataSetException {
+        if (value instanceof Integer || value instanceof Long || value instanceof BigInteger) {
+            return ((Number) value).longValue();
+        }
+        throw new DataSetException(name + " of column " + column + " must be an integer: " + value);
+    }
+
+    static long[] bounds(String column, String name, Object value) throws DataSetException {
+        if (!(value instanceof List) || ((List<?>) value).size() != 2) {
+            throw new DataSetException(name + " of column " + column + " must be [min, max]: " + value);
+        }
+        List<?> list = (List<?>) value;
+        long min = longValue(column, name, list.get(0));
+        long max = longValue(column, name, list.get(1));
+        if (max < min) throw new DataSetException(name + " of column " + column + " is empty: " + value);
+        return new long[] { min, max };
+    }
+
+    static Object[] values(String column, String name, Object value) throws DataSetException {
+        if (!(value instanceof List) || ((List<?>) value).isEmpty()) {
+            throw new DataSetException(name + " of column " + column + " must be a non-empty list: " + value);
+        }
+        return ((List<?>) value).toArray();
+    }
+
+    /**
+     * 行番号とシードから0以上、上限未満の値を計算する（SplitMix64）。
+     * @param seed シード
+     * @param row 行番号
+     * @param bound 上限
+     * @return 値
+     */
+    static long random(long seed, int row, long bound) {
+        long z = seed + (row + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z = z ^ (z >>> 31);
+        long r = z % bound;
+        return r < 0 ? r + bound : r;
+    }
+
+    static class ConstantColumn extends ColumnGenerator {
+        final Object value;
+
+        ConstantColumn(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        Object value(int row) {
+            return value;
+        }
+    }
+
+    static class FormatColumn extends ColumnGenerator {
+        final String prefix;
+        final String suffix;
+
+        FormatColumn(String format) {
+            int index = format.indexOf(ROW_NUMBER);
+            this.prefix = format.substring(0, index);
+            this.suffix = format.substring(index + ROW_NUMBER.length()).replace(ROW_NUMBER, "");
+        }
+
+        @Override
+        Object value(int row) {
+            return prefix + (row + 1) + suffix;
+        }
+    }
+
+    static class SequenceColumn extends ColumnGenerator {
+        final long start;
+        final long step;
+
+        SequenceColumn(long start, long step) {
+            this.start = start;
+            this.step = step;
+        }
+
+        @Override
+        Object value(int row) {
+            return start + row * step;
+        }
+    }
+
+    static class DateSequenceColumn extends ColumnGenerator {
+        final long start;
+        final long stepMillis;
+
+        DateSequenceColumn(long start, long stepMillis) {
+            this.start = start;
+            this.stepMillis = stepMillis;
+        }
+
+        @Override
+        Object value(int row) {
+            return new Timestamp(start + row * stepMillis);
+        }
+    }
+
+    static class RangeColumn extends ColumnGenerator {
+        final long min;
+        final long size;
+
+        RangeColumn(long min, long max) {
+            this.min = min;
+            this.size = max - min + 1;
+        }
+
+        @Override
+        Object value(int row) {
+            return min + row % size;
+        }
+    }
+
+    static class RandomColumn extends ColumnGenerator {
+        final long min;
+        final long size;
+        final long seed;
+
+        RandomColumn(long min, long max, long seed) {
+            this.min = min;
+            this.size = max - min + 1;
+            this.seed = seed;
+        }
+
+        @Override
+        Object value(int row) {
+            return min + random(seed, row, size);
+        }
+    }
+
+    static class CycleColumn extends ColumnGenerator {
+        final Object[] values;
+
+        CycleColumn(Object[] values) {
+            this.values = values;
+        }
+
+        @Override
+        Object value(int row) {
+            return values[row % values.length];
+        }
+    }
+
+    static class ChoiceColumn extends ColumnGenerator {
+        final Object[] values;
+        final long seed;
+
+        ChoiceColumn(Object[] values, long seed) {
+            this.values = values;
+            this.seed = seed;
+        }
+
+        @Override
+        Object value(int row) {
+            return values[(int) random(seed, row, values.length)];
+        }
+    }
+
+    /**
+     * 雛形のレコードを繰り返し、繰り返す毎にキーをずらすカラム。
+     */
+    static class TemplateColumn extends ColumnGenerator {
+        final Object[] values;
+        final long offset;
+
+        TemplateColumn(Object[] values, long offset) {
+            this.values = values;
+            this.offset = offset;
+        }
+
+        @Override
+        Object value(int row) {
+            Object value = values[row % values.length];
+            long shift = (row / values.length) * offset;
+            if (shift == 0 || !(value instanceof Number)) return value;
+            if (value instanceof BigDecimal) return ((BigDecimal) value).add(BigDecimal.valueOf(shift));
+            if (value instanceof Double || value instanceof Float) return ((Number) value).doubleValue() + shift;
+            if (value instanceof BigInteger) return ((BigInteger) value).add(BigInteger.valueOf(shift));
+            return ((Number) value).longValue() + shift;
+        }
+    }
+}
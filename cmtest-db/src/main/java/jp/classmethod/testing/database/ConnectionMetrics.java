@@ -0,0 +1,99 @@
+/*
+ * Copyright 2013 Classmethod, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.classmethod.testing.database;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * テストスイート全体でのコネクションの利用状況を集計するクラス。
+ * <p>
+ * {@link DbUnitTester}へのコネクションの要求回数、テスターがコネクション管理オブジェクトからコネクションを借りた回数、
+ * コネクション管理オブジェクトがJDBCドライバまたは{@link javax.sql.DataSource}からコネクションを取得した回数を数える。
+ * 集計値はJVM全体で共有される。
+ * </p>
+ *
+ * @since 1.0
+ * @author shuji
+ */
+public class ConnectionMetrics {
+
+    private static final AtomicLong requestCount = new AtomicLong();
+    private static final AtomicLong leaseCount = new AtomicLong();
+    private static final AtomicLong connectCount = new AtomicLong();
+
+    private ConnectionMetrics() {
+    }
+
+    /**
+     * {@link DbUnitTester#getConnection()}が呼び出された回数を返す。
+     * @return コネクションの要求回数
+     * @since 1.0
+     */
+    public static long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * テスターがコネクション管理オブジェクトからコネクションを借りた回数を返す。
+     * <p>テスターは1つのテストで高々1つのコネクションを借り、テストの終了時に返却する。</p>
+     * @return コネクションを借りた回数
+     * @since 1.0
+     */
+    public static long getLeaseCount() {
+        return leaseCount.get();
+    }
+
+    /**
+     * コネクション管理オブジェクトがデータベースに接続した回数を返す。
+     * @return 接続した回数
+     * @since 1.0
+     */
+    public static long getConnectCount() {
+        return connectCount.get();
+    }
+
+    /**
+     * 集計値をリセットする。
+     * @since 1.0
+     */
+    public static void reset() {
+        requestCount.set(0);
+        leaseCount.set(0);
+        connectCount.set(0);
+    }
+
+    /**
+     * 集計値を文字列で返す。
+     * @return 集計値の文字列表現
+     * @since 1.0
+     */
+    public static String summary() {
+        return String.format("connections: requested=%s, leased=%s, connected=%s",
+                requestCount.get(), leaseCount.get(), connectCount.get());
+    }
+
+    static void requested() {
+        requestCount.incrementAndGet();
+    }
+
+    static void leased() {
+        leaseCount.incrementAndGet();
+    }
+
+    static void connected() {
+        connectCount.incrementAndGet();
+    }
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright 2013 Classmethod, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.classmethod.testing.database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.dbunit.DatabaseUnitException;
+import org.dbunit.database.DatabaseConnection;
+import org.dbunit.database.IDatabaseConnection;
+
+/**
+ * {@link JdbcDatabaseConnectionManager}が利用するコネクションプール。
+ * <p>
+ * 同じ接続設定のコネクション管理オブジェクトごとに1つのプールを保持する。
+ * 返却されたコネクションはDbUnitのコネクションごと保持するため、再利用時には接続とスキーマの検証を行わない。
+ * 再利用する前に{@link Connection#isValid(int)}で検証し、一定時間使われていないコネクションは破棄する。
+ * 接続と検証はプールの枠を確保した後、プールのロックを持たずに行う。
+ * 貸し出したまま一定時間返却されないコネクションは、取得した箇所のスタックトレースとともに警告を出力する。
+ * 返却されないコネクションはプールが上限に達していなくても、コネクションを貸し出す時と返却された時に検出する。
+ * </p>
+ *
+ * @since 1.0
+ * @author shuji
+ */
+class ConnectionPool {
+
+    /** 貸し出し中のコネクションの返却を待つ時間（ミリ秒） */
+    static final long MAX_WAIT_MILLIS = 30000;
+    /** コネクションの検証のタイムアウト（秒） */
+    static final int VALIDATION_TIMEOUT_SECONDS = 5;
+
+    /** logger */
+    private static Logger log = Logger.getLogger(ConnectionPool.class.getName());
+    private static final Map<DatabaseConnectionManager, ConnectionPool> POOLS = new HashMap<>();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                closeAll();
+            }
+        });
+    }
+
+    final JdbcDatabaseConnectionManager connectionManager;
+    final int maxSize;
+    final long idleTimeoutMillis;
+    final long leakThresholdMillis;
+    final Deque<PooledConnection> idle = new ArrayDeque<>();
+    final Map<PooledConnection, Throwable> borrowed = new IdentityHashMap<>();
+    /** 接続中または検証中のコネクションの数 */
+    int reserved = 0;
+    long maxWaitMillis = MAX_WAIT_MILLIS;
+    boolean closed = false;
+
+    ConnectionPool(JdbcDatabaseConnectionManager connectionManager, int maxSize, long idleTimeoutMillis,
+            long leakThresholdMillis) {
+        this.connectionManager = connectionManager;
+        this.maxSize = maxSize;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.leakThresholdMillis = leakThresholdMillis;
+    }
+
+    /**
+     * コネクション管理オブジェクトに対応するプールを取得する。
+     * <p>同じ接続設定のプールが既にある場合は、そのプールの設定が使われる。</p>
+     * @param connectionManager コネクション管理オブジェクト
+     * @return プール
+     */
+    static synchronized ConnectionPool of(JdbcDatabaseConnectionManager connectionManager) {
+        ConnectionPool pool = POOLS.get(connectionManager);
+        if (pool == null) {
+            pool = new ConnectionPool(connectionManager, connectionManager.maxPoolSize,
+                    connectionManager.idleTimeoutMillis, connectionManager.leakThresholdMillis);
+            POOLS.put(connectionManager, pool);
+        }
+        return pool;
+    }
+
+    /**
+     * コネクションを借りる。
+     * <p>再利用できるコネクションがなく、プールが上限に達している場合は返却を待つ。</p>
+     * @return コネクション。クローズするとプールに返却される
+     * @throws SQLException 接続に失敗した場合、または返却を待つ間にタイムアウトした場合
+     * @throws DatabaseUnitException DbUnitのコネクションの生成に失敗した場合
+     */
+    IDatabaseConnection borrow() throws SQLException, DatabaseUnitException {
+        long deadline = System.currentTimeMillis() + maxWaitMillis;
+        for (;;) {
+            PooledConnection conn = reserve(deadline);
+            try {
+                if (conn == null) {
+                    conn = create();
+                } else if (!isValid(conn)) {
+                    closeQuietly(conn);
+                    conn = null;
+                }
+            } finally {
+                if (conn == null) cancel();
+            }
+            if (conn == null) continue;
+            lend(conn);
+            return conn;
+        }
+    }
+
+    /**
+     * 再利用するコネクションを取り出すか、新しいコネクションのための枠を確保する。
+     * @param deadline 返却を待つ期限
+     * @return 再利用するコネクション。新しいコネクションのための枠を確保した場合は{@code null}
+     * @throws SQLException 返却を待つ間にタイムアウトした場合
+     */
+    private synchronized PooledConnection reserve(long deadline) throws SQLException {
+        for (;;) {
+            evictIdle();
+            PooledConnection conn = idle.pollFirst();
+            if (conn != null || borrowed.size() + reserved < maxSize) {
+                reserved++;
+                return conn;
+            }
+            detectLeaks();
+            long wait = deadline - System.currentTimeMillis();
+            if (wait <= 0) {
+                throw new SQLException(String.format(
+                        "Connection pool is exhausted: %s connections are borrowed. (url=%s)",
+                        borrowed.size(), connectionManager.connectionUrl));
+            }
+            try {
+                wait(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a connection.", e);
+            }
+        }
+    }
+
+    private synchronized void cancel() {
+        reserved--;
+        notifyAll();
+    }
+
+    private synchronized void lend(PooledConnection conn) {
+        reserved--;
+        detectLeaks();
+        conn.borrowedAt = System.currentTimeMillis();
+        conn.leakReported = false;
+        borrowed.put(conn, new Throwable("Connection was borrowed here"));
+    }
+
+    /**
+     * コネクションを返却する。
+     * <p>プールが閉じられている場合、またはコネクションが既にクローズされている場合は破棄する。</p>
+     * @param conn コネクション
+     */
+    synchronized void release(PooledConnection conn) {
+        if (borrowed.remove(conn) == null) return;
+        notifyAll();
+        detectLeaks();
+        try {
+            Connection jdbcConnection = conn.getConnection();
+            if (closed || jdbcConnection.isClosed()) {
+                closeQuietly(conn);
+                return;
+            }
+            if (!jdbcConnection.getAutoCommit()) {
+                jdbcConnection.rollback();
+                jdbcConnection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            log.log(Level.FINE, "discard a broken connection.", e);
+            closeQuietly(conn);
+            return;
+        }
+        conn.lastUsed = System.currentTimeMillis();
+        idle.addFirst(conn);
+    }
+
+    /**
+     * 保持しているコネクションの数を返す。
+     * @return 貸し出し中、接続中または検証中、再利用を待つコネクションの合計
+     */
+    synchronized int size() {
+        return borrowed.size() + reserved + idle.size();
+    }
+
+    synchronized void close() {
+        closed = true;
+        for (PooledConnection conn : idle) {
+            closeQuietly(conn);
+        }
+        idle.clear();
+        detectLeaks();
+    }
+
+    private PooledConnection create() throws SQLException, DatabaseUnitException {
+        Connection jdbcConnection = connectionManager.connect();
+        try {
+            return new PooledConnection(this, jdbcConnection, connectionManager.schema);
+        } catch (DatabaseUnitException | RuntimeException e) {
+            jdbcConnection.close();
+            throw e;
+        }
+    }
+
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        for (Iterator<PooledConnection> it = idle.descendingIterator(); it.hasNext();) {
+            PooledConnection conn = it.next();
+            if (now - conn.lastUsed < idleTimeoutMillis) break;
+            it.remove();
+            closeQuietly(conn);
+        }
+    }
+
+    private void detectLeaks() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<PooledConnection, Throwable> entry : borrowed.entrySet()) {
+            PooledConnection conn = entry.getKey();
+            long elapsed = now - conn.borrowedAt;
+            if (conn.leakReported || elapsed < leakThresholdMillis) continue;
+            conn.leakReported = true;
+            log.log(Level.WARNING, String.format("Connection has not been released for %s ms. (url=%s)", elapsed,
+                    connectionManager.connectionUrl), entry.getValue());
+        }
+    }
+
+    private static boolean isValid(PooledConnection conn) {
+        try {
+            return conn.getConnection().isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException | AbstractMethodError e) {
+            return false;
+        }
+    }
+
+    private static void closeQuietly(PooledConnection conn) {
+        try {
+            conn.closePhysically();
+        } catch (SQLException e) {
+            log.log(Level.FINE, "failed to close a connection.", e);
+        }
+    }
+
+    static synchronized void closeAll() {
+        for (ConnectionPool pool : POOLS.values()) {
+            pool.close();
+        }
+        POOLS.clear();
+    }
+
+    /**
+     * クローズするとプールに返却されるDbUnitのコネクション。
+     */
+    static class PooledConnection extends DatabaseConnection {
+
+        final ConnectionPool pool;
+        long borrowedAt;
+        long lastUsed;
+        boolean leakReported;
+
+        PooledConnection(ConnectionPool pool, Connection connection, String schema) throws DatabaseUnitException {
+            super(connection, schema);
+            this.pool = pool;
+        }
+
+        @Override
+        public void close() throws SQLException {
+            pool.release(this);
+        }
+
+        void closePhysically() throws SQLException {
+            super.close();
+        }
+    }
+}
@@ -16,6 +16,8 @@
 
 import static jp.classmethod.testing.internal.PreConditions.checkNotNull;
 
+import java.sql.Connection;
+
 import javax.sql.DataSource;
 
 import jp.classmethod.testing.internal.PreConditions;
@@ -23,6 +25,7 @@ import jp.classmethod.testing.internal.PreConditions;
 import org.dbunit.database.DatabaseConnection;
 import org.dbunit.database.IDatabaseConnection;
 import org.dbunit.dataset.IDataSet;
+import org.dbunit.operation.DatabaseOperation;
 
 /**
  * {@link DataSource}からDbUnitのコネクションを作成するクラス
@@ -47,7 +50,31 @@ public class DataSourceDatabaseConnectionManager implements DatabaseConnectionMa
     @Override
     public IDatabaseConnection getConnection() throws Exception {
         assert dataSource != null;
-        return new DatabaseConnection(dataSource.getConnection(), schema);
+        Connection conn = dataSource.getConnection();
+        ConnectionMetrics.connected();
+        return new DatabaseConnection(conn, schema);
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + dataSource.hashCode();
+        result = prime * result + ((schema == null) ? 0 : schema.hashCode());
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (obj == null) return false;
+        if (getClass() != obj.getClass()) return false;
+        DataSourceDatabaseConnectionManager other = (DataSourceDatabaseConnectionManager) obj;
+        if (!dataSource.equals(other.dataSource)) return false;
+        if (schema == null) {
+            if (other.schema != null) return false;
+        } else if (!schema.equals(other.schema)) return false;
+        return true;
     }
 
     /**
@@ -56,6 +83,9 @@ public class DataSourceDatabaseConnectionManager implements DatabaseConnectionMa
      * @since 1.0
      */
     public static class Builder {
+        boolean rollbackMode = false;
+        DatabaseOperation setUpOperation = null;
+        TimingListener timingListener = null;
         DataSourceDatabaseConnectionManager cm;
 
         Builder(DataSource dataSource) {
@@ -72,6 +102,58 @@ public class DataSourceDatabaseConnectionManager implements DatabaseConnectionMa
             return this;
         }
 
+        /**
+         * ロールバックモードを有効にする。
+         * <p>フィクスチャは共有コネクションに一度だけセットアップされ、各テストの変更はロールバックされる。</p>
+         * @return このオブジェクト
+         * @see DbUnitTester#setRollbackMode(boolean)
+         */
+        public Builder rollback() {
+            this.rollbackMode = true;
+            return this;
+        }
+
+        /**
+         * セットアップオペレーションを指定する。
+         * <p>指定しない場合は{@link DatabaseOperation#CLEAN_INSERT}となる。</p>
+         * @param setUpOperation セットアップオペレーション
+         * @return このオブジェクト
+         * @see BatchInsertOperation#CLEAN_INSERT
+         */
+        public Builder setUpOperation(DatabaseOperation setUpOperation) {
+            checkNotNull(setUpOperation, "setUpOperation");
+            this.setUpOperation = setUpOperation;
+            return this;
+        }
+
+        /**
+         * フィクスチャのテーブルを並列に挿入する。
+         * <p>
+         * 外部キーで依存しないテーブルを、このコネクション管理オブジェクトから借りたコネクションで並列に挿入する。
+         * セットアップオペレーションは{@link ParallelInsertOperation#cleanInsert(DatabaseConnectionManager, int)}となる。
+         * </p>
+         * @param threads 並列に挿入するスレッド数
+         * @return このオブジェクト
+         * @see ParallelInsertOperation
+         */
+        public Builder parallel(int threads) {
+            this.setUpOperation = ParallelInsertOperation.cleanInsert(cm, threads);
+            return this;
+        }
+
+        /**
+         * フェーズ毎の時間を受け取るリスナーを指定する。
+         * @param timingListener リスナー
+         * @return このオブジェクト
+         * @see DbUnitTester#setTimingListener(TimingListener)
+         * @see TimingReporter
+         */
+        public Builder timing(TimingListener timingListener) {
+            checkNotNull(timingListener, "timingListener");
+            this.timingListener = timingListener;
+            return this;
+        }
+
         /**
          * {@link DbUnitTester}オブジェクトを生成する。
          * @return {@link DbUnitTester}オブジェクト
@@ -93,6 +175,9 @@ public class DataSourceDatabaseConnectionManager implements DatabaseConnectionMa
         private DbUnitTester createDbUnitTester(IDataSet dataSet) {
             DbUnitTester tester = (dataSet == null) ? new DbUnitTester(cm) : new DbUnitTester(cm, dataSet);
             if (cm.schema != null) tester.setSchema(cm.schema);
+            tester.setRollbackMode(rollbackMode);
+            if (setUpOperation != null) tester.setSetUpOperation(setUpOperation);
+            if (timingListener != null) tester.setTimingListener(timingListener);
             return tester;
         }
     }
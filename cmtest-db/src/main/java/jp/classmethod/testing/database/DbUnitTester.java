@@ -18,26 +18,23 @@ package jp.classmethod.testing.database;
 import static jp.classmethod.testing.internal.PreConditions.checkNotEmpty;
 import static jp.classmethod.testing.internal.PreConditions.checkNotNull;
 
-import java.io.File;
-import java.io.InputStream;
+import java.io.IOException;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.Arrays;
-import java.util.Queue;
-import java.util.concurrent.LinkedBlockingQueue;
 
 import javax.sql.DataSource;
 
 import org.dbunit.AbstractDatabaseTester;
 import org.dbunit.Assertion;
 import org.dbunit.IOperationListener;
+import org.dbunit.database.CachedResultSetTable;
 import org.dbunit.database.IDatabaseConnection;
-import org.dbunit.dataset.CompositeDataSet;
+import org.dbunit.database.IResultSetTable;
 import org.dbunit.dataset.DataSetException;
 import org.dbunit.dataset.DefaultDataSet;
 import org.dbunit.dataset.IDataSet;
 import org.dbunit.dataset.ITable;
-import org.dbunit.dataset.csv.CsvDataSet;
 import org.dbunit.operation.DatabaseOperation;
 import org.junit.rules.TestRule;
 import org.junit.runner.Description;
@@ -56,6 +53,32 @@ import org.yaml.snakeyaml.error.YAMLException;
  * 特定のテストクラスで共通のフィクスチャを設定したい場合はテストクラスに、
  * テストメソッド毎にフィクスチャを設定する場合ははテストメソッドにアノテーションを宣言すること。
  * </p>
+ * <p>
+ * <h4>ロールバックモード</h4>
+ * {@link #setRollbackMode(boolean)}でロールバックモードを有効にすると、
+ * フィクスチャは同じ接続設定のテスター間で共有される1つのコネクションにセットアップしてコミットされ、
+ * 各テストの終了時にはそのコネクションをロールバックする。
+ * 直前のテストと同じフィクスチャの場合はセットアップ操作を省略する。
+ * テスト対象のコードは{@link #getConnection()}が返す共有コネクションを利用すること。
+ * </p>
+ * <p>
+ * <h4>読み取り専用テスト</h4>
+ * {@link ReadOnly}アノテーションを宣言したテストはデータベースを変更しないとみなし、
+ * 次のテストのフィクスチャが同じであればセットアップ操作を省略する。
+ * </p>
+ * <p>
+ * <h4>ワーカー毎の接続先</h4>
+ * コネクション管理オブジェクトが{@link WorkerDatabaseConnectionManager}の場合は、テスト毎にワーカーを借り、
+ * ワーカーの接続先でフィクスチャのセットアップ、検証、ティアダウンを行う。
+ * テストを並列に実行しても、テスト間でデータベースの状態が干渉しない。
+ * </p>
+ * <p>
+ * <h4>フェーズ毎の時間の計測</h4>
+ * {@link #setTimingListener(TimingListener)}でリスナーを設定すると、フィクスチャの読み込み、コネクションの取得、
+ * セットアップ操作（テーブル毎の内訳を含む）、テスト本体、検証、ティアダウン、コネクションのクローズの時間を計測し、
+ * テストの終了時にリスナーに通知する。
+ * システムプロパティ<code>cmtest.timing</code>に<code>true</code>を指定した場合は、{@link TimingReporter#getDefault()}が設定される。
+ * </p>
  * 
  * @since 1.0
  * @author shuji
@@ -63,7 +86,12 @@ import org.yaml.snakeyaml.error.YAMLException;
 public class DbUnitTester extends AbstractDatabaseTester implements TestRule {
 
     final DatabaseConnectionManager connectionManager;
-    final Queue<IDatabaseConnection> connections = new LinkedBlockingQueue<>();
+    DatabaseConnectionManager activeConnectionManager;
+    IDatabaseConnection connection;
+    boolean rollbackMode = false;
+    Object fixtureKey;
+    TimingListener timingListener;
+    volatile TestTiming timing;
 
     /**
      * 空のデータセットでインスタンスを生成する。
@@ -84,17 +112,81 @@ public class DbUnitTester extends AbstractDatabaseTester implements TestRule {
         checkNotNull(connectionManager, "connectionManager");
         checkNotNull(dataSet, "dataSet");
         this.connectionManager = connectionManager;
+        this.activeConnectionManager = connectionManager;
         setDataSet(dataSet);
         setSetUpOperation(DatabaseOperation.CLEAN_INSERT);
         setTearDownOperation(DatabaseOperation.NONE);
         setOperationListener(IOperationListener.NO_OP_OPERATION_LISTENER);
+        if (Boolean.getBoolean("cmtest.timing")) setTimingListener(TimingReporter.getDefault());
+    }
+
+    /**
+     * ロールバックモードを設定する。
+     * @param rollbackMode ロールバックモードを有効にする場合はtrue
+     * @since 1.0
+     */
+    public void setRollbackMode(boolean rollbackMode) {
+        this.rollbackMode = rollbackMode;
+    }
+
+    /**
+     * ロールバックモードが有効かどうかを返す。
+     * @return ロールバックモードが有効な場合はtrue
+     * @since 1.0
+     */
+    public boolean isRollbackMode() {
+        return rollbackMode;
+    }
+
+    /**
+     * フェーズ毎の時間を受け取るリスナーを設定する。
+     * @param timingListener リスナー。nullの場合は計測しない
+     * @since 1.0
+     */
+    public void setTimingListener(TimingListener timingListener) {
+        this.timingListener = timingListener;
+    }
+
+    /**
+     * フェーズ毎の時間を受け取るリスナーを返す。
+     * @return リスナー。設定されていない場合はnull
+     * @since 1.0
+     */
+    public TimingListener getTimingListener() {
+        return timingListener;
     }
 
     @Override
-    public IDatabaseConnection getConnection() throws Exception {
-        IDatabaseConnection conn = connectionManager.getConnection();
-        connections.add(conn);
-        return conn;
+    public void setDataSet(IDataSet dataSet) {
+        super.setDataSet(dataSet);
+        this.fixtureKey = dataSet;
+    }
+
+    /**
+     * DbUnitのコネクションを取得する。
+     * <p>
+     * 最初に呼び出された時にコネクション管理オブジェクトからコネクションを借り、
+     * テストの終了までセットアップ、検証、テーブルの取得で同じコネクションを使い回す。
+     * 借りたコネクションはテストの終了時にテスターがクローズするため、クローズしないこと。
+     * ロールバックモードの場合は共有コネクションを返す。
+     * </p>
+     */
+    @Override
+    public synchronized IDatabaseConnection getConnection() throws Exception {
+        ConnectionMetrics.requested();
+        begin(TestPhase.CONNECTION);
+        try {
+            if (rollbackMode) return RollbackSession.of(activeConnectionManager).connection;
+            if (connection == null || connection.getConnection().isClosed()) {
+                // テスト対象のコードがクローズしたコネクションはプールに返却してから借り直す
+                if (connection != null) connection.close();
+                connection = activeConnectionManager.getConnection();
+                ConnectionMetrics.leased();
+            }
+            return connection;
+        } finally {
+            end();
+        }
     }
 
     /**
@@ -111,6 +203,13 @@ public class DbUnitTester extends AbstractDatabaseTester implements TestRule {
 
     /**
      * テーブル名を指定し、期待されるテーブルとテスト対象データベースのテーブルのデータを検証する。
+     * <p>
+     * テーブルに主キーがある場合は、主キーでレコードを突き合わせて検証し、
+     * 不足しているレコード、余分なレコード、値の異なるレコードをまとめて報告する。
+     * 主キーはJDBCのメタデータから取得し、コネクション管理オブジェクト毎にキャッシュする。
+     * 主キーがない場合、または主キーを無視するカラムに指定した場合は、DbUnitの{@link Assertion}でレコードの順に検証する。
+     * この場合、テーブルのレコードは主キーがあれば主キーの順に並べる。
+     * </p>
      * @param tableName 検証するテーブル名
      * @param expected 期待されるテーブル
      * @param ignoreCols 検証時に無視するカラム
@@ -118,7 +217,101 @@ public class DbUnitTester extends AbstractDatabaseTester implements TestRule {
      * @since 1.0
      */
     public void verifyTable(String tableName, ITable expected, String... ignoreCols) throws Exception {
-        Assertion.assertEqualsIgnoreCols(expected, getTable(tableName), ignoreCols);
+        verifyTable(tableName, (String) null, expected, ignoreCols);
+    }
+
+    /**
+     * テーブル名とWHERE句の条件を指定し、期待されるデータセットのテーブルと条件に一致するレコードを検証する。
+     * @param tableName 検証するテーブル名
+     * @param whereClause WHERE句の条件（例：<code>"id = 1"</code>）
+     * @param expected 期待されるデータセット
+     * @param ignoreCols 検証時に無視するカラム
+     * @throws Exception
+     * @since 1.0
+     * @see #verifyTable(String, String, ITable, String...)
+     */
+    public void verifyTable(String tableName, String whereClause, IDataSet expected, String... ignoreCols)
+            throws Exception {
+        verifyTable(tableName, whereClause, expected.getTable(tableName), ignoreCols);
+    }
+
+    /**
+     * テーブル名とWHERE句の条件を指定し、期待されるテーブルと条件に一致するレコードを検証する。
+     * <p>
+     * 絞り込みはSQLで行い、取得したレコードは先頭から順に読みながら検証するため、
+     * 大きなテーブルの一部のレコードだけを検証する場合もテーブル全体は読み込まない。
+     * 期待されるテーブルには、条件に一致するレコードだけを定義すること。
+     * </p>
+     * @param tableName 検証するテーブル名
+     * @param whereClause WHERE句の条件（例：<code>"id = 1"</code>）。nullの場合はすべてのレコード
+     * @param expected 期待されるテーブル
+     * @param ignoreCols 検証時に無視するカラム
+     * @throws Exception
+     * @since 1.0
+     */
+    public void verifyTable(String tableName, String whereClause, ITable expected, String... ignoreCols)
+            throws Exception {
+        begin(TestPhase.VERIFY);
+        try {
+            IDatabaseConnection conn = getConnection();
+            String[] keys = PrimaryKeys.of(activeConnectionManager, conn, tableName);
+            try (TableQuery.StatementTable actual = TableQuery.where(conn, tableName, whereClause, keys)) {
+                verify(expected, actual, keys, ignoreCols);
+            }
+        } finally {
+            end();
+        }
+    }
+
+    /**
+     * テーブル名を指定し、期待されるデータセットのテーブルに含まれるレコードだけを検証する。
+     * @param tableName 検証するテーブル名
+     * @param expected 期待されるデータセット
+     * @param ignoreCols 検証時に無視するカラム
+     * @throws Exception
+     * @since 1.0
+     * @see #verifyRows(String, ITable, String...)
+     */
+    public void verifyRows(String tableName, IDataSet expected, String... ignoreCols) throws Exception {
+        verifyRows(tableName, expected.getTable(tableName), ignoreCols);
+    }
+
+    /**
+     * テーブル名を指定し、期待されるテーブルに含まれるレコードだけを検証する。
+     * <p>
+     * 期待されるテーブルの主キーの値でレコードを絞り込むクエリを発行し、
+     * 不足しているレコードと値の異なるレコードを報告する。期待されるテーブルにないレコードは検証しない。
+     * </p>
+     * @param tableName 検証するテーブル名
+     * @param expected 期待されるテーブル
+     * @param ignoreCols 検証時に無視するカラム
+     * @throws Exception
+     * @throws IllegalArgumentException テーブルに主キーがない場合、または期待されるテーブルに主キーのカラムがない場合
+     * @since 1.0
+     */
+    public void verifyRows(String tableName, ITable expected, String... ignoreCols) throws Exception {
+        begin(TestPhase.VERIFY);
+        try {
+            IDatabaseConnection conn = getConnection();
+            String[] keys = PrimaryKeys.of(activeConnectionManager, conn, tableName);
+            if (!TableDiff.isComparable(expected, keys, ignoreCols)) {
+                throw new IllegalArgumentException("Can't verify rows without primary key columns: " + tableName);
+            }
+            try (TableQuery.KeyChunkTable actual = TableQuery.byKeys(conn, tableName, keys, expected)) {
+                TableDiff.assertEquals(expected, actual, keys, ignoreCols);
+            }
+        } finally {
+            end();
+        }
+    }
+
+    private static void verify(ITable expected, IResultSetTable actual, String[] keys, String... ignoreCols)
+            throws Exception {
+        if (TableDiff.isComparable(expected, keys, ignoreCols)) {
+            TableDiff.assertEquals(expected, actual, keys, ignoreCols);
+        } else {
+            Assertion.assertEqualsIgnoreCols(expected, new CachedResultSetTable(actual), ignoreCols);
+        }
     }
 
     /**
@@ -131,34 +324,185 @@ public class DbUnitTester extends AbstractDatabaseTester implements TestRule {
         return getConnection().createDataSet().getTable(tableName);
     }
 
+    /**
+     * テーブル名とWHERE句の条件を指定し、条件に一致するレコードを取得する。
+     * <p>テーブルに主キーがある場合、レコードは主キーの順に並べる。</p>
+     * @param tableName テーブル名
+     * @param whereClause WHERE句の条件（例：<code>"id = 1"</code>）
+     * @return テーブルデータ
+     * @since 1.0
+     */
+    public ITable getTable(String tableName, String whereClause) throws Exception {
+        IDatabaseConnection conn = getConnection();
+        String[] keys = PrimaryKeys.of(activeConnectionManager, conn, tableName);
+        try (TableQuery.StatementTable table = TableQuery.where(conn, tableName, whereClause, keys)) {
+            return new CachedResultSetTable(table);
+        }
+    }
+
     @Override
-    public Statement apply(final Statement base, Description description) {
+    public Statement apply(final Statement base, final Description description) {
+        long loadStartedAt = System.nanoTime();
         setDataSetFromAnnotation(description);
+        final long loadNanos = System.nanoTime() - loadStartedAt;
+        final boolean readOnly = isReadOnly(description);
         return new Statement() {
 
             @Override
             public void evaluate() throws Throwable {
-                onSetup();
+                final TimingListener listener = timingListener;
+                timing = (listener == null) ? null : new TestTiming(description, loadNanos);
                 try {
-                    base.evaluate();
+                    evaluateWithWorker(base, readOnly);
                 } finally {
-                    closeAllConnections();
-                    onTearDown();
+                    TestTiming finished = timing;
+                    timing = null;
+                    if (finished != null) {
+                        finished.finish();
+                        listener.testFinished(finished);
+                    }
                 }
             }
         };
     }
 
-    private void closeAllConnections() {
-        for (;;) {
-            IDatabaseConnection conn = connections.poll();
-            if (conn == null) return;
+    private void evaluateWithWorker(Statement base, boolean readOnly) throws Throwable {
+        Workers workers = leaseWorker();
+        try {
+            if (rollbackMode) {
+                evaluateInRollbackMode(base);
+            } else {
+                evaluateWithSetUp(base, readOnly);
+            }
+        } finally {
+            if (workers != null) {
+                activeConnectionManager = connectionManager;
+                workers.release();
+            }
+        }
+    }
+
+    private void evaluateWithSetUp(Statement base, boolean readOnly) throws Throwable {
+        if (!AppliedFixtures.isApplied(activeConnectionManager, fixtureKey)) {
+            AppliedFixtures.markDirty(activeConnectionManager);
             try {
-                conn.close();
-            } catch (Exception e) {
-                e.printStackTrace();
+                setUp();
+            } catch (Throwable e) {
+                releaseConnection();
+                throw e;
             }
+            AppliedFixtures.markApplied(activeConnectionManager, fixtureKey);
         }
+        try {
+            evaluateBody(base);
+        } finally {
+            if (!readOnly || getTearDownOperation() != DatabaseOperation.NONE) {
+                AppliedFixtures.markDirty(activeConnectionManager);
+            }
+            try {
+                begin(TestPhase.TEAR_DOWN);
+                try {
+                    onTearDown();
+                } finally {
+                    end();
+                }
+            } finally {
+                releaseConnection();
+            }
+        }
+    }
+
+    private void setUp() throws Exception {
+        TestTiming current = timing;
+        if (current == null) {
+            onSetup();
+            return;
+        }
+        IDataSet dataSet = getDataSet();
+        current.begin(TestPhase.SET_UP);
+        super.setDataSet(new TimedDataSet(dataSet, current));
+        try {
+            onSetup();
+        } finally {
+            super.setDataSet(dataSet);
+            current.end();
+        }
+    }
+
+    private void evaluateBody(Statement base) throws Throwable {
+        begin(TestPhase.BODY);
+        try {
+            base.evaluate();
+        } finally {
+            end();
+        }
+    }
+
+    private void begin(TestPhase phase) {
+        TestTiming current = timing;
+        if (current != null) current.begin(phase);
+    }
+
+    private void end() {
+        TestTiming current = timing;
+        if (current != null) current.end();
+    }
+
+    private Workers leaseWorker() throws InterruptedException {
+        if (!(connectionManager instanceof WorkerDatabaseConnectionManager)) return null;
+        WorkerDatabaseConnectionManager workerConnectionManager = (WorkerDatabaseConnectionManager) connectionManager;
+        if (workerConnectionManager.getWorkerCount() == 0) return null;
+        Workers workers = Workers.of(workerConnectionManager);
+        begin(TestPhase.CONNECTION);
+        try {
+            activeConnectionManager = workerConnectionManager.forWorker(workers.lease());
+        } finally {
+            end();
+        }
+        return workers;
+    }
+
+    private void evaluateInRollbackMode(Statement base) throws Throwable {
+        begin(TestPhase.CONNECTION);
+        RollbackSession session;
+        try {
+            session = RollbackSession.of(activeConnectionManager);
+        } finally {
+            end();
+        }
+        TestTiming current = timing;
+        begin(TestPhase.SET_UP);
+        try {
+            IDataSet dataSet = getDataSet();
+            session.setUp(getSetUpOperation(), current == null ? dataSet : new TimedDataSet(dataSet, current),
+                    fixtureKey);
+        } finally {
+            end();
+        }
+        try {
+            evaluateBody(base);
+        } finally {
+            releaseConnection();
+            begin(TestPhase.TEAR_DOWN);
+            try {
+                session.rollback();
+            } finally {
+                end();
+            }
+        }
+    }
+
+    private synchronized void releaseConnection() {
+        if (connection == null) return;
+        begin(TestPhase.CLOSE);
+        try {
+            connection.close();
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            end();
+        }
+        connection = null;
     }
 
     private void setDataSetFromAnnotation(Description description) {
@@ -170,35 +514,38 @@ public class DbUnitTester extends AbstractDatabaseTester implements TestRule {
         if (resources == null || resources.length == 0) return;
         try {
             if (resources.length == 1) {
-                setDataSet(loadDataSet(type, resources[0], testClass));
+                setDataSet(FixtureCache.load(type, findResource(type, resources[0], testClass)));
             } else {
-                IDataSet[] dataSets = new IDataSet[resources.length];
+                URL[] urls = new URL[resources.length];
                 for (int i = 0; i < resources.length; i++) {
-                    dataSets[i] = loadDataSet(type, resources[i], testClass);
+                    urls[i] = findResource(type, resources[i], testClass);
                 }
-                setDataSet(new CompositeDataSet(dataSets));
+                setDataSet(new LazyCompositeDataSet(type, urls));
             }
         } catch (YAMLException e) {
             throw new YAMLException("Cant load fixture: " + Arrays.toString(resources), e);
-        } catch (DataSetException | URISyntaxException e) {
+        } catch (DataSetException | URISyntaxException | IOException e) {
             throw new AssertionError(e);
         }
     }
     
-    private IDataSet loadDataSet(Fixture.Type type, String resource, Class<?> testClass) 
-            throws DataSetException, URISyntaxException {
+    private URL findResource(Fixture.Type type, String resource, Class<?> testClass) {
+        URL url;
         switch (type) {
         case CSV:
-            URL url = testClass.getResource(resource);
-            if (url == null) throw new AssertionError("Can't find resource: " + resource);
-            return new CsvDataSet(new File(url.toURI()));
+            url = testClass.getResource(resource);
+            if (url == null) url = testClass.getResource(resource + "/" + FixtureCache.TABLE_ORDERING);
+            break;
         case YAML:
-            InputStream input = getResourceAsStream(testClass, resource);
-            if (input == null) throw new AssertionError("Can't find resource: " + resource);
-            return YamlDataSet.load(input);
+        case BINARY:
+        case GENERATOR:
+            url = getResource(testClass, resource);
+            break;
         default:
             throw new IllegalArgumentException("Unsupported type: " + type);
         }
+        if (url == null) throw new AssertionError("Can't find resource: " + resource);
+        return url;
     }
 
     private Fixture findFixtureAnnotation(Description description) {
@@ -207,11 +554,17 @@ public class DbUnitTester extends AbstractDatabaseTester implements TestRule {
         return description.getTestClass().getAnnotation(Fixture.class);
     }
 
-    private InputStream getResourceAsStream(Class<?> testClass, String resourceName) {
+    private boolean isReadOnly(Description description) {
+        if (description.getAnnotation(ReadOnly.class) != null) return true;
+        Class<?> testClass = description.getTestClass();
+        return testClass != null && testClass.isAnnotationPresent(ReadOnly.class);
+    }
+
+    private URL getResource(Class<?> testClass, String resourceName) {
         if (resourceName.startsWith("/")) {
-            return getClass().getResourceAsStream(resourceName);
+            return getClass().getResource(resourceName);
         } else {
-            return getClass().getResourceAsStream(
+            return getClass().getResource(
                     "/" + testClass.getPackage().getName().replaceAll("\\.", "/") + "/" + resourceName);
         }
     }
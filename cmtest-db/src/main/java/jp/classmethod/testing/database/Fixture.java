@@ -29,8 +29,13 @@ import java.lang.annotation.Target;
  * リソース名が/で始まる場合はルートパッケージからの絶対パスとなる（例: /jp/classmethod/testing/fixtures.yaml）
  * リソース名が/で始まらない場合はテストクラスと同じパッケージから検索する（例: users.yaml）</p>
  * 
- * <p>typeにはリソースの種類を指定する。現在、YAMLとCSVのみ対応。
- * YAMLの場合はYAMLファイルをリソースとして指定する。CSVの場合はCSVファイルがあるディレクトリを指定する。</p>
+ * <p>typeにはリソースの種類を指定する。現在、YAML、CSV、BINARY、GENERATORに対応。
+ * YAMLの場合はYAMLファイルをリソースとして指定する。CSVの場合はCSVファイルがあるディレクトリを指定する。
+ * BINARYの場合は{@link BinaryFixtureCompiler}でコンパイルしたファイルを指定する。
+ * GENERATORの場合はレコードの生成規則を定義したYAMLファイルを指定する（{@link GeneratedDataSet}を参照）。</p>
+ * 
+ * <p>リソースを複数指定した場合は{@link LazyCompositeDataSet}となり、各リソースはセットアップで必要になった時に読み込まれる。
+ * 同じ名前のテーブルは1つのテーブルに連結される。</p>
  * 
  * <ul>
  * <li>テストクラスに指定した場合、全テストメソッドで共通のフィクスチャが適用される。</li>
@@ -50,6 +55,6 @@ public @interface Fixture {
     Fixture.Type type() default Type.YAML;
 
     public static enum Type {
-        YAML, CSV;
+        YAML, CSV, BINARY, GENERATOR;
     }
 }
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2013 Classmethod, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.classmethod.testing.database;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.dbunit.dataset.DataSetException;
+import org.dbunit.dataset.IDataSet;
+import org.dbunit.dataset.csv.CsvProducer;
+import org.dbunit.dataset.csv.CsvURLDataSet;
+
+/**
+ * 読み込み済みのフィクスチャを保持するJVM全体で共有のキャッシュ。
+ * <p>
+ * フィクスチャの種類、リソースのURL、リソースの最終更新日時をキーとして、読み込んだデータセットを保持する。
+ * 保持するデータセットの数には上限があり、上限を超えた場合は最も長く使われていないデータセットから破棄する。
+ * 上限はシステムプロパティ<code>cmtest.fixtureCache.maxSize</code>で指定でき、0を指定した場合はキャッシュしない。
+ * </p>
+ * <p>
+ * キャッシュしたデータセットはテスト間で共有されるため、変更してはならない。
+ * </p>
+ * <p>
+ * CSVのフィクスチャはディレクトリ、またはディレクトリの{@value #TABLE_ORDERING}のURLを指定する。
+ * ファイルはURLから直接読み込むため、JARファイルに含まれるフィクスチャも展開せずに読み込むことができる。
+ * </p>
+ *
+ * @since 1.0
+ * @author shuji
+ */
+public class FixtureCache {
+
+    /** キャッシュするデータセットの数のデフォルトの上限 */
+    public static final int DEFAULT_MAX_SIZE = 64;
+    /** CSVのフィクスチャのテーブルの順序を定義するファイルの名前 */
+    public static final String TABLE_ORDERING = "table-ordering.txt";
+
+    private static final int maxSize = Integer.getInteger("cmtest.fixtureCache.maxSize", DEFAULT_MAX_SIZE);
+    private static final AtomicLong hitCount = new AtomicLong();
+    private static final AtomicLong missCount = new AtomicLong();
+    private static final Map<Key, IDataSet> cache = new LinkedHashMap<Key, IDataSet>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, IDataSet> eldest) {
+            return size() > maxSize;
+        }
+    };
+
+    private FixtureCache() {
+    }
+
+    /**
+     * フィクスチャを読み込む。
+     * <p>キャッシュに同じリソースのデータセットがあればそれを返し、なければ読み込んでキャッシュする。</p>
+     *
+     * @param type フィクスチャの種類
+     * @param url フィクスチャのリソース
+     * @return データセット
+     * @throws DataSetException データセットの生成に失敗した場合
+     * @throws IOException リソースの読み込みに失敗した場合
+     * @throws URISyntaxException リソースのURLが不正な場合
+     * @since 1.0
+     */
+    public static IDataSet load(Fixture.Type type, URL url) throws DataSetException, IOException, URISyntaxException {
+        Key key = new Key(type, url.toExternalForm(), lastModified(type, url));
+        synchronized (cache) {
+            IDataSet dataSet = cache.get(key);
+            if (dataSet != null) {
+                hitCount.incrementAndGet();
+                return dataSet;
+            }
+        }
+        missCount.incrementAndGet();
+        IDataSet dataSet = parse(type, url);
+        synchronized (cache) {
+            cache.put(key, dataSet);
+        }
+        return dataSet;
+    }
+
+    /**
+     * フィクスチャのテーブル名を、できるだけレコードを読み込まずに取得する。
+     * <p>
+     * キャッシュに同じリソースのデータセットがあればそのテーブル名を返す。
+     * ない場合、YAMLはトップレベルのキーだけを読み込み、CSVは{@value #TABLE_ORDERING}だけを読み込む。
+     * その他の種類はフィクスチャを読み込んでキャッシュする。
+     * </p>
+     *
+     * @param type フィクスチャの種類
+     * @param url フィクスチャのリソース
+     * @return テーブル名
+     * @throws DataSetException データセットの生成に失敗した場合
+     * @throws IOException リソースの読み込みに失敗した場合
+     * @throws URISyntaxException リソースのURLが不正な場合
+     * @since 1.0
+     */
+    public static String[] tableNames(Fixture.Type type, URL url) throws DataSetException, IOException,
+            URISyntaxException {
+        Key key = new Key(type, url.toExternalForm(), lastModified(type, url));
+        synchronized (cache) {
+            IDataSet dataSet = cache.get(key);
+            if (dataSet != null) return dataSet.getTableNames();
+        }
+        switch (type) {
+        case YAML:
+            try (InputStream input = url.openStream()) {
+                return YamlProducer.tableNames(input);
+            }
+        case CSV:
+            return csvTableNames(url);
+        default:
+            return load(type, url).getTableNames();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String[] csvTableNames(URL url) throws IOException {
+        List<String> tableNames = CsvProducer.getTables(csvBase(url), TABLE_ORDERING);
+        return tableNames.toArray(new String[tableNames.size()]);
+    }
+
+    /**
+     * キャッシュにヒットした回数を返す。
+     * @return ヒットした回数
+     * @since 1.0
+     */
+    public static long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * キャッシュにヒットせず、フィクスチャを読み込んだ回数を返す。
+     * @return ヒットしなかった回数
+     * @since 1.0
+     */
+    public static long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * キャッシュしているデータセットの数を返す。
+     * @return データセットの数
+     * @since 1.0
+     */
+    public static int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * キャッシュを破棄し、カウンタをリセットする。
+     * @since 1.0
+     */
+    public static void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+        hitCount.set(0);
+        missCount.set(0);
+    }
+
+    static IDataSet parse(Fixture.Type type, URL url) throws DataSetException, IOException, URISyntaxException {
+        switch (type) {
+        case CSV:
+            return new CsvURLDataSet(csvBase(url));
+        case YAML:
+            try (InputStream input = url.openStream()) {
+                return YamlDataSet.load(input);
+            }
+        case BINARY:
+            return BinaryDataSet.load(url);
+        case GENERATOR:
+            return GeneratedDataSet.load(url);
+        default:
+            throw new IllegalArgumentException("Unsupported type: " + type);
+        }
+    }
+
+    /**
+     * CSVのファイルの位置を解決する基準となるURLを返す。
+     * @param url ディレクトリ、またはディレクトリの{@value #TABLE_ORDERING}のURL
+     * @return ディレクトリの中のファイルを相対URLで解決できるURL
+     */
+    static URL csvBase(URL url) throws MalformedURLException {
+        String location = url.toExternalForm();
+        if (location.endsWith("/") || location.endsWith("/" + TABLE_ORDERING)) return url;
+        return new URL(location + "/");
+    }
+
+    static long lastModified(Fixture.Type type, URL url) throws IOException, URISyntaxException {
+        if ("file".equals(url.getProtocol())) {
+            File file = new File(url.toURI());
+            if (type == Fixture.Type.CSV && file.isFile()) file = file.getParentFile();
+            return lastModified(file);
+        }
+        URLConnection conn = url.openConnection();
+        if (conn instanceof JarURLConnection) {
+            return lastModified(null, ((JarURLConnection) conn).getJarFileURL());
+        }
+        conn.setUseCaches(false);
+        return conn.getLastModified();
+    }
+
+    private static long lastModified(File file) {
+        long lastModified = file.lastModified();
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                lastModified = Math.max(lastModified, lastModified(child));
+            }
+        }
+        return lastModified;
+    }
+
+    static class Key {
+        final Fixture.Type type;
+        final String url;
+        final long lastModified;
+
+        Key(Fixture.Type type, String url, long lastModified) {
+            this.type = type;
+            this.url = url;
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public int hashCode() {
+            final int prime = 31;
+            int result = 1;
+            result = prime * result + type.hashCode();
+            result = prime * result + url.hashCode();
+            result = prime * result + (int) (lastModified ^ (lastModified >>> 32));
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (obj == null) return false;
+            if (getClass() != obj.getClass()) return false;
+            Key other = (Key) obj;
+            return type == other.type && url.equals(other.url) && lastModified == other.lastModified;
+        }
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright 2013 Classmethod, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.classmethod.testing.database;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.dbunit.dataset.AbstractDataSet;
+import org.dbunit.dataset.AbstractTable;
+import org.dbunit.dataset.Column;
+import org.dbunit.dataset.DataSetException;
+import org.dbunit.dataset.DefaultTableIterator;
+import org.dbunit.dataset.DefaultTableMetaData;
+import org.dbunit.dataset.ITable;
+import org.dbunit.dataset.ITableIterator;
+import org.dbunit.dataset.ITableMetaData;
+import org.dbunit.dataset.NoSuchColumnException;
+import org.dbunit.dataset.RowOutOfBoundsException;
+import org.dbunit.dataset.datatype.DataType;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.error.YAMLException;
+
+/**
+ * YAMLで定義したカラムの生成規則からレコードを生成するデータセット。
+ * <p>
+ * 大量のレコードをフィクスチャのファイルとして持たずに、小さな定義から本番相当の件数のテーブルを作成する。
+ * レコードは保持せず、{@link ITable#getValue(int, String)}で参照された時に行番号から値を計算する。
+ * そのため、{@link BatchInsertOperation}などのオペレーションは件数によらず一定のメモリで挿入できる。
+ * </p>
+ * <pre>
+ * roles:
+ *   count: 10
+ *   columns:
+ *     id: {sequence: 1}
+ *     name: role-{n}
+ * users:
+ *   count: 1000000
+ *   seed: 42
+ *   columns:
+ *     id: {sequence: 1}
+ *     role_id: {random: [1, 10]}
+ *     status: {cycle: [active, active, suspended]}
+ *     created_at: {sequence: 2013-01-01 00:00:00, step: 60}
+ * orders:
+ *   repeat: 500000
+ *   offsets: {id: 2, user_id: 1}
+ *   rows:
+ *     - {id: 1, user_id: 1, amount: 100}
+ *     - {id: 2, user_id: 1, amount: 200}
+ * </pre>
+ * <p>
+ * テーブルはcountで件数を指定してcolumnsの生成規則で値を生成するか、
+ * rowsの雛形のレコードをrepeat回繰り返す。雛形を繰り返す場合、offsetsに指定したカラムは
+ * 繰り返す毎に指定した値だけずらす。columnsは雛形のカラムを上書きすることもできる。
+ * 生成規則は{@link ColumnGenerator#of(String, Object, long)}を参照。
+ * 乱数はテーブルのseed（省略時は0）から計算するため、同じ定義からは常に同じレコードが生成される。
+ * </p>
+ * <p>
+ * システムプロパティ<code>cmtest.generator.scale</code>を指定すると、countとrepeatにその倍率を掛ける。
+ * 同じ定義のまま、開発時は少ない件数で、負荷を想定したテストでは多い件数でテストできる。
+ * </p>
+ *
+ * @since 1.0
+ * @author shuji
+ */
+public class GeneratedDataSet extends AbstractDataSet {
+
+    private final Map<String, Object> definition;
+    private final double scale;
+    private final List<ITable> tables = new ArrayList<>();
+
+    GeneratedDataSet(Map<String, Object> definition, double scale) throws DataSetException {
+        super(false);
+        this.definition = definition == null ? Collections.<String, Object> emptyMap() : definition;
+        this.scale = scale;
+        for (Entry<String, Object> entry : this.definition.entrySet()) {
+            if (!(entry.getValue() instanceof Map)) {
+                throw new DataSetException("Table " + entry.getKey() + " must be a mapping: " + entry.getValue());
+            }
+            tables.add(table(entry.getKey(), (Map<?, ?>) entry.getValue()));
+        }
+    }
+
+    /**
+     * YAMLの定義を読み込んで、データセットを生成する。
+     * @param input YAMLリソース
+     * @return データセット
+     * @throws DataSetException 定義が正しくない場合
+     * @since 1.0
+     */
+    @SuppressWarnings("unchecked")
+    public static GeneratedDataSet load(InputStream input) throws DataSetException {
+        Object definition;
+        try {
+            definition = new Yaml().load(input);
+        } catch (YAMLException e) {
+            throw new DataSetException(e);
+        }
+        if (definition != null && !(definition instanceof Map)) {
+            throw new DataSetException("Generator definition must be a mapping: " + definition);
+        }
+        return new GeneratedDataSet((Map<String, Object>) definition, scale());
+    }
+
+    /**
+     * YAMLの定義を読み込んで、データセットを生成する。
+     * @param url YAMLリソース
+     * @return データセット
+     * @throws IOException リソースの読み込みに失敗した場合
+     * @throws DataSetException 定義が正しくない場合
+     * @since 1.0
+     */
+    public static GeneratedDataSet load(URL url) throws IOException, DataSetException {
+        try (InputStream input = url.openStream()) {
+            return load(input);
+        }
+    }
+
+    Map<String, Object> definition() {
+        return definition;
+    }
+
+    static double scale() {
+        String scale = System.getProperty("cmtest.generator.scale");
+        return scale == null ? 1.0 : Double.parseDouble(scale);
+    }
+
+    int scaled(String tableName, String name, Object value) throws DataSetException {
+        long count = ColumnGenerator.longValue(tableName, name, value);
+        if (count < 0) throw new DataSetException(name + " of table " + tableName + " is negative: " + count);
+        long scaled = count == 0 ? 0 : Math.max(1, Math.round(count * scale));
+        if (Integer.MAX_VALUE < scaled) {
+            throw new DataSetException(name + " of table " + tableName + " is too large: " + scaled);
+        }
+        return (int) scaled;
+    }
+
+    GeneratedTable table(String tableName, Map<?, ?> table) throws DataSetException {
+        long seed = table.containsKey("seed") ? ColumnGenerator.longValue(tableName, "seed", table.get("seed")) : 0;
+        Map<String, ColumnGenerator> generators = new LinkedHashMap<>();
+        int rowCount;
+        if (table.containsKey("rows")) {
+            if (table.containsKey("count")) {
+                throw new DataSetException("Table " + tableName + " can't have both count and rows.");
+            }
+            List<?> rows = list(tableName, "rows", table.get("rows"));
+            int repeat = table.containsKey("repeat") ? scaled(tableName, "repeat", table.get("repeat")) : 1;
+            long count = (long) rows.size() * repeat;
+            if (Integer.MAX_VALUE < count) {
+                throw new DataSetException("rows of table " + tableName + " is too large: " + count);
+            }
+            rowCount = (int) count;
+            Map<?, ?> offsets = table.containsKey("offsets") ? mapping(tableName, "offsets", table.get("offsets"))
+                    : Collections.emptyMap();
+            for (Entry<String, Object[]> column : templateColumns(tableName, rows).entrySet()) {
+                Object offset = offsets.get(column.getKey());
+                long shift = offset == null ? 0 : ColumnGenerator.longValue(column.getKey(), "offset", offset);
+                generators.put(column.getKey(), new ColumnGenerator.TemplateColumn(column.getValue(), shift));
+            }
+            for (Object column : offsets.keySet()) {
+                if (!generators.containsKey(column)) {
+                    throw new DataSetException("Offset column " + column + " is not in rows of table " + tableName);
+                }
+            }
+        } else {
+            if (!table.containsKey("count")) {
+                throw new DataSetException("Table " + tableName + " must have count or rows.");
+            }
+            rowCount = scaled(tableName, "count", table.get("count"));
+        }
+        if (table.containsKey("columns")) {
+            for (Entry<?, ?> column : mapping(tableName, "columns", table.get("columns")).entrySet()) {
+                String columnName = String.valueOf(column.getKey());
+                generators.put(columnName, ColumnGenerator.of(columnName, column.getValue(), seed));
+            }
+        }
+        return new GeneratedTable(tableName, rowCount, generators);
+    }
+
+    static Map<String, Object[]> templateColumns(String tableName, List<?> rows) throws DataSetException {
+        Map<String, Object[]> columns = new LinkedHashMap<>();
+        for (int row = 0; row < rows.size(); row++) {
+            for (Entry<?, ?> entry : mapping(tableName, "row " + row, rows.get(row)).entrySet()) {
+                String columnName = String.valueOf(entry.getKey());
+                Object[] values = columns.get(columnName);
+                if (values == null) {
+                    values = new Object[rows.size()];
+                    columns.put(columnName, values);
+                }
+                values[row] = entry.getValue();
+            }
+        }
+        return columns;
+    }
+
+    static Map<?, ?> mapping(String tableName, String name, Object value) throws DataSetException {
+        if (!(value instanceof Map)) {
+            throw new DataSetException(name + " of table " + tableName + " must be a mapping: " + value);
+        }
+        return (Map<?, ?>) value;
+    }
+
+    static List<?> list(String tableName, String name, Object value) throws DataSetException {
+        if (!(value instanceof List)) {
+            throw new DataSetException(name + " of table " + tableName + " must be a list: " + value);
+        }
+        return (List<?>) value;
+    }
+
+    @Override
+    protected ITableIterator createIterator(boolean reversed) throws DataSetException {
+        return new DefaultTableIterator(tables.toArray(new ITable[tables.size()]), reversed);
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + definition.hashCode();
+        long temp = Double.doubleToLongBits(scale);
+        result = prime * result + (int) (temp ^ (temp >>> 32));
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (obj == null) return false;
+        if (getClass() != obj.getClass()) return false;
+        GeneratedDataSet other = (GeneratedDataSet) obj;
+        return definition.equals(other.definition) && Double.compare(scale, other.scale) == 0;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder str = new StringBuilder("GeneratedDataSet[");
+        for (int i = 0; i < tables.size(); i++) {
+            if (i > 0) str.append(", ");
+            ITable table = tables.get(i);
+            str.append(table.getTableMetaData().getTableName()).append("=").append(table.getRowCount());
+        }
+        return str.append("]").toString();
+    }
+
+    /**
+     * 行番号から値を生成するテーブル。
+     */
+    static class GeneratedTable extends AbstractTable {
+
+        final int rowCount;
+        final ITableMetaData metaData;
+        final ColumnGenerator[] generators;
+
+        GeneratedTable(String tableName, int rowCount, Map<String, ColumnGenerator> generators) {
+            this.rowCount = rowCount;
+            Column[] columns = new Column[generators.size()];
+            int i = 0;
+            for (String columnName : generators.keySet()) {
+                columns[i++] = new Column(columnName, DataType.UNKNOWN);
+            }
+            this.metaData = new DefaultTableMetaData(tableName, columns);
+            this.generators = generators.values().toArray(new ColumnGenerator[columns.length]);
+        }
+
+        @Override
+        public ITableMetaData getTableMetaData() {
+            return metaData;
+        }
+
+        @Override
+        public int getRowCount() {
+            return rowCount;
+        }
+
+        @Override
+        public Object getValue(int row, String column) throws DataSetException {
+            if (row < 0 || rowCount <= row) throw new RowOutOfBoundsException(row + " not in [0, " + rowCount + ")");
+            int index = metaData.getColumnIndex(column);
+            if (index < 0) throw new NoSuchColumnException(metaData.getTableName(), column);
+            return generators[index].value(row);
+        }
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright 2013 Classmethod, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.classmethod.testing.database;
+
+import static jp.classmethod.testing.internal.PreConditions.checkNotNull;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.dbunit.DatabaseUnitException;
+import org.dbunit.database.DatabaseConfig;
+import org.dbunit.database.IDatabaseConnection;
+import org.dbunit.dataset.DataSetException;
+import org.dbunit.dataset.IDataSet;
+import org.dbunit.operation.DatabaseOperation;
+import org.dbunit.util.QualifiedTableName;
+
+/**
+ * H2データベースのスナップショットを復元してフィクスチャをセットアップするDbUnitのオペレーション。
+ * <p>
+ * データセットを初めてセットアップする時は、指定したオペレーションでデータセットを読み込んだ後、
+ * データセットに含まれるテーブルのレコードをSCRIPT文で書き出し、INSERT文としてメモリに保持する。
+ * 同じデータセットを再びセットアップする時は、データセットに含まれるテーブルのレコードを逆順に削除し、
+ * 保持したINSERT文をデータセットの順に実行してスナップショットを復元する。
+ * スナップショットはデータベースのURLとデータセットの組み合わせ毎に保持する。
+ * </p>
+ * <p>
+ * データセットに含まれないテーブルとテーブルの定義は復元しない。
+ * SCRIPT文がLOBを分割して書き出すテーブルを含むデータセットと、H2以外のデータベースでは、
+ * 指定したオペレーションをそのまま実行する。
+ * </p>
+ * 
+ * @since 1.0
+ * @author shuji
+ */
+public class H2SnapshotOperation extends DatabaseOperation {
+
+    /** 保持するスナップショットの数のデフォルトの上限 */
+    public static final int DEFAULT_MAX_SNAPSHOTS = 16;
+    /** CLEAN_INSERTで読み込んだデータベースのスナップショットを復元するオペレーション */
+    public static final H2SnapshotOperation CLEAN_INSERT = new H2SnapshotOperation(DatabaseOperation.CLEAN_INSERT);
+
+    /** logger */
+    private static Logger log = Logger.getLogger(H2SnapshotOperation.class.getName());
+
+    final DatabaseOperation loadOperation;
+    final int maxSnapshots;
+    /** 最近使った順のスナップショット */
+    final LinkedList<Snapshot> snapshots = new LinkedList<>();
+    final AtomicLong snapshotCount = new AtomicLong();
+    final AtomicLong restoreCount = new AtomicLong();
+    final AtomicLong restoreNanos = new AtomicLong();
+
+    /**
+     * データセットを読み込むオペレーションを指定して、インスタンスを生成する。
+     * @param loadOperation データセットを読み込むオペレーション
+     * @since 1.0
+     */
+    public H2SnapshotOperation(DatabaseOperation loadOperation) {
+        this(loadOperation, DEFAULT_MAX_SNAPSHOTS);
+    }
+
+    /**
+     * データセットを読み込むオペレーションと保持するスナップショットの数の上限を指定して、インスタンスを生成する。
+     * @param loadOperation データセットを読み込むオペレーション
+     * @param maxSnapshots 保持するスナップショットの数の上限
+     * @throws IllegalArgumentException 上限が1未満の場合
+     * @since 1.0
+     */
+    public H2SnapshotOperation(DatabaseOperation loadOperation, int maxSnapshots) throws IllegalArgumentException {
+        checkNotNull(loadOperation, "loadOperation");
+        if (maxSnapshots < 1) throw new IllegalArgumentException("maxSnapshots must be positive: " + maxSnapshots);
+        this.loadOperation = loadOperation;
+        this.maxSnapshots = maxSnapshots;
+    }
+
+    @Override
+    public void execute(IDatabaseConnection connection, IDataSet dataSet) throws DatabaseUnitException,
+            SQLException {
+        Connection jdbcConnection = connection.getConnection();
+        if (!"H2".equals(jdbcConnection.getMetaData().getDatabaseProductName())) {
+            loadOperation.execute(connection, dataSet);
+            return;
+        }
+        String url = jdbcConnection.getMetaData().getURL();
+        Snapshot snapshot = find(url, dataSet);
+        if (snapshot != null && snapshot.inserts != null) {
+            restore(jdbcConnection, snapshot);
+            return;
+        }
+        loadOperation.execute(connection, dataSet);
+        if (snapshot != null) return;
+        snapshot = new Snapshot(url, dataSet, qualifiedNames(connection, dataSet.getTableNames()));
+        snapshot.inserts = script(jdbcConnection, snapshot.tableNames);
+        synchronized (snapshots) {
+            snapshots.addFirst(snapshot);
+            if (snapshots.size() > maxSnapshots) snapshots.removeLast();
+        }
+        if (snapshot.inserts != null) snapshotCount.incrementAndGet();
+    }
+
+    /**
+     * URLとデータセットが等しいスナップショットを探す。
+     * <p>データセットのhashCodeはレコード全体を走査する場合があるため、
+     * 同じインスタンスを先に探し、見つからない場合だけequalsで比較する。</p>
+     */
+    private Snapshot find(String url, IDataSet dataSet) {
+        synchronized (snapshots) {
+            Snapshot found = null;
+            for (Snapshot snapshot : snapshots) {
+                if (snapshot.dataSet == dataSet && snapshot.url.equals(url)) {
+                    found = snapshot;
+                    break;
+                }
+            }
+            if (found == null) {
+                for (Snapshot snapshot : snapshots) {
+                    if (snapshot.url.equals(url) && snapshot.dataSet.equals(dataSet)) {
+                        found = snapshot;
+                        break;
+                    }
+                }
+            }
+            if (found != null) {
+                snapshots.remove(found);
+                snapshots.addFirst(found);
+            }
+            return found;
+        }
+    }
+
+    /**
+     * データベースのメタデータのテーブル名を、コネクションのスキーマで修飾して引用符で囲む。
+     * <p>エスケープパターンが設定されていない場合は、H2の二重引用符で囲む。</p>
+     */
+    private static String[] qualifiedNames(IDatabaseConnection connection, String[] tableNames)
+            throws SQLException, DataSetException {
+        IDataSet databaseDataSet = connection.createDataSet();
+        String escapePattern = (String) connection.getConfig().getProperty(DatabaseConfig.PROPERTY_ESCAPE_PATTERN);
+        if (escapePattern == null) escapePattern = "\"?\"";
+        String[] qualifiedNames = new String[tableNames.length];
+        for (int i = 0; i < tableNames.length; i++) {
+            String tableName = databaseDataSet.getTableMetaData(tableNames[i]).getTableName();
+            qualifiedNames[i] = new QualifiedTableName(tableName, connection.getSchema(), escapePattern)
+                    .getQualifiedName();
+        }
+        return qualifiedNames;
+    }
+
+    /**
+     * テーブル毎にレコードのINSERT文を書き出す。LOBを分割して書き出した場合は{@code null}を返す。
+     */
+    private static List<String>[] script(Connection jdbcConnection, String[] tableNames) throws SQLException {
+        @SuppressWarnings("unchecked")
+        List<String>[] inserts = new List[tableNames.length];
+        try (Statement stat = jdbcConnection.createStatement()) {
+            for (int i = 0; i < tableNames.length; i++) {
+                inserts[i] = new ArrayList<>();
+                try (ResultSet rs = stat.executeQuery("SCRIPT NOPASSWORDS NOSETTINGS TABLE " + tableNames[i])) {
+                    while (rs.next()) {
+                        String sql = rs.getString(1);
+                        if (sql.contains("SYSTEM_COMBINE_")) {
+                            log.log(Level.FINE, "skip snapshot: {0} contains large objects", tableNames[i]);
+                            return null;
+                        }
+                        if (sql.startsWith("INSERT INTO ")) inserts[i].add(sql);
+                    }
+                }
+            }
+        }
+        return inserts;
+    }
+
+    private void restore(Connection jdbcConnection, Snapshot snapshot) throws SQLException {
+        long start = System.nanoTime();
+        try (Statement stat = jdbcConnection.createStatement()) {
+            for (int i = snapshot.tableNames.length - 1; i >= 0; i--) {
+                stat.executeUpdate("DELETE FROM " + snapshot.tableNames[i]);
+            }
+            for (List<String> inserts : snapshot.inserts) {
+                for (String sql : inserts) {
+                    stat.executeUpdate(sql);
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        restoreCount.incrementAndGet();
+        restoreNanos.addAndGet(elapsed);
+        log.log(Level.FINE, "restored {0} tables in {1} ms", new Object[] { snapshot.tableNames.length,
+            TimeUnit.NANOSECONDS.toMillis(elapsed) });
+    }
+    /**
+     * スナップショットを作成した回数を返す。
+     * @return スナップショットを作成した回数
+     * @since 1.0
+     */
+    public long getSnapshotCount() {
+        return snapshotCount.get();
+    }
+
+    /**
+     * スナップショットを復元した回数を返す。
+     * @return スナップショットを復元した回数
+     * @since 1.0
+     */
+    public long getRestoreCount() {
+        return restoreCount.get();
+    }
+
+    /**
+     * スナップショットの復元に要した時間の合計を返す。
+     * @param unit 時間の単位
+     * @return 復元に要した時間の合計
+     * @since 1.0
+     */
+    public long getRestoreTime(TimeUnit unit) {
+        return unit.convert(restoreNanos.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * スナップショットの作成と復元の集計値を文字列で返す。
+     * @return 集計値の文字列表現
+     * @since 1.0
+     */
+    public String summary() {
+        long restores = restoreCount.get();
+        double average = (restores == 0) ? 0 : restoreNanos.get() / 1000000.0 / restores;
+        return String.format("snapshots: created=%s, restored=%s, total=%s ms, average=%.3f ms",
+                snapshotCount.get(), restores, getRestoreTime(TimeUnit.MILLISECONDS), average);
+    }
+
+    static class Snapshot {
+        final String url;
+        final IDataSet dataSet;
+        final String[] tableNames;
+        /** テーブル毎のINSERT文。スナップショットを作成できない場合は{@code null} */
+        List<String>[] inserts;
+
+        Snapshot(String url, IDataSet dataSet, String[] tableNames) {
+            this.url = url;
+            this.dataSet = dataSet;
+            this.tableNames = tableNames;
+        }
+    }
+}
@@ -0,0 +1,422 @@
+/*
+ * Copyright 2013 Classmethod, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.classmethod.testing.database;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.dbunit.DatabaseUnitException;
+import org.dbunit.database.IDatabaseConnection;
+import org.dbunit.dataset.Column;
+import org.dbunit.dataset.DefaultTable;
+import org.dbunit.dataset.IDataSet;
+import org.dbunit.dataset.ITable;
+import org.dbunit.dataset.ITableIterator;
+import org.dbunit.dataset.ITableMetaData;
+import org.dbunit.dataset.datatype.DataType;
+import org.dbunit.operation.AbstractOperation;
+
+/**
+ * データベースのテーブルとデータセットの差分だけを更新してフィクスチャをセットアップするDbUnitのオペレーション。
+ * <p>
+ * CLEAN_INSERTと同じく、データセットのテーブルをデータセットのレコードだけを含む状態にするが、
+ * 全レコードを削除して挿入し直す代わりに、現在のレコードを主キーでデータセットのレコードと突き合わせ、
+ * データセットにないレコードのDELETE、値の異なるレコードのUPDATE、不足しているレコードのINSERTだけを実行する。
+ * 大きなフィクスチャの一部のレコードだけをテストで変更する場合に、セットアップのコストを抑えられる。
+ * </p>
+ * <p>
+ * 値の比較はデータセットに定義されたカラムだけを対象とし、データベースのカラムの{@link DataType}で行う。
+ * データセットに定義されていないカラムの値は元に戻らないため、テストで変更するカラムはデータセットに定義すること。
+ * 主キーがないテーブル、データセットに主キーのカラムがないテーブル、
+ * 値が{@link ITable#NO_VALUE}のカラムを含むテーブルは、全レコードを削除して挿入する。
+ * </p>
+ * <p>
+ * DELETEはデータセットのテーブルの逆順に、UPDATEとINSERTはデータセットのテーブルの順に実行する。
+ * 外部キー制約などで差分の更新に失敗した場合は、データセットのすべてのテーブルの全レコードを削除して挿入し直す。
+ * </p>
+ *
+ * @since 1.0
+ * @author shuji
+ */
+public class IncrementalOperation extends AbstractOperation {
+
+    /** デフォルトのバッチサイズで差分を更新するオペレーション */
+    public static final IncrementalOperation CLEAN_INSERT = new IncrementalOperation(
+            BatchInsertOperation.DEFAULT_BATCH_SIZE);
+
+    /** logger */
+    private static Logger log = Logger.getLogger(IncrementalOperation.class.getName());
+
+    final int batchSize;
+    final BatchInsertOperation inserter;
+    final AtomicLong unchangedCount = new AtomicLong();
+    final AtomicLong insertCount = new AtomicLong();
+    final AtomicLong updateCount = new AtomicLong();
+    final AtomicLong deleteCount = new AtomicLong();
+    final AtomicLong reloadCount = new AtomicLong();
+
+    /**
+     * バッチサイズを指定して、インスタンスを生成する。
+     * @param batchSize 1回のexecuteBatchで実行するステートメントの数
+     * @throws IllegalArgumentException バッチサイズが1未満の場合
+     * @since 1.0
+     */
+    public IncrementalOperation(int batchSize) throws IllegalArgumentException {
+        this.inserter = new BatchInsertOperation(batchSize);
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public void execute(IDatabaseConnection connection, IDataSet dataSet) throws DatabaseUnitException,
+            SQLException {
+        IDataSet databaseDataSet = connection.createDataSet();
+        List<TableChanges> tables = new ArrayList<>();
+        ITableIterator iterator = dataSet.iterator();
+        while (iterator.next()) {
+            TableChanges changes = diff(connection, databaseDataSet, iterator.getTable());
+            if (changes != null) tables.add(changes);
+        }
+        Connection conn = connection.getConnection();
+        boolean multiRowValues = BatchInsertOperation.supportsMultiRowValues(conn);
+        Savepoint savepoint = conn.getAutoCommit() ? null : conn.setSavepoint();
+        try {
+            for (int i = tables.size() - 1; i >= 0; i--) {
+                tables.get(i).delete(connection);
+            }
+            for (TableChanges changes : tables) {
+                changes.update(connection);
+                changes.insert(connection, databaseDataSet, multiRowValues);
+            }
+        } catch (SQLException e) {
+            log.log(Level.INFO, "failed to apply changes, reload all tables: " + e.getMessage());
+            if (savepoint != null) conn.rollback(savepoint);
+            reload(connection, databaseDataSet, tables, multiRowValues);
+            reloadCount.incrementAndGet();
+            return;
+        }
+        if (savepoint != null) conn.releaseSavepoint(savepoint);
+        for (TableChanges changes : tables) {
+            unchangedCount.addAndGet(changes.unchanged);
+            insertCount.addAndGet(changes.inserts.size());
+            updateCount.addAndGet(changes.updates.size());
+            deleteCount.addAndGet(changes.deletes.size());
+        }
+    }
+
+    TableChanges diff(IDatabaseConnection connection, IDataSet databaseDataSet, ITable table)
+            throws DatabaseUnitException, SQLException {
+        ITableMetaData metaData = table.getTableMetaData();
+        Column[] columns = metaData.getColumns();
+        if (columns.length == 0) return null;
+        ITableMetaData dbMetaData = databaseDataSet.getTableMetaData(metaData.getTableName());
+        Column[] dbColumns = new Column[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            dbColumns[i] = dbMetaData.getColumns()[dbMetaData.getColumnIndex(columns[i].getColumnName())];
+        }
+        String tableName = getQualifiedName(connection.getSchema(), dbMetaData.getTableName(), connection);
+        TableChanges changes = new TableChanges(tableName, metaData, dbColumns);
+        boolean noValue = false;
+        for (int row = 0;; row++) {
+            Object[] values = BatchInsertOperation.readRow(table, row, columns);
+            if (values == null) break;
+            changes.rows.add(values);
+            noValue |= Arrays.asList(values).contains(ITable.NO_VALUE);
+        }
+        if (noValue) return changes;
+        changes.keyIndexes = keyIndexes(PrimaryKeys.lookup(connection, dbMetaData.getTableName()), dbColumns);
+        if (changes.keyIndexes == null) return changes;
+
+        Map<List<Object>, Integer> expected = new HashMap<>(changes.rows.size() * 4 / 3 + 1);
+        for (int row = 0; row < changes.rows.size(); row++) {
+            if (expected.put(changes.key(changes.rows.get(row)), row) != null) {
+                changes.keyIndexes = null;
+                return changes;
+            }
+        }
+        try (Statement stat = connection.getConnection().createStatement();
+                ResultSet rs = stat.executeQuery(selectSql(tableName, dbColumns, connection))) {
+            while (rs.next()) {
+                Object[] actual = new Object[dbColumns.length];
+                for (int i = 0; i < dbColumns.length; i++) {
+                    actual[i] = dbColumns[i].getDataType().getSqlValue(i + 1, rs);
+                }
+                Integer row = expected.remove(changes.key(actual));
+                if (row == null) {
+                    changes.deletes.add(actual);
+                } else if (changes.differs(changes.rows.get(row), actual)) {
+                    changes.updates.add(row);
+                } else {
+                    changes.unchanged++;
+                }
+            }
+        }
+        changes.inserts.addAll(expected.values());
+        Collections.sort(changes.inserts);
+        return changes;
+    }
+
+    void reload(IDatabaseConnection connection, IDataSet databaseDataSet, List<TableChanges> tables,
+            boolean multiRowValues) throws DatabaseUnitException, SQLException {
+        for (int i = tables.size() - 1; i >= 0; i--) {
+            tables.get(i).deleteAll(connection);
+        }
+        for (TableChanges changes : tables) {
+            changes.insertAll(connection, databaseDataSet, multiRowValues);
+        }
+    }
+
+    static int[] keyIndexes(String[] keys, Column[] columns) {
+        if (keys.length == 0) return null;
+        int[] indexes = new int[keys.length];
+        for (int k = 0; k < keys.length; k++) {
+            indexes[k] = -1;
+            for (int i = 0; i < columns.length; i++) {
+                if (columns[i].getColumnName().equalsIgnoreCase(keys[k])) indexes[k] = i;
+            }
+            if (indexes[k] < 0) return null;
+        }
+        return indexes;
+    }
+
+    String selectSql(String tableName, Column[] columns, IDatabaseConnection connection) {
+        StringBuilder sql = new StringBuilder("select ");
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) sql.append(", ");
+            sql.append(getQualifiedName(null, columns[i].getColumnName(), connection));
+        }
+        return sql.append(" from ").append(tableName).toString();
+    }
+
+    String whereKeys(Column[] columns, int[] keyIndexes, IDatabaseConnection connection) {
+        StringBuilder sql = new StringBuilder(" where ");
+        for (int k = 0; k < keyIndexes.length; k++) {
+            if (k > 0) sql.append(" and ");
+            sql.append(getQualifiedName(null, columns[keyIndexes[k]].getColumnName(), connection)).append(" = ?");
+        }
+        return sql.toString();
+    }
+
+    static Object normalize(Object value) {
+        if (value instanceof BigDecimal) {
+            BigDecimal decimal = (BigDecimal) value;
+            return decimal.signum() == 0 ? BigDecimal.ZERO : decimal.stripTrailingZeros();
+        }
+        if (value instanceof byte[]) return ByteBuffer.wrap((byte[]) value);
+        return value;
+    }
+
+    /**
+     * 差分を更新したレコード数の集計値を文字列で返す。
+     * @return 集計値の文字列表現
+     * @since 1.0
+     */
+    public String summary() {
+        return String.format("incremental: unchanged=%s, inserted=%s, updated=%s, deleted=%s, reloaded=%s",
+                unchangedCount.get(), insertCount.get(), updateCount.get(), deleteCount.get(), reloadCount.get());
+    }
+
+    /**
+     * 変更しなかったレコード数を返す。
+     * @return 変更しなかったレコード数
+     * @since 1.0
+     */
+    public long getUnchangedCount() {
+        return unchangedCount.get();
+    }
+
+    /**
+     * 挿入したレコード数を返す。
+     * @return 挿入したレコード数。全レコードを挿入し直したテーブルのレコードは含まない
+     * @since 1.0
+     */
+    public long getInsertCount() {
+        return insertCount.get();
+    }
+
+    /**
+     * 更新したレコード数を返す。
+     * @return 更新したレコード数
+     * @since 1.0
+     */
+    public long getUpdateCount() {
+        return updateCount.get();
+    }
+
+    /**
+     * 削除したレコード数を返す。
+     * @return 削除したレコード数。全レコードを削除したテーブルのレコードは含まない
+     * @since 1.0
+     */
+    public long getDeleteCount() {
+        return deleteCount.get();
+    }
+
+    /**
+     * 差分の更新に失敗し、全レコードを挿入し直した回数を返す。
+     * @return 挿入し直した回数
+     * @since 1.0
+     */
+    public long getReloadCount() {
+        return reloadCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "IncrementalOperation[batchSize=" + batchSize + "]";
+    }
+
+    class TableChanges {
+        final String tableName;
+        final ITableMetaData metaData;
+        final Column[] columns;
+        final List<Object[]> rows = new ArrayList<>();
+        final List<Object[]> deletes = new ArrayList<>();
+        final List<Integer> updates = new ArrayList<>();
+        final List<Integer> inserts = new ArrayList<>();
+        /** 主キーのカラムの位置。nullの場合は全レコードを削除して挿入する */
+        int[] keyIndexes;
+        long unchanged = 0;
+
+        TableChanges(String tableName, ITableMetaData metaData, Column[] columns) {
+            this.tableName = tableName;
+            this.metaData = metaData;
+            this.columns = columns;
+        }
+
+        List<Object> key(Object[] values) throws DatabaseUnitException {
+            Object[] key = new Object[keyIndexes.length];
+            for (int k = 0; k < keyIndexes.length; k++) {
+                int i = keyIndexes[k];
+                key[k] = normalize(columns[i].getDataType().typeCast(values[i]));
+            }
+            return Arrays.asList(key);
+        }
+
+        boolean differs(Object[] expected, Object[] actual) throws DatabaseUnitException {
+            for (int i = 0; i < columns.length; i++) {
+                if (columns[i].getDataType().compare(expected[i], actual[i]) != 0) return true;
+            }
+            return false;
+        }
+
+        void delete(IDatabaseConnection connection) throws DatabaseUnitException, SQLException {
+            if (keyIndexes == null) {
+                deleteAll(connection);
+                return;
+            }
+            if (deletes.isEmpty()) return;
+            String sql = "delete from " + tableName + whereKeys(columns, keyIndexes, connection);
+            try (PreparedStatement statement = connection.getConnection().prepareStatement(sql)) {
+                int pending = 0;
+                for (Object[] values : deletes) {
+                    for (int k = 0; k < keyIndexes.length; k++) {
+                        Column column = columns[keyIndexes[k]];
+                        column.getDataType().setSqlValue(values[keyIndexes[k]], k + 1, statement);
+                    }
+                    statement.addBatch();
+                    if (++pending >= batchSize) {
+                        statement.executeBatch();
+                        pending = 0;
+                    }
+                }
+                if (pending > 0) statement.executeBatch();
+            }
+        }
+
+        void update(IDatabaseConnection connection) throws DatabaseUnitException, SQLException {
+            if (keyIndexes == null || updates.isEmpty() || keyIndexes.length == columns.length) return;
+            StringBuilder sql = new StringBuilder("update ").append(tableName).append(" set ");
+            List<Integer> valueIndexes = new ArrayList<>();
+            for (int i = 0; i < columns.length; i++) {
+                if (isKey(i)) continue;
+                if (!valueIndexes.isEmpty()) sql.append(", ");
+                sql.append(getQualifiedName(null, columns[i].getColumnName(), connection)).append(" = ?");
+                valueIndexes.add(i);
+            }
+            sql.append(whereKeys(columns, keyIndexes, connection));
+            try (PreparedStatement statement = connection.getConnection().prepareStatement(sql.toString())) {
+                int pending = 0;
+                for (int row : updates) {
+                    Object[] values = rows.get(row);
+                    int index = 1;
+                    for (int i : valueIndexes) {
+                        columns[i].getDataType().setSqlValue(values[i], index++, statement);
+                    }
+                    for (int k : keyIndexes) {
+                        columns[k].getDataType().setSqlValue(values[k], index++, statement);
+                    }
+                    statement.addBatch();
+                    if (++pending >= batchSize) {
+                        statement.executeBatch();
+                        pending = 0;
+                    }
+                }
+                if (pending > 0) statement.executeBatch();
+            }
+        }
+
+        void insert(IDatabaseConnection connection, IDataSet databaseDataSet, boolean multiRowValues)
+                throws DatabaseUnitException, SQLException {
+            if (keyIndexes == null) {
+                insertAll(connection, databaseDataSet, multiRowValues);
+                return;
+            }
+            if (inserts.isEmpty()) return;
+            DefaultTable table = new DefaultTable(metaData);
+            for (int row : inserts) {
+                table.addRow(rows.get(row));
+            }
+            inserter.insert(connection, databaseDataSet, table, multiRowValues);
+        }
+
+        void deleteAll(IDatabaseConnection connection) throws SQLException {
+            try (Statement stat = connection.getConnection().createStatement()) {
+                stat.executeUpdate("delete from " + tableName);
+            }
+        }
+
+        void insertAll(IDatabaseConnection connection, IDataSet databaseDataSet, boolean multiRowValues)
+                throws DatabaseUnitException, SQLException {
+            DefaultTable table = new DefaultTable(metaData);
+            for (Object[] values : rows) {
+                table.addRow(values);
+            }
+            inserter.insert(connection, databaseDataSet, table, multiRowValues);
+        }
+
+        private boolean isKey(int index) {
+            for (int k : keyIndexes) {
+                if (k == index) return true;
+            }
+            return false;
+        }
+    }
+}
@@ -19,6 +19,7 @@ import static jp.classmethod.testing.internal.PreConditions.*;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.SQLException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -27,6 +28,7 @@ import jp.classmethod.testing.internal.PreConditions;
 import org.dbunit.database.DatabaseConnection;
 import org.dbunit.database.IDatabaseConnection;
 import org.dbunit.dataset.IDataSet;
+import org.dbunit.operation.DatabaseOperation;
 
 /**
  * JDBCでDbUnitのコネクションを作成するクラス。
@@ -37,7 +39,15 @@ import org.dbunit.dataset.IDataSet;
  * @since 1.0
  * @author shuji
  */
-public class JdbcDatabaseConnectionManager implements DatabaseConnectionManager {
+public class JdbcDatabaseConnectionManager implements WorkerDatabaseConnectionManager {
+
+    /** コネクションURLとスキーマ名でワーカーの番号に置き換えられる文字列 */
+    public static final String WORKER = "{worker}";
+
+    /** プールしたコネクションを破棄するまでのデフォルトのアイドル時間（ミリ秒） */
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 60000;
+    /** 返却されないコネクションの警告を出力するまでのデフォルトの時間（ミリ秒） */
+    public static final long DEFAULT_LEAK_THRESHOLD_MILLIS = 60000;
 
     /** logger */
     private static Logger log = Logger.getLogger(JdbcDatabaseConnectionManager.class.getName());
@@ -46,6 +56,10 @@ public class JdbcDatabaseConnectionManager implements DatabaseConnectionManager
     protected String schema = null;
     protected String username = null;
     protected String password = null;
+    int maxPoolSize = 0;
+    long idleTimeoutMillis = DEFAULT_IDLE_TIMEOUT_MILLIS;
+    long leakThresholdMillis = DEFAULT_LEAK_THRESHOLD_MILLIS;
+    int workerCount = 0;
 
     /**
      * JDBCドライバ名とコネクションURLを指定して、インスタンスを生成する。
@@ -67,8 +81,28 @@ public class JdbcDatabaseConnectionManager implements DatabaseConnectionManager
         }
     }
 
+    /**
+     * DbUnitのコネクションを作成する。
+     * <p>コネクションプールが有効な場合は、プールからコネクションを借りる。借りたコネクションはクローズするとプールに返却される。</p>
+     */
     @Override
     public IDatabaseConnection getConnection() throws Exception {
+        if (workerCount > 0) {
+            int worker = Workers.current(this);
+            if (worker < 0) throw new IllegalStateException("No worker is leased by the current thread.");
+            return forWorker(worker).getConnection();
+        }
+        if (maxPoolSize > 0) return ConnectionPool.of(this).borrow();
+        return new DatabaseConnection(connect(), schema);
+    }
+
+    /**
+     * JDBCドライバでデータベースに接続する。
+     * @return JDBCのコネクション
+     * @throws SQLException 接続に失敗した場合
+     * @since 1.0
+     */
+    protected Connection connect() throws SQLException {
         Connection conn = null;
         if (username == null && password == null) {
             log.log(Level.FINE, "connect to {0}", connectionUrl);
@@ -78,7 +112,61 @@ public class JdbcDatabaseConnectionManager implements DatabaseConnectionManager
                     new Object[] { connectionUrl, username, password });
             conn = DriverManager.getConnection(connectionUrl, username, password);
         }
-        return new DatabaseConnection(conn, schema);
+        ConnectionMetrics.connected();
+        return conn;
+    }
+
+    @Override
+    public int getWorkerCount() {
+        return workerCount;
+    }
+
+    /**
+     * コネクションURLとスキーマ名の{@value #WORKER}をワーカーの番号に置き換えたコネクション管理オブジェクトを返す。
+     */
+    @Override
+    public JdbcDatabaseConnectionManager forWorker(int worker) {
+        if (worker < 0 || workerCount <= worker) throw new IllegalArgumentException("Invalid worker: " + worker);
+        String id = String.valueOf(worker);
+        JdbcDatabaseConnectionManager cm = new JdbcDatabaseConnectionManager(driverClass,
+                connectionUrl.replace(WORKER, id));
+        cm.schema = (schema == null) ? null : schema.replace(WORKER, id);
+        cm.username = username;
+        cm.password = password;
+        cm.maxPoolSize = maxPoolSize;
+        cm.idleTimeoutMillis = idleTimeoutMillis;
+        cm.leakThresholdMillis = leakThresholdMillis;
+        return cm;
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + connectionUrl.hashCode();
+        result = prime * result + ((schema == null) ? 0 : schema.hashCode());
+        result = prime * result + ((username == null) ? 0 : username.hashCode());
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (obj == null) return false;
+        if (getClass() != obj.getClass()) return false;
+        JdbcDatabaseConnectionManager other = (JdbcDatabaseConnectionManager) obj;
+        if (!driverClass.equals(other.driverClass)) return false;
+        if (!connectionUrl.equals(other.connectionUrl)) return false;
+        if (schema == null) {
+            if (other.schema != null) return false;
+        } else if (!schema.equals(other.schema)) return false;
+        if (username == null) {
+            if (other.username != null) return false;
+        } else if (!username.equals(other.username)) return false;
+        if (password == null) {
+            if (other.password != null) return false;
+        } else if (!password.equals(other.password)) return false;
+        return true;
     }
 
     /**
@@ -87,6 +175,9 @@ public class JdbcDatabaseConnectionManager implements DatabaseConnectionManager
      * @since 1.0
      */
     public static class Builder {
+        boolean rollbackMode = false;
+        DatabaseOperation setUpOperation = null;
+        TimingListener timingListener = null;
         JdbcDatabaseConnectionManager cm;
 
         Builder(String driverClass, String connectionUrl) {
@@ -123,6 +214,106 @@ public class JdbcDatabaseConnectionManager implements DatabaseConnectionManager
             return this;
         }
 
+        /**
+         * コネクションプールを有効にする。
+         * <p>アイドル時間と警告を出力するまでの時間はデフォルト値となる。</p>
+         * @param maxSize プールするコネクションの最大数
+         * @return このオブジェクト
+         * @see #pool(int, long, long)
+         */
+        public Builder pool(int maxSize) {
+            return pool(maxSize, DEFAULT_IDLE_TIMEOUT_MILLIS, DEFAULT_LEAK_THRESHOLD_MILLIS);
+        }
+
+        /**
+         * コネクションプールを有効にする。
+         * <p>
+         * プールは同じ接続設定のコネクション管理オブジェクト間で共有され、最初に生成した時の設定が使われる。
+         * 貸し出し中のコネクションが最大数に達している場合は、返却されるまで待つ。
+         * </p>
+         * @param maxSize プールするコネクションの最大数
+         * @param idleTimeoutMillis 使われていないコネクションを破棄するまでの時間（ミリ秒）
+         * @param leakThresholdMillis 返却されないコネクションの警告を出力するまでの時間（ミリ秒）
+         * @return このオブジェクト
+         */
+        public Builder pool(int maxSize, long idleTimeoutMillis, long leakThresholdMillis) {
+            if (maxSize <= 0) throw new IllegalArgumentException("maxSize is not positive.");
+            if (idleTimeoutMillis < 0) throw new IllegalArgumentException("idleTimeoutMillis is negative.");
+            if (leakThresholdMillis < 0) throw new IllegalArgumentException("leakThresholdMillis is negative.");
+            cm.maxPoolSize = maxSize;
+            cm.idleTimeoutMillis = idleTimeoutMillis;
+            cm.leakThresholdMillis = leakThresholdMillis;
+            return this;
+        }
+
+        /**
+         * ワーカー毎に接続先を切り替える。
+         * <p>
+         * テストはワーカーを1つ借りて実行され、コネクションURLとスキーマ名の{@value JdbcDatabaseConnectionManager#WORKER}は
+         * ワーカーの番号に置き換えられる。接続先のデータベースまたはスキーマは、ワーカーの数だけ用意しておくこと。
+         * </p>
+         * @param count ワーカーの数
+         * @return このオブジェクト
+         * @see Workers
+         */
+        public Builder workers(int count) {
+            if (count <= 0) throw new IllegalArgumentException("count is not positive.");
+            cm.workerCount = count;
+            return this;
+        }
+
+        /**
+         * ロールバックモードを有効にする。
+         * <p>フィクスチャは共有コネクションに一度だけセットアップされ、各テストの変更はロールバックされる。</p>
+         * @return このオブジェクト
+         * @see DbUnitTester#setRollbackMode(boolean)
+         */
+        public Builder rollback() {
+            this.rollbackMode = true;
+            return this;
+        }
+
+        /**
+         * セットアップオペレーションを指定する。
+         * <p>指定しない場合は{@link DatabaseOperation#CLEAN_INSERT}となる。</p>
+         * @param setUpOperation セットアップオペレーション
+         * @return このオブジェクト
+         * @see BatchInsertOperation#CLEAN_INSERT
+         */
+        public Builder setUpOperation(DatabaseOperation setUpOperation) {
+            checkNotNull(setUpOperation, "setUpOperation");
+            this.setUpOperation = setUpOperation;
+            return this;
+        }
+
+        /**
+         * フィクスチャのテーブルを並列に挿入する。
+         * <p>
+         * 外部キーで依存しないテーブルを、このコネクション管理オブジェクトから借りたコネクションで並列に挿入する。
+         * セットアップオペレーションは{@link ParallelInsertOperation#cleanInsert(DatabaseConnectionManager, int)}となる。
+         * </p>
+         * @param threads 並列に挿入するスレッド数
+         * @return このオブジェクト
+         * @see ParallelInsertOperation
+         */
+        public Builder parallel(int threads) {
+            this.setUpOperation = ParallelInsertOperation.cleanInsert(cm, threads);
+            return this;
+        }
+
+        /**
+         * フェーズ毎の時間を受け取るリスナーを指定する。
+         * @param timingListener リスナー
+         * @return このオブジェクト
+         * @see DbUnitTester#setTimingListener(TimingListener)
+         * @see TimingReporter
+         */
+        public Builder timing(TimingListener timingListener) {
+            checkNotNull(timingListener, "timingListener");
+            this.timingListener = timingListener;
+            return this;
+        }
+
         /**
          * {@link DbUnitTester}オブジェクトを生成する。
          * @return {@link DbUnitTester}オブジェクト
@@ -142,8 +333,15 @@ public class JdbcDatabaseConnectionManager implements DatabaseConnectionManager
         }
 
         private DbUnitTester createDbUnitTester(IDataSet dataSet) {
+            if (cm.workerCount > 0 && !cm.connectionUrl.contains(WORKER)
+                    && (cm.schema == null || !cm.schema.contains(WORKER))) {
+                throw new IllegalStateException("Neither connectionUrl nor schema contains " + WORKER);
+            }
             DbUnitTester tester = (dataSet == null) ? new DbUnitTester(cm) : new DbUnitTester(cm, dataSet);
-            if (cm.schema != null) tester.setSchema(cm.schema);
+            if (cm.schema != null && cm.workerCount == 0) tester.setSchema(cm.schema);
+            tester.setRollbackMode(rollbackMode);
+            if (setUpOperation != null) tester.setSetUpOperation(setUpOperation);
+            if (timingListener != null) tester.setTimingListener(timingListener);
             return tester;
         }
     }
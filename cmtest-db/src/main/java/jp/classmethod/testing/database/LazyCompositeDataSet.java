@@ -0,0 +1,343 @@
+/*
+ * Copyright 2013 Classmethod, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.classmethod.testing.database;
+
+import static jp.classmethod.testing.internal.PreConditions.checkNotNull;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import org.dbunit.dataset.AbstractDataSet;
+import org.dbunit.dataset.AbstractTable;
+import org.dbunit.dataset.Column;
+import org.dbunit.dataset.DataSetException;
+import org.dbunit.dataset.DefaultTableIterator;
+import org.dbunit.dataset.IDataSet;
+import org.dbunit.dataset.ITable;
+import org.dbunit.dataset.ITableIterator;
+import org.dbunit.dataset.ITableMetaData;
+import org.dbunit.dataset.RowOutOfBoundsException;
+import org.yaml.snakeyaml.error.YAMLException;
+
+/**
+ * 複数のフィクスチャのリソースを必要になった時に読み込むデータセット。
+ * <p>
+ * {@link org.dbunit.dataset.CompositeDataSet}と同じく、リソースのテーブルをリソースの順に並べ、
+ * 同じ名前のテーブルは最初に現れた位置で1つのテーブルに連結する。
+ * イテレータは{@link FixtureCache#tableNames(Fixture.Type, URL)}で取得したテーブル名だけでテーブルを返し、
+ * リソースはテーブルのカラムやレコードを初めて参照した時、
+ * または連結したテーブルのレコードを前のリソースの分まで読み終えた時に初めて{@link FixtureCache}から読み込む。
+ * そのため、テーブル名だけを参照するDbUnitの{@link org.dbunit.operation.DatabaseOperation#DELETE_ALL}では
+ * レコードを読み込まず、{@link org.dbunit.operation.DatabaseOperation#CLEAN_INSERT}では挿入するテーブルに進んだ時に読み込む。
+ * </p>
+ * <p>
+ * equalsとhashCodeはフィクスチャの種類とリソースのURLで比較するため、
+ * 同じリソースを指定したデータセットはリソースを読み込まずに同じフィクスチャと判定できる。
+ * </p>
+ *
+ * @since 1.0
+ * @author shuji
+ */
+public class LazyCompositeDataSet extends AbstractDataSet {
+
+    final Fixture.Type type;
+    final URL[] urls;
+    final List<String> locations;
+    private final IDataSet[] dataSets;
+    private final String[][] tableNames;
+
+    /**
+     * フィクスチャの種類とリソースを指定して、インスタンスを生成する。
+     * @param type フィクスチャの種類
+     * @param urls フィクスチャのリソース
+     * @since 1.0
+     */
+    public LazyCompositeDataSet(Fixture.Type type, URL... urls) {
+        checkNotNull(type, "type");
+        checkNotNull(urls, "urls");
+        this.type = type;
+        this.urls = urls.clone();
+        this.dataSets = new IDataSet[urls.length];
+        this.tableNames = new String[urls.length][];
+        List<String> locations = new ArrayList<>(urls.length);
+        for (URL url : urls) {
+            locations.add(checkNotNull(url, "url").toExternalForm());
+        }
+        this.locations = locations;
+    }
+
+    /**
+     * 読み込み済みのリソースの数を返す。
+     * @return 読み込み済みのリソースの数
+     * @since 1.0
+     */
+    public synchronized int getLoadedCount() {
+        int count = 0;
+        for (IDataSet dataSet : dataSets) {
+            if (dataSet != null) count++;
+        }
+        return count;
+    }
+
+    synchronized IDataSet load(int index) throws DataSetException {
+        if (dataSets[index] == null) {
+            try {
+                dataSets[index] = FixtureCache.load(type, urls[index]);
+            } catch (YAMLException | IOException | URISyntaxException e) {
+                throw new DataSetException("Can't load fixture: " + locations.get(index), e);
+            }
+        }
+        return dataSets[index];
+    }
+
+    synchronized String[] tableNames(int index) throws DataSetException {
+        if (tableNames[index] == null) {
+            try {
+                tableNames[index] = dataSets[index] != null ? dataSets[index].getTableNames()
+                        : FixtureCache.tableNames(type, urls[index]);
+            } catch (YAMLException | IOException | URISyntaxException e) {
+                throw new DataSetException("Can't load fixture: " + locations.get(index), e);
+            }
+        }
+        return tableNames[index];
+    }
+
+    @Override
+    protected ITableIterator createIterator(boolean reversed) throws DataSetException {
+        if (!reversed) return new LazyIterator();
+        List<ITable> tables = new ArrayList<>();
+        ITableIterator iterator = new LazyIterator();
+        while (iterator.next()) {
+            tables.add(iterator.getTable());
+        }
+        return new DefaultTableIterator(tables.toArray(new ITable[tables.size()]), true);
+    }
+
+    String normalize(String tableName) {
+        return isCaseSensitiveTableNames() ? tableName : tableName.toUpperCase(Locale.ENGLISH);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * type.hashCode() + locations.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (obj == null) return false;
+        if (getClass() != obj.getClass()) return false;
+        LazyCompositeDataSet other = (LazyCompositeDataSet) obj;
+        return type == other.type && locations.equals(other.locations);
+    }
+
+    @Override
+    public String toString() {
+        return "LazyCompositeDataSet[type=" + type + ", resources=" + locations + "]";
+    }
+
+    class LazyIterator implements ITableIterator {
+
+        final Set<String> seen = new HashSet<>();
+        int nextIndex = 0;
+        int index;
+        String[] names;
+        int nameIndex;
+        ITable current;
+
+        @Override
+        public boolean next() throws DataSetException {
+            while (true) {
+                if (names == null) {
+                    if (nextIndex == urls.length) return false;
+                    index = nextIndex++;
+                    names = tableNames(index);
+                    nameIndex = 0;
+                }
+                if (nameIndex == names.length) {
+                    names = null;
+                    continue;
+                }
+                String name = names[nameIndex++];
+                if (seen.add(normalize(name))) {
+                    current = new LazyTable(name, index);
+                    return true;
+                }
+            }
+        }
+
+        @Override
+        public ITableMetaData getTableMetaData() throws DataSetException {
+            return getTable().getTableMetaData();
+        }
+
+        @Override
+        public ITable getTable() throws DataSetException {
+            if (current == null) throw new IllegalStateException("next() is not called.");
+            return current;
+        }
+    }
+
+    /**
+     * テーブル名だけを保持し、カラムやレコードを参照した時にリソースを読み込むテーブル。
+     */
+    class LazyTable extends AbstractTable {
+
+        final String tableName;
+        final int index;
+        final ITableMetaData metaData = new LazyTableMetaData();
+        ConcatTable table;
+
+        LazyTable(String tableName, int index) {
+            this.tableName = tableName;
+            this.index = index;
+        }
+
+        ConcatTable table() throws DataSetException {
+            if (table == null) table = new ConcatTable(load(index).getTable(tableName), index + 1);
+            return table;
+        }
+
+        @Override
+        public ITableMetaData getTableMetaData() {
+            return metaData;
+        }
+
+        @Override
+        public int getRowCount() {
+            try {
+                return table().getRowCount();
+            } catch (DataSetException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public Object getValue(int row, String column) throws DataSetException {
+            return table().getValue(row, column);
+        }
+
+        @Override
+        public String toString() {
+            return "LazyTable[" + tableName + ", loaded=" + (table != null) + "]";
+        }
+
+        class LazyTableMetaData implements ITableMetaData {
+
+            @Override
+            public String getTableName() {
+                return tableName;
+            }
+
+            @Override
+            public Column[] getColumns() throws DataSetException {
+                return table().getTableMetaData().getColumns();
+            }
+
+            @Override
+            public Column[] getPrimaryKeys() throws DataSetException {
+                return table().getTableMetaData().getPrimaryKeys();
+            }
+
+            @Override
+            public int getColumnIndex(String columnName) throws DataSetException {
+                return table().getTableMetaData().getColumnIndex(columnName);
+            }
+        }
+    }
+
+    /**
+     * 後続のリソースの同じ名前のテーブルを連結するテーブル。
+     * <p>後続のリソースは、前のテーブルのレコード数を超える行が要求された時に読み込む。</p>
+     */
+    class ConcatTable extends AbstractTable {
+
+        final ITableMetaData metaData;
+        final String tableName;
+        final List<ITable> parts = new ArrayList<>();
+        final List<Integer> offsets = new ArrayList<>();
+        int rowCount;
+        int nextIndex;
+
+        ConcatTable(ITable first, int nextIndex) {
+            this.metaData = first.getTableMetaData();
+            this.tableName = normalize(metaData.getTableName());
+            this.nextIndex = nextIndex;
+            addPart(first);
+        }
+
+        private void addPart(ITable table) {
+            parts.add(table);
+            offsets.add(rowCount);
+            rowCount += table.getRowCount();
+        }
+
+        private boolean loadNextPart() throws DataSetException {
+            while (nextIndex < urls.length) {
+                IDataSet dataSet = load(nextIndex++);
+                for (String name : dataSet.getTableNames()) {
+                    if (normalize(name).equals(tableName)) {
+                        addPart(dataSet.getTable(name));
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public ITableMetaData getTableMetaData() {
+            return metaData;
+        }
+
+        @Override
+        public int getRowCount() {
+            try {
+                while (loadNextPart()) {
+                    continue;
+                }
+            } catch (DataSetException e) {
+                throw new IllegalStateException(e);
+            }
+            return rowCount;
+        }
+
+        @Override
+        public Object getValue(int row, String column) throws DataSetException {
+            if (row < 0) throw new RowOutOfBoundsException(row + " < 0");
+            while (row >= rowCount) {
+                if (!loadNextPart()) throw new RowOutOfBoundsException(row + " >= " + rowCount);
+            }
+            int part = parts.size() - 1;
+            while (offsets.get(part) > row) {
+                part--;
+            }
+            return parts.get(part).getValue(row - offsets.get(part), column);
+        }
+
+        @Override
+        public String toString() {
+            return "ConcatTable[" + metaData.getTableName() + ", parts=" + parts.size() + "]";
+        }
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * Copyright 2013 Classmethod, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.classmethod.testing.database;
+
+import static jp.classmethod.testing.internal.PreConditions.checkNotNull;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.dbunit.DatabaseUnitException;
+import org.dbunit.database.IDatabaseConnection;
+import org.dbunit.dataset.CachedDataSet;
+import org.dbunit.dataset.Column;
+import org.dbunit.dataset.IDataSet;
+import org.dbunit.dataset.ITable;
+import org.dbunit.dataset.ITableIterator;
+import org.dbunit.dataset.ITableMetaData;
+import org.dbunit.dataset.stream.StreamingDataSet;
+import org.dbunit.operation.AbstractOperation;
+
+/**
+ * 外部キーで依存しないテーブルを複数のコネクションで並列に挿入するDbUnitのオペレーション。
+ * <p>
+ * JDBCのメタデータから取得した外部キーでデータセットのテーブルの依存関係を解決し、
+ * 参照するテーブルがすべて挿入済みになったテーブルを、コネクション管理オブジェクトから借りたコネクションで並列に挿入する。
+ * 挿入は{@link BatchInsertOperation}と同じくバッチ更新で行う。
+ * CLEAN_INSERTの場合は、挿入の前にセットアップ用のコネクションで全レコードを依存関係の逆順に削除する。
+ * </p>
+ * <p>
+ * 並列に借りるコネクションはスレッド数までとなる。コネクションプールを使う場合は、プールの最大数をスレッド数より大きくすること。
+ * セットアップ用のコネクションのオートコミットが無効な場合（ロールバックモードなど）、外部キーが循環している場合、
+ * スレッド数が1の場合は、セットアップ用のコネクションで依存関係の順に挿入する。
+ * </p>
+ *
+ * @since 1.0
+ * @author shuji
+ * @see JdbcDatabaseConnectionManager.Builder#parallel(int)
+ */
+public class ParallelInsertOperation extends AbstractOperation {
+
+    private static final AtomicInteger threadSequence = new AtomicInteger();
+
+    final DatabaseConnectionManager connectionManager;
+    final int threads;
+    final boolean clean;
+    final BatchInsertOperation inserter = new BatchInsertOperation(BatchInsertOperation.DEFAULT_BATCH_SIZE);
+
+    /**
+     * コネクション管理オブジェクトとスレッド数を指定して、インスタンスを生成する。
+     * @param connectionManager 並列に挿入するコネクションを借りるコネクション管理オブジェクト
+     * @param threads 並列に挿入するスレッド数
+     * @param clean 挿入する前にテーブルの全レコードを削除する場合はtrue
+     * @throws IllegalArgumentException スレッド数が1未満の場合
+     * @since 1.0
+     */
+    public ParallelInsertOperation(DatabaseConnectionManager connectionManager, int threads, boolean clean)
+            throws IllegalArgumentException {
+        checkNotNull(connectionManager, "connectionManager");
+        if (threads < 1) throw new IllegalArgumentException("threads must be positive: " + threads);
+        this.connectionManager = connectionManager;
+        this.threads = threads;
+        this.clean = clean;
+    }
+
+    /**
+     * 全レコードを削除した後、並列に挿入するオペレーションを生成する。
+     * @param connectionManager 並列に挿入するコネクションを借りるコネクション管理オブジェクト
+     * @param threads 並列に挿入するスレッド数
+     * @return オペレーション
+     * @since 1.0
+     */
+    public static ParallelInsertOperation cleanInsert(DatabaseConnectionManager connectionManager, int threads) {
+        return new ParallelInsertOperation(connectionManager, threads, true);
+    }
+
+    @Override
+    public void execute(IDatabaseConnection connection, IDataSet dataSet) throws DatabaseUnitException,
+            SQLException {
+        if (dataSet instanceof StreamingDataSet) dataSet = new CachedDataSet(dataSet);
+        IDataSet databaseDataSet = connection.createDataSet();
+        List<ITable> tables = new ArrayList<>();
+        ITableIterator iterator = dataSet.iterator();
+        while (iterator.next()) {
+            ITable table = iterator.getTable();
+            if (table.getTableMetaData().getColumns().length == 0) continue;
+            tables.add(table);
+            prepareMetaData(databaseDataSet.getTableMetaData(table.getTableMetaData().getTableName()));
+        }
+        List<List<ITable>> levels = levels(connection, databaseDataSet, tables);
+        if (clean) {
+            for (int i = levels.size() - 1; i >= 0; i--) {
+                List<ITable> level = levels.get(i);
+                for (int j = level.size() - 1; j >= 0; j--) {
+                    deleteAll(connection, databaseDataSet, level.get(j));
+                }
+            }
+        }
+        Connection conn = connection.getConnection();
+        boolean multiRowValues = BatchInsertOperation.supportsMultiRowValues(conn);
+        if (threads == 1 || !conn.getAutoCommit()) {
+            for (List<ITable> level : levels) {
+                for (ITable table : level) {
+                    inserter.insert(connection, databaseDataSet, table, multiRowValues);
+                }
+            }
+            return;
+        }
+        DatabaseConnectionManager target = targetConnectionManager();
+        int width = 0;
+        for (List<ITable> level : levels) {
+            width = Math.max(width, level.size());
+        }
+        ExecutorService executor = width > 1 ? executor(Math.min(threads, width)) : null;
+        try {
+            for (List<ITable> level : levels) {
+                insert(executor, target, databaseDataSet, level, multiRowValues);
+            }
+        } finally {
+            if (executor != null) executor.shutdown();
+        }
+    }
+
+    /**
+     * テーブルを依存関係の順に並べる。
+     * <p>
+     * 同じ段のテーブルは互いに依存せず、前の段のテーブルだけを参照する。段の中はデータセットの順に並ぶ。
+     * 外部キーが循環している場合は、データセットの順にテーブルを1つずつ並べる。
+     * </p>
+     */
+    List<List<ITable>> levels(IDatabaseConnection connection, IDataSet databaseDataSet, List<ITable> tables)
+            throws DatabaseUnitException, SQLException {
+        Map<String, Integer> indexes = new HashMap<>();
+        for (int i = 0; i < tables.size(); i++) {
+            indexes.put(normalize(tables.get(i).getTableMetaData().getTableName()), i);
+        }
+        List<Set<Integer>> parents = new ArrayList<>();
+        DatabaseMetaData metaData = connection.getConnection().getMetaData();
+        for (int i = 0; i < tables.size(); i++) {
+            Set<Integer> references = new HashSet<>();
+            String tableName = databaseDataSet.getTableMetaData(tables.get(i).getTableMetaData().getTableName())
+                    .getTableName();
+            try (ResultSet rs = metaData.getImportedKeys(null, connection.getSchema(), tableName)) {
+                while (rs.next()) {
+                    Integer parent = indexes.get(normalize(rs.getString("PKTABLE_NAME")));
+                    if (parent != null && parent != i) references.add(parent);
+                }
+            }
+            parents.add(references);
+        }
+
+        List<List<ITable>> levels = new ArrayList<>();
+        Set<Integer> done = new HashSet<>();
+        while (done.size() < tables.size()) {
+            List<Integer> level = new ArrayList<>();
+            for (int i = 0; i < tables.size(); i++) {
+                if (!done.contains(i) && done.containsAll(parents.get(i))) level.add(i);
+            }
+            if (level.isEmpty()) return sequential(tables);
+            List<ITable> levelTables = new ArrayList<>();
+            for (int i : level) {
+                levelTables.add(tables.get(i));
+            }
+            levels.add(levelTables);
+            done.addAll(level);
+        }
+        return levels;
+    }
+
+    private static List<List<ITable>> sequential(List<ITable> tables) {
+        List<List<ITable>> levels = new ArrayList<>();
+        for (ITable table : tables) {
+            List<ITable> level = new ArrayList<>();
+            level.add(table);
+            levels.add(level);
+        }
+        return levels;
+    }
+
+    private void insert(ExecutorService executor, final DatabaseConnectionManager target,
+            final IDataSet databaseDataSet, List<ITable> level, final boolean multiRowValues)
+            throws DatabaseUnitException, SQLException {
+        if (level.size() == 1) {
+            insert(target, databaseDataSet, level.get(0), multiRowValues);
+            return;
+        }
+        List<Future<Void>> futures = new ArrayList<>();
+        for (final ITable table : level) {
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    insert(target, databaseDataSet, table, multiRowValues);
+                    return null;
+                }
+            }));
+        }
+        Throwable failure = null;
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (failure == null) failure = e.getCause();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (failure == null) failure = e;
+            }
+        }
+        if (failure instanceof DatabaseUnitException) throw (DatabaseUnitException) failure;
+        if (failure instanceof SQLException) throw (SQLException) failure;
+        if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+        if (failure instanceof Error) throw (Error) failure;
+        if (failure != null) throw new DatabaseUnitException(failure);
+    }
+
+    private void insert(DatabaseConnectionManager target, IDataSet databaseDataSet, ITable table,
+            boolean multiRowValues) throws DatabaseUnitException, SQLException {
+        IDatabaseConnection connection;
+        try {
+            connection = target.getConnection();
+        } catch (DatabaseUnitException | SQLException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new DatabaseUnitException(e);
+        }
+        try {
+            inserter.insert(connection, databaseDataSet, table, multiRowValues);
+        } finally {
+            connection.close();
+        }
+    }
+
+    private void deleteAll(IDatabaseConnection connection, IDataSet databaseDataSet, ITable table)
+            throws DatabaseUnitException, SQLException {
+        ITableMetaData dbMetaData = databaseDataSet.getTableMetaData(table.getTableMetaData().getTableName());
+        try (Statement stat = connection.getConnection().createStatement()) {
+            stat.executeUpdate("delete from "
+                    + getQualifiedName(connection.getSchema(), dbMetaData.getTableName(), connection));
+        }
+    }
+
+    /**
+     * 並列に挿入するスレッドから参照するメタデータを、あらかじめ読み込んでおく。
+     */
+    private static void prepareMetaData(ITableMetaData dbMetaData) throws DatabaseUnitException {
+        Column[] columns = dbMetaData.getColumns();
+        if (columns.length > 0) dbMetaData.getColumnIndex(columns[0].getColumnName());
+    }
+
+    /**
+     * 並列に挿入するコネクションを借りるコネクション管理オブジェクトを返す。
+     * <p>ワーカー毎に接続先を切り替える場合は、現在のスレッドが借りているワーカーの接続先となる。</p>
+     */
+    DatabaseConnectionManager targetConnectionManager() {
+        if (!(connectionManager instanceof WorkerDatabaseConnectionManager)) return connectionManager;
+        WorkerDatabaseConnectionManager workerConnectionManager = (WorkerDatabaseConnectionManager) connectionManager;
+        if (workerConnectionManager.getWorkerCount() == 0) return connectionManager;
+        int worker = Workers.current(workerConnectionManager);
+        if (worker < 0) throw new IllegalStateException("No worker is leased by the current thread.");
+        return workerConnectionManager.forWorker(worker);
+    }
+
+    /**
+     * 1回のセットアップで使うスレッドプールを生成する。
+     * <p>スレッドプールはセットアップの終了時にシャットダウンするため、テスト毎にスレッドが残ることはない。</p>
+     */
+    private static ExecutorService executor(int threads) {
+        return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "cmtest-parallel-insert-" + threadSequence.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    private static String normalize(String tableName) {
+        return tableName.toUpperCase(Locale.ENGLISH);
+    }
+
+    @Override
+    public String toString() {
+        return "ParallelInsertOperation[threads=" + threads + ", clean=" + clean + "]";
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2013 Classmethod, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.classmethod.testing.database;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.dbunit.database.IDatabaseConnection;
+
+/**
+ * JDBCのメタデータからテーブルの主キーを取得し、{@link DatabaseConnectionManager}毎にキャッシュするクラス。
+ *
+ * @since 1.0
+ * @author shuji
+ */
+class PrimaryKeys {
+
+    private static final Map<DatabaseConnectionManager, Map<String, String[]>> CACHE = new HashMap<>();
+
+    private PrimaryKeys() {
+    }
+
+    /**
+     * テーブルの主キーのカラム名を取得する。
+     * @param connectionManager キャッシュのキーとなるコネクション管理オブジェクト
+     * @param connection メタデータを取得するコネクション
+     * @param tableName テーブル名
+     * @return 主キーのカラム名（キーの順序）。主キーがない場合は空の配列
+     * @throws SQLException メタデータの取得に失敗した場合
+     */
+    static String[] of(DatabaseConnectionManager connectionManager, IDatabaseConnection connection,
+            String tableName) throws SQLException {
+        String cacheKey = tableName.toUpperCase(Locale.ENGLISH);
+        synchronized (CACHE) {
+            Map<String, String[]> tables = CACHE.get(connectionManager);
+            if (tables != null && tables.containsKey(cacheKey)) return tables.get(cacheKey);
+        }
+        String[] keys = lookup(connection, tableName);
+        synchronized (CACHE) {
+            Map<String, String[]> tables = CACHE.get(connectionManager);
+            if (tables == null) {
+                tables = new HashMap<>();
+                CACHE.put(connectionManager, tables);
+            }
+            tables.put(cacheKey, keys);
+        }
+        return keys;
+    }
+
+    static String[] lookup(IDatabaseConnection connection, String tableName) throws SQLException {
+        DatabaseMetaData metaData = connection.getConnection().getMetaData();
+        String schema = connection.getSchema();
+        Set<String> candidates = new LinkedHashSet<>();
+        candidates.add(tableName);
+        candidates.add(tableName.toUpperCase(Locale.ENGLISH));
+        candidates.add(tableName.toLowerCase(Locale.ENGLISH));
+        for (String candidate : candidates) {
+            SortedMap<Short, String> keys = new TreeMap<>();
+            try (ResultSet rs = metaData.getPrimaryKeys(null, schema, candidate)) {
+                while (rs.next()) {
+                    keys.put(rs.getShort("KEY_SEQ"), rs.getString("COLUMN_NAME"));
+                }
+            }
+            if (!keys.isEmpty()) return keys.values().toArray(new String[keys.size()]);
+        }
+        return new String[0];
+    }
+
+    static void clear() {
+        synchronized (CACHE) {
+            CACHE.clear();
+        }
+    }
+}
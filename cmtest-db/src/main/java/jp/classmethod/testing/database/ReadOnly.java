@@ -0,0 +1,41 @@
+/*
+ * Copyright 2013 Classmethod, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.classmethod.testing.database;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * テストがデータベースを変更しないことを{@link DbUnitTester}に宣言するアノテーション。
+ * 
+ * <p>このアノテーションを宣言したテストの終了後、データベースはフィクスチャをセットアップした状態のままとみなされる。
+ * 次のテストのフィクスチャが同じであれば、{@link DbUnitTester}はセットアップ操作を省略する。</p>
+ * 
+ * <ul>
+ * <li>テストクラスに指定した場合、全テストメソッドが読み取り専用とみなされる。</li>
+ * <li>テストメソッドに指定した場合、そのテストメソッドのみが読み取り専用とみなされる。</li>
+ * </ul>
+ * <p>データベースを変更するテストに宣言した場合、後続のテストは変更されたデータベースで実行されるので注意すること。</p>
+ * @since 1.0
+ * @author shuji
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.TYPE, ElementType.METHOD })
+public @interface ReadOnly {
+
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2013 Classmethod, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.classmethod.testing.database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.dbunit.database.IDatabaseConnection;
+import org.dbunit.dataset.IDataSet;
+import org.dbunit.operation.DatabaseOperation;
+
+/**
+ * ロールバックモードの{@link DbUnitTester}が共有するコネクションを管理するクラス。
+ * <p>
+ * 同じ接続設定の{@link DatabaseConnectionManager}ごとに1つのコネクションを保持し、
+ * コミットしたフィクスチャを{@link AppliedFixtures}に記録する。
+ * 記録が残っているフィクスチャと同じフィクスチャであればセットアップ操作を行わず、各テストの変更はロールバックで破棄する。
+ * ロールバックモードでないテストと同じ記録を使うため、どちらのテストがデータベースを変更しても、後続のテストは再度セットアップする。
+ * </p>
+ *
+ * @since 1.0
+ * @author shuji
+ */
+class RollbackSession {
+
+    /** logger */
+    private static Logger log = Logger.getLogger(RollbackSession.class.getName());
+    private static final Map<DatabaseConnectionManager, RollbackSession> SESSIONS = new HashMap<>();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                closeAll();
+            }
+        });
+    }
+
+    final DatabaseConnectionManager connectionManager;
+    final IDatabaseConnection connection;
+
+    RollbackSession(DatabaseConnectionManager connectionManager, IDatabaseConnection connection)
+            throws SQLException {
+        this.connectionManager = connectionManager;
+        this.connection = connection;
+        connection.getConnection().setAutoCommit(false);
+    }
+
+    /**
+     * コネクション管理オブジェクトに対応するセッションを取得する。
+     * @param connectionManager コネクション管理オブジェクト
+     * @return セッション
+     * @throws Exception コネクションの取得に失敗した場合
+     */
+    static synchronized RollbackSession of(DatabaseConnectionManager connectionManager) throws Exception {
+        RollbackSession session = SESSIONS.get(connectionManager);
+        if (session == null) {
+            session = new RollbackSession(connectionManager, connectionManager.getConnection());
+            ConnectionMetrics.leased();
+            SESSIONS.put(connectionManager, session);
+        }
+        return session;
+    }
+
+    /**
+     * データセットをセットアップし、コミットする。
+     * <p>{@link AppliedFixtures}に記録されたフィクスチャと等しい場合は何もしない。</p>
+     * @param operation セットアップ操作
+     * @param dataSet データセット
+     * @param fixture フィクスチャを識別するオブジェクト
+     * @throws Exception セットアップに失敗した場合
+     */
+    synchronized void setUp(DatabaseOperation operation, IDataSet dataSet, Object fixture) throws Exception {
+        if (AppliedFixtures.isApplied(connectionManager, fixture)) {
+            log.log(Level.FINE, "skip setup: dataset is already applied.");
+            return;
+        }
+        Connection conn = connection.getConnection();
+        AppliedFixtures.markDirty(connectionManager);
+        try {
+            operation.execute(connection, dataSet);
+            conn.commit();
+        } catch (Exception e) {
+            conn.rollback();
+            throw e;
+        }
+        AppliedFixtures.markApplied(connectionManager, fixture);
+    }
+
+    /**
+     * コミットされていない変更を破棄する。
+     * @throws SQLException ロールバックに失敗した場合
+     */
+    synchronized void rollback() throws SQLException {
+        connection.getConnection().rollback();
+    }
+
+    static synchronized void closeAll() {
+        for (RollbackSession session : SESSIONS.values()) {
+            try {
+                session.connection.close();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        SESSIONS.clear();
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2013 Classmethod, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.classmethod.testing.database;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.dbunit.dataset.Column;
+import org.dbunit.dataset.DataSetException;
+import org.dbunit.dataset.ITable;
+import org.dbunit.dataset.RowOutOfBoundsException;
+import org.dbunit.dataset.datatype.DataType;
+import org.dbunit.dataset.datatype.UnknownDataType;
+
+/**
+ * 主キーで突き合わせて、期待されるテーブルと実際のテーブルを比較検証するクラス。
+ * <p>
+ * 期待されるテーブルのレコードを主キーのハッシュ表に格納し、実際のテーブルのレコードを1度だけ順に読みながら突き合わせる。
+ * 実際のテーブルのレコードの並び順は問わず、不足しているレコード、余分なレコード、値の異なるレコードをまとめて報告する。
+ * </p>
+ *
+ * @since 1.0
+ * @author shuji
+ */
+class TableDiff {
+
+    /** 種類毎に報告するレコードの最大数 */
+    static final int MAX_REPORTED_ROWS = 10;
+
+    final String tableName;
+    final String[] keys;
+    final List<String> missing = new ArrayList<>();
+    final List<String> extra = new ArrayList<>();
+    final List<String> changed = new ArrayList<>();
+    int missingCount = 0;
+    int extraCount = 0;
+    int changedCount = 0;
+
+    TableDiff(String tableName, String[] keys) {
+        this.tableName = tableName;
+        this.keys = keys;
+    }
+
+    /**
+     * 主キーで突き合わせて比較検証できるかを返す。
+     * <p>主キーがすべて期待されるテーブルのカラムに含まれ、無視するカラムに含まれない場合に突き合わせることができる。</p>
+     * @param expected 期待されるテーブル
+     * @param keys 主キーのカラム名
+     * @param ignoreCols 検証時に無視するカラム
+     * @return 突き合わせることができる場合はtrue
+     * @throws DataSetException メタデータの取得に失敗した場合
+     */
+    static boolean isComparable(ITable expected, String[] keys, String... ignoreCols) throws DataSetException {
+        if (keys.length == 0) return false;
+        String[] expectedNames = names(expected.getTableMetaData().getColumns());
+        for (String key : keys) {
+            if (!contains(expectedNames, key) || contains(ignoreCols, key)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * 主キーで突き合わせて、テーブルを比較検証する。
+     * @param expected 期待されるテーブル
+     * @param actual 実際のテーブル
+     * @param keys 主キーのカラム名
+     * @param ignoreCols 検証時に無視するカラム
+     * @throws AssertionError 検証結果が正しくない場合、期待されるテーブルの主キーが重複している場合
+     * @throws DataSetException テーブルの読み込みに失敗した場合
+     */
+    static void assertEquals(ITable expected, ITable actual, String[] keys, String... ignoreCols)
+            throws AssertionError, DataSetException {
+        String tableName = actual.getTableMetaData().getTableName();
+        Set<String> ignores = new HashSet<>();
+        for (String ignoreCol : ignoreCols) {
+            ignores.add(toKey(ignoreCol));
+        }
+        Column[] expectedColumns = filter(expected.getTableMetaData().getColumns(), ignores);
+        Column[] actualColumns = filter(actual.getTableMetaData().getColumns(), ignores);
+        Map<String, Column> actualColumnMap = new HashMap<>();
+        for (Column column : actualColumns) {
+            actualColumnMap.put(toKey(column.getColumnName()), column);
+        }
+        Set<String> expectedColumnNames = new HashSet<>();
+        for (Column column : expectedColumns) {
+            expectedColumnNames.add(toKey(column.getColumnName()));
+        }
+        if (!expectedColumnNames.equals(actualColumnMap.keySet())) {
+            throw new AssertionError(String.format("Columns of table '%s' are unmatched.%nExpected: %s%nActual: %s",
+                    tableName, Arrays.toString(names(expectedColumns)), Arrays.toString(names(actualColumns))));
+        }
+
+        int columnCount = expectedColumns.length;
+        String[] expectedNames = names(expectedColumns);
+        String[] actualNames = new String[columnCount];
+        DataType[] dataTypes = new DataType[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            Column actualColumn = actualColumnMap.get(toKey(expectedNames[i]));
+            actualNames[i] = actualColumn.getColumnName();
+            dataTypes[i] = comparisonDataType(tableName, expectedColumns[i], actualColumn);
+        }
+        int[] keyIndexes = new int[keys.length];
+        for (int k = 0; k < keys.length; k++) {
+            keyIndexes[k] = indexOf(expectedNames, keys[k]);
+        }
+
+        TableDiff diff = new TableDiff(tableName, keys);
+        Map<List<Object>, Integer> expectedRows = new HashMap<>();
+        List<Object[]> expectedValues = new ArrayList<>();
+        for (int row = 0;; row++) {
+            Object[] values = readRow(expected, row, expectedNames, dataTypes);
+            if (values == null) break;
+            List<Object> key = keyOf(values, keyIndexes);
+            if (expectedRows.put(key, row) != null) {
+                throw new AssertionError(String.format("Duplicate key in expected table '%s': %s", tableName,
+                        diff.keyToString(key)));
+            }
+            expectedValues.add(values);
+        }
+        BitSet matched = new BitSet(expectedValues.size());
+        for (int row = 0;; row++) {
+            Object[] values = readRow(actual, row, actualNames, dataTypes);
+            if (values == null) break;
+            List<Object> key = keyOf(values, keyIndexes);
+            Integer expectedRow = expectedRows.get(key);
+            if (expectedRow == null) {
+                diff.extra(key);
+                continue;
+            }
+            matched.set(expectedRow);
+            Object[] expectedRowValues = expectedValues.get(expectedRow);
+            StringBuilder changes = null;
+            for (int i = 0; i < columnCount; i++) {
+                if (dataTypes[i].compare(expectedRowValues[i], values[i]) == 0) continue;
+                if (changes == null) changes = new StringBuilder();
+                changes.append(String.format("%n    %s: expected <%s> but was <%s>", actualNames[i],
+                        expectedRowValues[i], values[i]));
+            }
+            if (changes != null) diff.changed(key, changes);
+        }
+        for (int row = matched.nextClearBit(0); row < expectedValues.size(); row = matched.nextClearBit(row + 1)) {
+            diff.missing(keyOf(expectedValues.get(row), keyIndexes));
+        }
+        if (diff.hasDifference()) throw new AssertionError(diff.toString());
+    }
+
+    void missing(List<Object> key) {
+        if (missingCount++ < MAX_REPORTED_ROWS) missing.add(keyToString(key));
+    }
+
+    void extra(List<Object> key) {
+        if (extraCount++ < MAX_REPORTED_ROWS) extra.add(keyToString(key));
+    }
+
+    void changed(List<Object> key, CharSequence changes) {
+        if (changedCount++ < MAX_REPORTED_ROWS) changed.add(keyToString(key) + changes);
+    }
+
+    boolean hasDifference() {
+        return missingCount > 0 || extraCount > 0 || changedCount > 0;
+    }
+
+    String keyToString(List<Object> key) {
+        StringBuilder str = new StringBuilder("[");
+        for (int k = 0; k < keys.length; k++) {
+            if (k > 0) str.append(", ");
+            str.append(keys[k]).append("=").append(key.get(k));
+        }
+        return str.append("]").toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder str = new StringBuilder();
+        str.append(String.format("Table '%s' is unmatched. (missing: %s, extra: %s, changed: %s)", tableName,
+                missingCount, extraCount, changedCount));
+        append(str, "Missing rows", missing, missingCount);
+        append(str, "Extra rows", extra, extraCount);
+        append(str, "Changed rows", changed, changedCount);
+        return str.toString();
+    }
+
+    private static void append(StringBuilder str, String title, List<String> rows, int count) {
+        if (count == 0) return;
+        str.append(String.format("%n%s:", title));
+        for (String row : rows) {
+            str.append(String.format("%n  %s", row));
+        }
+        if (count > rows.size()) str.append(String.format("%n  ... and %s more", count - rows.size()));
+    }
+
+    private static Object[] readRow(ITable table, int row, String[] columnNames, DataType[] dataTypes)
+            throws DataSetException {
+        Object[] values = new Object[columnNames.length];
+        try {
+            for (int i = 0; i < columnNames.length; i++) {
+                values[i] = normalize(dataTypes[i].typeCast(table.getValue(row, columnNames[i])));
+            }
+        } catch (RowOutOfBoundsException e) {
+            return null;
+        }
+        return values;
+    }
+
+    private static List<Object> keyOf(Object[] values, int[] keyIndexes) {
+        Object[] key = new Object[keyIndexes.length];
+        for (int k = 0; k < keyIndexes.length; k++) {
+            key[k] = values[keyIndexes[k]];
+        }
+        return Arrays.asList(key);
+    }
+
+    private static Object normalize(Object value) {
+        if (value instanceof BigDecimal) {
+            BigDecimal decimal = (BigDecimal) value;
+            return decimal.signum() == 0 ? BigDecimal.ZERO : decimal.stripTrailingZeros();
+        }
+        return value;
+    }
+
+    private static DataType comparisonDataType(String tableName, Column expected, Column actual) {
+        DataType expectedType = expected.getDataType();
+        DataType actualType = actual.getDataType();
+        if (expectedType.getClass().isInstance(actualType)) return expectedType;
+        if (expectedType instanceof UnknownDataType) return actualType;
+        if (actualType instanceof UnknownDataType) return expectedType;
+        throw new AssertionError(String.format("Incompatible data types: (table=%s, col=%s)%nExpected: %s%nActual: %s",
+                tableName, expected.getColumnName(), expectedType, actualType));
+    }
+
+    private static Column[] filter(Column[] columns, Set<String> ignores) {
+        List<Column> list = new ArrayList<>();
+        for (Column column : columns) {
+            if (!ignores.contains(toKey(column.getColumnName()))) list.add(column);
+        }
+        return list.toArray(new Column[list.size()]);
+    }
+
+    private static String[] names(Column[] columns) {
+        String[] names = new String[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            names[i] = columns[i].getColumnName();
+        }
+        return names;
+    }
+
+    private static boolean contains(String[] names, String name) {
+        for (String each : names) {
+            if (each.equalsIgnoreCase(name)) return true;
+        }
+        return false;
+    }
+
+    private static int indexOf(String[] names, String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equalsIgnoreCase(name)) return i;
+        }
+        throw new IllegalArgumentException("Primary key column not found: " + name);
+    }
+
+    static String toKey(String columnName) {
+        return columnName.toUpperCase(Locale.ENGLISH);
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright 2013 Classmethod, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.classmethod.testing.database;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.dbunit.database.DatabaseConfig;
+import org.dbunit.database.ForwardOnlyResultSetTable;
+import org.dbunit.database.IDatabaseConnection;
+import org.dbunit.database.ResultSetTableMetaData;
+import org.dbunit.dataset.AbstractTable;
+import org.dbunit.dataset.Column;
+import org.dbunit.dataset.DataSetException;
+import org.dbunit.dataset.ITable;
+import org.dbunit.dataset.ITableMetaData;
+import org.dbunit.dataset.RowOutOfBoundsException;
+import org.dbunit.dataset.datatype.DataType;
+import org.dbunit.util.QualifiedTableName;
+
+/**
+ * 条件を指定してテーブルのレコードを取得するクエリを組み立てるクラス。
+ * <p>
+ * 絞り込みはSQLで行い、結果は{@link ForwardOnlyResultSetTable}として先頭から順に読み込む。
+ * データベース全体のメタデータは取得せず、カラムの情報は結果セットのメタデータから生成する。
+ * </p>
+ *
+ * @since 1.0
+ * @author shuji
+ */
+class TableQuery {
+
+    /** 1つのクエリにバインドするパラメータの最大数 */
+    static final int MAX_PARAMETERS = 1000;
+
+    private TableQuery() {
+    }
+
+    /**
+     * WHERE句を指定してテーブルのレコードを取得する。
+     * <p>主キーを指定した場合は、DbUnitの{@link IDatabaseConnection#createDataSet()}と同じく主キーの順に並べる。</p>
+     * @param connection コネクション
+     * @param tableName テーブル名
+     * @param whereClause WHERE句の条件。nullの場合はすべてのレコード
+     * @param keys 主キーのカラム名。空の場合は並べ替えない
+     * @return 結果セットを順に読み込むテーブル。利用後はクローズすること
+     * @throws SQLException クエリの実行に失敗した場合
+     * @throws DataSetException メタデータの生成に失敗した場合
+     */
+    static StatementTable where(IDatabaseConnection connection, String tableName, String whereClause, String[] keys)
+            throws SQLException, DataSetException {
+        StringBuilder sql = select(connection, tableName);
+        if (whereClause != null) sql.append(" where ").append(whereClause);
+        for (int k = 0; k < keys.length; k++) {
+            sql.append(k == 0 ? " order by " : ", ").append(quote(connection, keys[k]));
+        }
+        return execute(connection, tableName, sql.toString(), new Object[0]);
+    }
+
+    /**
+     * 期待されるテーブルに含まれる主キーを指定してテーブルのレコードを取得する。
+     * <p>
+     * 主キーの値は、データベースのカラムのデータ型に変換してバインドする。
+     * バインドするパラメータが{@link #MAX_PARAMETERS}を超えないように主キーを分割してクエリを発行し、
+     * 結果は分割したクエリの順に読み込む。
+     * </p>
+     * @param connection コネクション
+     * @param tableName テーブル名
+     * @param keys 主キーのカラム名
+     * @param expected 主キーの値を取得するテーブル
+     * @return 結果セットを順に読み込むテーブル。利用後はクローズすること
+     * @throws SQLException クエリの実行に失敗した場合
+     * @throws DataSetException テーブルの読み込みに失敗した場合
+     */
+    static KeyChunkTable byKeys(IDatabaseConnection connection, String tableName, String[] keys, ITable expected)
+            throws SQLException, DataSetException {
+        DataType[] dataTypes = keyDataTypes(connection, tableName, keys);
+        Set<List<Object>> keyValues = new LinkedHashSet<>();
+        for (int row = 0;; row++) {
+            Object[] key = new Object[keys.length];
+            try {
+                for (int k = 0; k < keys.length; k++) {
+                    key[k] = dataTypes[k].typeCast(expected.getValue(row, keys[k]));
+                }
+            } catch (RowOutOfBoundsException e) {
+                break;
+            }
+            keyValues.add(Arrays.asList(key));
+        }
+        return new KeyChunkTable(connection, tableName, keys, dataTypes, new ArrayList<>(keyValues));
+    }
+
+    /**
+     * 主キーの値の一部を指定してテーブルのレコードを取得する。
+     */
+    static StatementTable byKeyChunk(IDatabaseConnection connection, String tableName, String[] keys,
+            DataType[] dataTypes, List<List<Object>> keyValues) throws SQLException, DataSetException {
+        StringBuilder sql = select(connection, tableName).append(" where ");
+        List<Object> params = new ArrayList<>();
+        if (keyValues.isEmpty()) {
+            sql.append("1 = 0");
+        } else if (keys.length == 1) {
+            appendInList(sql, quote(connection, keys[0]), keyValues, params);
+        } else {
+            appendConjunctions(sql, connection, keys, keyValues, params);
+        }
+        DataType[] paramTypes = new DataType[params.size()];
+        for (int i = 0; i < paramTypes.length; i++) {
+            paramTypes[i] = dataTypes[i % keys.length];
+        }
+        return execute(connection, tableName, sql.toString(), params.toArray(), paramTypes);
+    }
+
+    private static void appendInList(StringBuilder sql, String column, List<List<Object>> keyValues,
+            List<Object> params) {
+        sql.append(column).append(" in (");
+        for (int i = 0; i < keyValues.size(); i++) {
+            if (i > 0) sql.append(", ");
+            sql.append("?");
+            params.add(keyValues.get(i).get(0));
+        }
+        sql.append(")");
+    }
+
+    private static void appendConjunctions(StringBuilder sql, IDatabaseConnection connection, String[] keys,
+            List<List<Object>> keyValues, List<Object> params) {
+        StringBuilder conjunction = new StringBuilder("(");
+        for (int k = 0; k < keys.length; k++) {
+            if (k > 0) conjunction.append(" and ");
+            conjunction.append(quote(connection, keys[k])).append(" = ?");
+        }
+        conjunction.append(")");
+        boolean first = true;
+        for (List<Object> key : keyValues) {
+            if (!first) sql.append(" or ");
+            sql.append(conjunction);
+            params.addAll(key);
+            first = false;
+        }
+    }
+
+    private static DataType[] keyDataTypes(IDatabaseConnection connection, String tableName, String[] keys)
+            throws SQLException, DataSetException {
+        StringBuilder sql = select(connection, tableName).append(" where 1 = 0");
+        try (StatementTable empty = execute(connection, tableName, sql.toString(), new Object[0])) {
+            ITableMetaData metaData = empty.getTableMetaData();
+            DataType[] dataTypes = new DataType[keys.length];
+            for (int k = 0; k < keys.length; k++) {
+                Column column = metaData.getColumns()[metaData.getColumnIndex(keys[k])];
+                dataTypes[k] = column.getDataType();
+            }
+            return dataTypes;
+        }
+    }
+
+    private static StatementTable execute(IDatabaseConnection connection, String tableName, String sql,
+            Object[] params, DataType... paramTypes) throws SQLException, DataSetException {
+        PreparedStatement statement = connection.getConnection().prepareStatement(sql);
+        try {
+            Integer fetchSize = (Integer) connection.getConfig().getProperty(DatabaseConfig.PROPERTY_FETCH_SIZE);
+            if (fetchSize != null) statement.setFetchSize(fetchSize);
+            for (int i = 0; i < params.length; i++) {
+                paramTypes[i].setSqlValue(params[i], i + 1, statement);
+            }
+            ResultSet resultSet = statement.executeQuery();
+            boolean caseSensitive = Boolean.TRUE.equals(connection.getConfig().getProperty(
+                    DatabaseConfig.FEATURE_CASE_SENSITIVE_TABLE_NAMES));
+            ITableMetaData metaData = new ResultSetTableMetaData(tableName, resultSet, connection, caseSensitive);
+            return new StatementTable(metaData, resultSet, statement);
+        } catch (SQLException | DataSetException | RuntimeException e) {
+            statement.close();
+            throw e;
+        }
+    }
+
+    private static StringBuilder select(IDatabaseConnection connection, String tableName) {
+        String escapePattern = (String) connection.getConfig().getProperty(DatabaseConfig.PROPERTY_ESCAPE_PATTERN);
+        String qualifiedName = new QualifiedTableName(tableName, connection.getSchema(), escapePattern)
+                .getQualifiedName();
+        return new StringBuilder("select * from ").append(qualifiedName);
+    }
+
+    private static String quote(IDatabaseConnection connection, String columnName) {
+        String escapePattern = (String) connection.getConfig().getProperty(DatabaseConfig.PROPERTY_ESCAPE_PATTERN);
+        return new QualifiedTableName(columnName, null, escapePattern).getQualifiedName();
+    }
+
+    /**
+     * 主キーを分割して発行したクエリの結果を、先頭から順に連結して読み込むテーブル。
+     * <p>次のクエリは、前のクエリの結果を読み終えた時に発行する。</p>
+     */
+    static class KeyChunkTable extends AbstractTable implements AutoCloseable {
+
+        private final IDatabaseConnection connection;
+        private final String tableName;
+        private final String[] keys;
+        private final DataType[] dataTypes;
+        private final List<List<Object>> keyValues;
+        private final int chunkSize;
+        private final ITableMetaData metaData;
+        private StatementTable current;
+        private int nextKey;
+        private int offset = 0;
+
+        KeyChunkTable(IDatabaseConnection connection, String tableName, String[] keys, DataType[] dataTypes,
+                List<List<Object>> keyValues) throws SQLException, DataSetException {
+            this.connection = connection;
+            this.tableName = tableName;
+            this.keys = keys;
+            this.dataTypes = dataTypes;
+            this.keyValues = keyValues;
+            this.chunkSize = Math.max(1, MAX_PARAMETERS / keys.length);
+            this.nextKey = Math.min(chunkSize, keyValues.size());
+            this.current = byKeyChunk(connection, tableName, keys, dataTypes, keyValues.subList(0, nextKey));
+            this.metaData = current.getTableMetaData();
+        }
+
+        @Override
+        public ITableMetaData getTableMetaData() {
+            return metaData;
+        }
+
+        @Override
+        public int getRowCount() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Object getValue(int row, String column) throws DataSetException {
+            for (;;) {
+                try {
+                    return current.getValue(row - offset, column);
+                } catch (RowOutOfBoundsException e) {
+                    if (nextKey == keyValues.size()) throw e;
+                    current.close();
+                    List<List<Object>> chunk = keyValues.subList(nextKey,
+                            Math.min(nextKey + chunkSize, keyValues.size()));
+                    nextKey += chunk.size();
+                    try {
+                        current = byKeyChunk(connection, tableName, keys, dataTypes, chunk);
+                    } catch (SQLException ex) {
+                        throw new DataSetException(ex);
+                    }
+                    offset = row;
+                }
+            }
+        }
+
+        @Override
+        public void close() throws DataSetException {
+            current.close();
+        }
+    }
+
+    /**
+     * クローズ時にステートメントもクローズするテーブル。
+     */
+    static class StatementTable extends ForwardOnlyResultSetTable implements AutoCloseable {
+
+        private final PreparedStatement statement;
+
+        StatementTable(ITableMetaData metaData, ResultSet resultSet, PreparedStatement statement)
+                throws SQLException, DataSetException {
+            super(metaData, resultSet);
+            this.statement = statement;
+        }
+
+        @Override
+        public void close() throws DataSetException {
+            try {
+                super.close();
+            } finally {
+                try {
+                    statement.close();
+                } catch (SQLException e) {
+                    throw new DataSetException(e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2013 Classmethod, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.classmethod.testing.database;
+
+/**
+ * {@link DbUnitTester}が時間を計測するテストのフェーズ。
+ * <p>
+ * 各フェーズの時間は入れ子になったフェーズの時間を含まない。
+ * 例えばテスト本体から{@link DbUnitTester#verifyTable(String, org.dbunit.dataset.ITable, String...)}を呼び出した時間は
+ * {@link #BODY}ではなく{@link #VERIFY}に、検証中にコネクションを取得した時間は{@link #CONNECTION}に計上される。
+ * </p>
+ *
+ * @since 1.0
+ * @author shuji
+ * @see TestTiming
+ */
+public enum TestPhase {
+    /** フィクスチャの読み込み */
+    LOAD_DATASET,
+    /** コネクションの取得 */
+    CONNECTION,
+    /** セットアップ操作 */
+    SET_UP,
+    /** テスト本体 */
+    BODY,
+    /** テスターによる検証 */
+    VERIFY,
+    /** ティアダウン操作 */
+    TEAR_DOWN,
+    /** コネクションのクローズ */
+    CLOSE;
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2013 Classmethod, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.classmethod.testing.database;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.runner.Description;
+
+/**
+ * 1つのテストのフェーズ毎の計測結果。
+ * <p>
+ * フェーズの時間は入れ子を除いた時間で、テスト全体の時間にはどのフェーズにも属さない時間も含まれる。
+ * セットアップ操作の時間はテーブル毎の内訳も保持する。
+ * テーブル毎の時間は、セットアップ操作がデータセットからテーブルを取り出してから次のテーブルを取り出すまでの時間で、
+ * {@link org.dbunit.operation.DatabaseOperation#DELETE_ALL}のように全てのテーブルをまとめて処理する操作の時間は含まれない。
+ * </p>
+ * <p>
+ * フェーズの計測はテストのスレッドから行うことを前提としている。
+ * テスト本体から別のスレッドで検証を行った場合、フェーズ毎の時間は正確ではない。
+ * </p>
+ *
+ * @since 1.0
+ * @author shuji
+ * @see TimingListener
+ */
+public class TestTiming {
+
+    private final Description description;
+    private final long startedAt;
+    private long finishedAt = -1;
+    private final long[] phaseNanos = new long[TestPhase.values().length];
+    private final Map<String, Long> setUpNanos = new LinkedHashMap<>();
+    private final Deque<TestPhase> phases = new ArrayDeque<>();
+    private long markedAt;
+
+    TestTiming(Description description, long loadNanos) {
+        this.description = description;
+        this.markedAt = System.nanoTime();
+        this.startedAt = markedAt - loadNanos;
+        phaseNanos[TestPhase.LOAD_DATASET.ordinal()] = loadNanos;
+    }
+
+    /**
+     * テストの記述を返す。
+     * @return テストの記述
+     * @since 1.0
+     */
+    public Description getDescription() {
+        return description;
+    }
+
+    /**
+     * テスト全体の時間を返す。
+     * @return テスト全体の時間（ナノ秒）。テストが終了していない場合は現在までの時間
+     * @since 1.0
+     */
+    public synchronized long getElapsedNanos() {
+        return (finishedAt < 0 ? System.nanoTime() : finishedAt) - startedAt;
+    }
+
+    /**
+     * フェーズの時間を返す。
+     * @param phase フェーズ
+     * @return フェーズの時間（ナノ秒）
+     * @since 1.0
+     */
+    public synchronized long getElapsedNanos(TestPhase phase) {
+        return phaseNanos[phase.ordinal()];
+    }
+
+    /**
+     * セットアップ操作のテーブル毎の時間を返す。
+     * @return テーブル名をキーとし、時間（ナノ秒）を値とするマップ。セットアップ操作で処理した順に並ぶ
+     * @since 1.0
+     */
+    public synchronized Map<String, Long> getSetUpNanos() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(setUpNanos));
+    }
+
+    synchronized void begin(TestPhase phase) {
+        long now = System.nanoTime();
+        if (!phases.isEmpty()) phaseNanos[phases.peek().ordinal()] += now - markedAt;
+        phases.push(phase);
+        markedAt = now;
+    }
+
+    synchronized void end() {
+        long now = System.nanoTime();
+        phaseNanos[phases.pop().ordinal()] += now - markedAt;
+        markedAt = now;
+    }
+
+    synchronized void addSetUp(String tableName, long nanos) {
+        Long current = setUpNanos.get(tableName);
+        setUpNanos.put(tableName, current == null ? nanos : current + nanos);
+    }
+
+    synchronized void finish() {
+        while (!phases.isEmpty()) end();
+        finishedAt = System.nanoTime();
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder(description.getDisplayName());
+        sb.append(": ").append(millis(getElapsedNanos()));
+        String separator = " (";
+        for (TestPhase phase : TestPhase.values()) {
+            long nanos = phaseNanos[phase.ordinal()];
+            if (nanos == 0) continue;
+            sb.append(separator).append(name(phase)).append(' ').append(millis(nanos));
+            separator = ", ";
+        }
+        if (!separator.equals(" (")) sb.append(')');
+        return sb.toString();
+    }
+
+    static String name(TestPhase phase) {
+        return phase.name().toLowerCase(Locale.ENGLISH).replace('_', ' ');
+    }
+
+    static String millis(long nanos) {
+        return String.format(Locale.ENGLISH, "%.1fms", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+}
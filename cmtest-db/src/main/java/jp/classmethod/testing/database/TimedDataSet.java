@@ -0,0 +1,128 @@
+/*
+ * Copyright 2013 Classmethod, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.classmethod.testing.database;
+
+import org.dbunit.dataset.DataSetException;
+import org.dbunit.dataset.IDataSet;
+import org.dbunit.dataset.ITable;
+import org.dbunit.dataset.ITableIterator;
+import org.dbunit.dataset.ITableMetaData;
+
+/**
+ * セットアップ操作のテーブル毎の時間を計測するデータセット。
+ * <p>
+ * イテレータがテーブルを返してから次のテーブルに進むまでの時間を、そのテーブルの時間として{@link TestTiming}に記録する。
+ * equalsとhashCodeは元のデータセットに委譲するため、データセットをキーとするセットアップ操作のキャッシュに影響しない。
+ * </p>
+ *
+ * @since 1.0
+ * @author shuji
+ */
+class TimedDataSet implements IDataSet {
+
+    final IDataSet dataSet;
+    final TestTiming timing;
+
+    TimedDataSet(IDataSet dataSet, TestTiming timing) {
+        this.dataSet = dataSet;
+        this.timing = timing;
+    }
+
+    @Override
+    public String[] getTableNames() throws DataSetException {
+        return dataSet.getTableNames();
+    }
+
+    @Override
+    public ITableMetaData getTableMetaData(String tableName) throws DataSetException {
+        return dataSet.getTableMetaData(tableName);
+    }
+
+    @Override
+    public ITable getTable(String tableName) throws DataSetException {
+        return dataSet.getTable(tableName);
+    }
+
+    @Override
+    @Deprecated
+    public ITable[] getTables() throws DataSetException {
+        return dataSet.getTables();
+    }
+
+    @Override
+    public ITableIterator iterator() throws DataSetException {
+        return new TimedIterator(dataSet.iterator());
+    }
+
+    @Override
+    public ITableIterator reverseIterator() throws DataSetException {
+        return new TimedIterator(dataSet.reverseIterator());
+    }
+
+    @Override
+    public boolean isCaseSensitiveTableNames() {
+        return dataSet.isCaseSensitiveTableNames();
+    }
+
+    @Override
+    public int hashCode() {
+        return dataSet.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (obj instanceof TimedDataSet) return dataSet.equals(((TimedDataSet) obj).dataSet);
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return dataSet.toString();
+    }
+
+    class TimedIterator implements ITableIterator {
+
+        final ITableIterator iterator;
+        String tableName;
+        long startedAt;
+
+        TimedIterator(ITableIterator iterator) {
+            this.iterator = iterator;
+        }
+
+        @Override
+        public boolean next() throws DataSetException {
+            long now = System.nanoTime();
+            if (tableName != null) timing.addSetUp(tableName, now - startedAt);
+            tableName = null;
+            if (!iterator.next()) return false;
+            tableName = iterator.getTableMetaData().getTableName();
+            startedAt = System.nanoTime();
+            return true;
+        }
+
+        @Override
+        public ITableMetaData getTableMetaData() throws DataSetException {
+            return iterator.getTableMetaData();
+        }
+
+        @Override
+        public ITable getTable() throws DataSetException {
+            return iterator.getTable();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2013 Classmethod, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.classmethod.testing.database;
+
+/**
+ * {@link DbUnitTester}が計測したテスト毎のフェーズの時間を受け取るリスナー。
+ * <p>
+ * リスナーは複数のテスターから、並列に実行されるテストのスレッドから呼び出されることがあるため、スレッドセーフに実装すること。
+ * </p>
+ *
+ * @since 1.0
+ * @author shuji
+ * @see DbUnitTester#setTimingListener(TimingListener)
+ * @see TimingReporter
+ */
+public interface TimingListener {
+
+    /**
+     * テストの終了時に呼び出される。
+     * <p>テストが失敗した場合も、フィクスチャのセットアップに失敗した場合も呼び出される。</p>
+     * @param timing テストの計測結果
+     * @since 1.0
+     */
+    void testFinished(TestTiming timing);
+}
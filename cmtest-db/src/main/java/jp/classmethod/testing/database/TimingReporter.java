@@ -0,0 +1,262 @@
+/*
+ * Copyright 2013 Classmethod, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.classmethod.testing.database;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.logging.Logger;
+
+import org.junit.rules.TestRule;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+/**
+ * テストの計測結果を集計し、時間のかかったテストとテーブルを報告するリスナー。
+ * <p>
+ * フェーズ毎の合計時間、テスト全体の時間が長いテスト、セットアップ操作の合計時間が長いテーブルを集計する。
+ * 報告するテストとテーブルの数は、コンストラクタで指定した上限までとなる。
+ * </p>
+ * <p>
+ * 生成したインスタンスを{@link org.junit.ClassRule}として指定すると、
+ * テストクラスの実行後に集計結果をログに出力し、集計結果を破棄する。
+ * </p>
+ * <p>
+ * システムプロパティ<code>cmtest.timing</code>に<code>true</code>を指定すると、
+ * すべての{@link DbUnitTester}が{@link #getDefault()}のリスナーを使い、テストスイート全体の集計結果を1度だけ出力する。
+ * </p>
+ *
+ * @since 1.0
+ * @author shuji
+ */
+public class TimingReporter implements TimingListener, TestRule {
+
+    /** 報告するテストとテーブルの数のデフォルトの上限 */
+    public static final int DEFAULT_LIMIT = 10;
+
+    /** logger */
+    private static Logger log = Logger.getLogger(TimingReporter.class.getName());
+    private static TimingReporter defaultReporter;
+
+    private static final Comparator<TestTiming> BY_ELAPSED = new Comparator<TestTiming>() {
+        @Override
+        public int compare(TestTiming o1, TestTiming o2) {
+            return Long.compare(o1.getElapsedNanos(), o2.getElapsedNanos());
+        }
+    };
+
+    private final int limit;
+    private final PriorityQueue<TestTiming> slowestTests;
+    private final Map<String, TableTotal> tables = new HashMap<>();
+    private final long[] phaseNanos = new long[TestPhase.values().length];
+    private int testCount = 0;
+    private long elapsedNanos = 0;
+
+    /**
+     * 報告するテストとテーブルの数をデフォルトの上限としてインスタンスを生成する。
+     * @since 1.0
+     */
+    public TimingReporter() {
+        this(DEFAULT_LIMIT);
+    }
+
+    /**
+     * 報告するテストとテーブルの数の上限を指定してインスタンスを生成する。
+     * @param limit 報告するテストとテーブルの数の上限
+     * @since 1.0
+     */
+    public TimingReporter(int limit) {
+        if (limit <= 0) throw new IllegalArgumentException("limit is not positive.");
+        this.limit = limit;
+        this.slowestTests = new PriorityQueue<>(limit + 1, BY_ELAPSED);
+    }
+
+    /**
+     * JVM全体で共有するリスナーを返す。
+     * <p>
+     * 最初に呼び出された時に生成し、テストスイート全体の計測結果を集計する。
+     * {@link TimingRunListener}を登録した場合はテストの実行の終了時に集計結果をログに出力する。
+     * 登録していない場合は、JVMの終了時に集計結果を標準エラー出力に書き出す。
+     * </p>
+     * @return 共有のリスナー
+     * @since 1.0
+     */
+    public static synchronized TimingReporter getDefault() {
+        if (defaultReporter == null) {
+            final TimingReporter reporter = new TimingReporter();
+            Runtime.getRuntime().addShutdownHook(new Thread() {
+                @Override
+                public void run() {
+                    reporter.printRemaining();
+                }
+            });
+            defaultReporter = reporter;
+        }
+        return defaultReporter;
+    }
+
+    @Override
+    public Statement apply(final Statement base, final Description description) {
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                try {
+                    base.evaluate();
+                } finally {
+                    report(description.getClassName());
+                }
+            }
+        };
+    }
+
+    @Override
+    public synchronized void testFinished(TestTiming timing) {
+        testCount++;
+        elapsedNanos += timing.getElapsedNanos();
+        for (TestPhase phase : TestPhase.values()) {
+            phaseNanos[phase.ordinal()] += timing.getElapsedNanos(phase);
+        }
+        slowestTests.add(timing);
+        if (slowestTests.size() > limit) slowestTests.poll();
+        for (Map.Entry<String, Long> e : timing.getSetUpNanos().entrySet()) {
+            String key = e.getKey().toUpperCase(Locale.ENGLISH);
+            TableTotal total = tables.get(key);
+            if (total == null) {
+                total = new TableTotal(e.getKey());
+                tables.put(key, total);
+            }
+            total.add(e.getValue());
+        }
+    }
+
+    /**
+     * 集計結果をログに出力し、集計結果を破棄する。
+     * @param name 集計の対象の名前
+     */
+    synchronized void report(String name) {
+        if (testCount > 0) log.info(name + " " + summary());
+        reset();
+    }
+
+    /**
+     * 出力していない集計結果を標準エラー出力に書き出す。
+     * <p>JVMの終了時にはLogManagerがロガーを閉じている場合があるため、ログには出力しない。</p>
+     */
+    synchronized void printRemaining() {
+        if (testCount > 0) System.err.println(summary());
+    }
+
+    /**
+     * 集計したテストの数を返す。
+     * @return テストの数
+     * @since 1.0
+     */
+    public synchronized int getTestCount() {
+        return testCount;
+    }
+
+    /**
+     * 時間のかかったテストを返す。
+     * @return テスト全体の時間の長い順に並べた計測結果
+     * @since 1.0
+     */
+    public synchronized List<TestTiming> getSlowestTests() {
+        List<TestTiming> list = new ArrayList<>(slowestTests);
+        Collections.sort(list, Collections.reverseOrder(BY_ELAPSED));
+        return list;
+    }
+
+    /**
+     * 集計結果を破棄する。
+     * @since 1.0
+     */
+    public synchronized void reset() {
+        testCount = 0;
+        elapsedNanos = 0;
+        for (int i = 0; i < phaseNanos.length; i++) {
+            phaseNanos[i] = 0;
+        }
+        slowestTests.clear();
+        tables.clear();
+    }
+
+    /**
+     * 集計結果を文字列で返す。
+     * @return 集計結果の文字列表現
+     * @since 1.0
+     */
+    public synchronized String summary() {
+        String newLine = System.getProperty("line.separator");
+        StringBuilder sb = new StringBuilder();
+        sb.append("timing: ").append(testCount).append(" tests, ").append(TestTiming.millis(elapsedNanos));
+        String separator = " (";
+        for (TestPhase phase : TestPhase.values()) {
+            sb.append(separator).append(TestTiming.name(phase)).append(' ');
+            sb.append(TestTiming.millis(phaseNanos[phase.ordinal()]));
+            separator = ", ";
+        }
+        sb.append(')');
+        List<TestTiming> tests = getSlowestTests();
+        if (!tests.isEmpty()) {
+            sb.append(newLine).append("slowest tests:");
+            for (TestTiming timing : tests) {
+                sb.append(newLine).append("  ").append(timing);
+            }
+        }
+        List<TableTotal> slowestTables = new ArrayList<>(tables.values());
+        if (!slowestTables.isEmpty()) {
+            Collections.sort(slowestTables);
+            sb.append(newLine).append("slowest set up tables:");
+            for (TableTotal total : slowestTables.subList(0, Math.min(limit, slowestTables.size()))) {
+                sb.append(newLine).append("  ").append(total);
+            }
+        }
+        return sb.toString();
+    }
+
+    static class TableTotal implements Comparable<TableTotal> {
+        final String tableName;
+        int count = 0;
+        long totalNanos = 0;
+        long maxNanos = 0;
+
+        TableTotal(String tableName) {
+            this.tableName = tableName;
+        }
+
+        void add(long nanos) {
+            count++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+
+        @Override
+        public int compareTo(TableTotal o) {
+            return Long.compare(o.totalNanos, totalNanos);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %s (%s times, max %s)", tableName, TestTiming.millis(totalNanos), count,
+                    TestTiming.millis(maxNanos));
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2013 Classmethod, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.classmethod.testing.database;
+
+import org.junit.runner.Result;
+import org.junit.runner.notification.RunListener;
+
+/**
+ * テストの実行の終了時に{@link TimingReporter#getDefault()}の集計結果をログに出力するJUnitのリスナー。
+ * <p>
+ * システムプロパティ<code>cmtest.timing</code>と組み合わせ、テストランナーのリスナーとして登録する。
+ * 出力した集計結果は破棄されるため、JVMの終了時に再び出力されることはない。
+ * </p>
+ *
+ * @since 1.0
+ * @author shuji
+ */
+public class TimingRunListener extends RunListener {
+
+    @Override
+    public void testRunFinished(Result result) throws Exception {
+        TimingReporter.getDefault().report("suite");
+    }
+}
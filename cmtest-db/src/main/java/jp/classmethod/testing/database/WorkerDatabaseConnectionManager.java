@@ -0,0 +1,45 @@
+/*
+ * Copyright 2013 Classmethod, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.classmethod.testing.database;
+
+/**
+ * テストを並列に実行するワーカー毎に、異なるデータベースまたはスキーマへ接続する{@link DatabaseConnectionManager}。
+ * <p>
+ * {@link DbUnitTester}はテスト毎にワーカーを借り、{@link #forWorker(int)}が返すコネクション管理オブジェクトで
+ * フィクスチャのセットアップ、検証、ティアダウンを行う。
+ * </p>
+ * 
+ * @since 1.0
+ * @author shuji
+ * @see Workers
+ */
+public interface WorkerDatabaseConnectionManager extends DatabaseConnectionManager {
+
+    /**
+     * ワーカーの数を返す。
+     * @return ワーカーの数。0の場合はワーカー毎に接続先を切り替えない
+     */
+    int getWorkerCount();
+
+    /**
+     * ワーカーの接続先に接続するコネクション管理オブジェクトを返す。
+     * <p>同じワーカーに対しては、等しいコネクション管理オブジェクトを返すこと。</p>
+     * @param worker ワーカーの番号（0から{@link #getWorkerCount()} - 1まで）
+     * @return コネクション管理オブジェクト
+     */
+    DatabaseConnectionManager forWorker(int worker);
+
+}
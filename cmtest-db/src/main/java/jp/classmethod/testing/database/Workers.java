@@ -0,0 +1,97 @@
+/*
+ * Copyright 2013 Classmethod, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.classmethod.testing.database;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 並列に実行されるテストにワーカーを割り当てるクラス。
+ * <p>
+ * ワーカーは{@link WorkerDatabaseConnectionManager}毎に0から順に番号が振られ、1つのテストが1つのワーカーを借りる。
+ * スレッドは可能な限り前回と同じワーカーを借りるため、同じスレッドで続けて実行されるテストは同じ接続先を使う。
+ * すべてのワーカーが貸し出されている場合は、返却されるまで待つ。
+ * </p>
+ *
+ * @since 1.0
+ * @author shuji
+ */
+public class Workers {
+
+    private static final Map<WorkerDatabaseConnectionManager, Workers> WORKERS = new HashMap<>();
+
+    final int count;
+    final BitSet leased = new BitSet();
+    final ThreadLocal<Integer> current = new ThreadLocal<>();
+    final ThreadLocal<Integer> last = new ThreadLocal<>();
+
+    Workers(int count) {
+        this.count = count;
+    }
+
+    static synchronized Workers of(WorkerDatabaseConnectionManager connectionManager) {
+        Workers workers = WORKERS.get(connectionManager);
+        if (workers == null) {
+            workers = new Workers(connectionManager.getWorkerCount());
+            WORKERS.put(connectionManager, workers);
+        }
+        return workers;
+    }
+
+    /**
+     * 現在のスレッドが借りているワーカーの番号を返す。
+     * @param connectionManager コネクション管理オブジェクト
+     * @return ワーカーの番号。借りていない場合は-1
+     * @since 1.0
+     */
+    public static int current(WorkerDatabaseConnectionManager connectionManager) {
+        Integer worker = of(connectionManager).current.get();
+        return worker == null ? -1 : worker;
+    }
+
+    /**
+     * ワーカーを借りる。
+     * @return ワーカーの番号
+     * @throws InterruptedException 返却を待つ間に割り込まれた場合
+     * @throws IllegalStateException 現在のスレッドが既にワーカーを借りている場合
+     */
+    synchronized int lease() throws InterruptedException {
+        if (current.get() != null) throw new IllegalStateException("Worker is already leased: " + current.get());
+        for (;;) {
+            Integer previous = last.get();
+            int worker = (previous != null && !leased.get(previous)) ? previous : leased.nextClearBit(0);
+            if (worker < count) {
+                leased.set(worker);
+                current.set(worker);
+                last.set(worker);
+                return worker;
+            }
+            wait();
+        }
+    }
+
+    /**
+     * 現在のスレッドが借りているワーカーを返却する。
+     */
+    synchronized void release() {
+        Integer worker = current.get();
+        if (worker == null) return;
+        current.remove();
+        leased.clear(worker);
+        notifyAll();
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright 2013 Classmethod, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.classmethod.testing.database;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * {@link YamlDataSet}のテーブルの1カラム分の値を保持するクラス。
+ * <p>
+ * カラムのすべての値が同じ型の場合は、プリミティブ型の配列で値を保持する。
+ * nullはビットセットで管理する。
+ * プリミティブ型のカラムは、値を取得する度にラッパー型に変換する。hashCodeとequalsは配列のまま計算する。
+ * </p>
+ *
+ * @since 1.0
+ * @author shuji
+ */
+abstract class YamlColumn {
+
+    /**
+     * 行番号を指定して値を取得する。
+     * @param row 行番号
+     * @return 値
+     */
+    abstract Object get(int row);
+
+    /**
+     * 行数を返す。
+     * @return 行数
+     */
+    abstract int size();
+
+    /**
+     * 行番号を指定して値のハッシュコードを返す。
+     * @param row 行番号
+     * @return 値のハッシュコード。値がnullの場合は0
+     */
+    int hashCode(int row) {
+        Object value = get(row);
+        return value == null ? 0 : value.hashCode();
+    }
+
+    /**
+     * 同じ行数のカラムとすべての値を比較する。
+     * @param other 同じ行数のカラム
+     * @return すべての値が等しい場合は{@code true}
+     */
+    boolean equalValues(YamlColumn other) {
+        for (int i = 0; i < size(); i++) {
+            Object value = get(i);
+            Object otherValue = other.get(i);
+            if (value == null) {
+                if (otherValue != null) return false;
+            } else if (!value.equals(otherValue)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * カラムの値からカラムを生成する。
+     * <p>値の型に応じて、最も効率よく値を保持できる実装を選択する。</p>
+     * @param values 行番号順に並べたカラムの値
+     * @return カラム
+     */
+    static YamlColumn of(Object[] values) {
+        Class<?> type = null;
+        for (Object value : values) {
+            if (value == null) continue;
+            if (type == null) {
+                type = value.getClass();
+            } else if (type != value.getClass()) {
+                return new ObjectColumn(values);
+            }
+        }
+        if (type == Integer.class) {
+            IntColumn column = new IntColumn(values.length);
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] == null) column.nulls.set(i);
+                else column.values[i] = (Integer) values[i];
+            }
+            return column;
+        }
+        if (type == Long.class) {
+            LongColumn column = new LongColumn(values.length);
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] == null) column.nulls.set(i);
+                else column.values[i] = (Long) values[i];
+            }
+            return column;
+        }
+        if (type == Double.class) {
+            DoubleColumn column = new DoubleColumn(values.length);
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] == null) column.nulls.set(i);
+                else column.values[i] = (Double) values[i];
+            }
+            return column;
+        }
+        if (type == Boolean.class) {
+            BooleanColumn column = new BooleanColumn(values.length);
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] == null) column.nulls.set(i);
+                else column.values.set(i, (Boolean) values[i]);
+            }
+            return column;
+        }
+        if (type == String.class) {
+            StringColumn column = new StringColumn(values.length);
+            for (int i = 0; i < values.length; i++) {
+                column.values[i] = (String) values[i];
+            }
+            return column;
+        }
+        return new ObjectColumn(values);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = 1;
+        for (int i = 0; i < size(); i++) {
+            result = 31 * result + hashCode(i);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (!(obj instanceof YamlColumn)) return false;
+        YamlColumn other = (YamlColumn) obj;
+        if (size() != other.size()) return false;
+        return equalValues(other);
+    }
+
+    /**
+     * プリミティブ型の配列で値を保持するカラム。
+     */
+    abstract static class PrimitiveColumn extends YamlColumn {
+        final BitSet nulls = new BitSet();
+
+        /**
+         * nullでない値をラッパー型に変換する。
+         * @param row 行番号
+         * @return ラッパー型の値
+         */
+        abstract Object box(int row);
+
+        @Override
+        Object get(int row) {
+            return nulls.get(row) ? null : box(row);
+        }
+    }
+
+    static class IntColumn extends PrimitiveColumn {
+        final int[] values;
+
+        IntColumn(int size) {
+            values = new int[size];
+        }
+
+        @Override
+        Object box(int row) {
+            return Integer.valueOf(values[row]);
+        }
+
+        @Override
+        int hashCode(int row) {
+            return nulls.get(row) ? 0 : values[row];
+        }
+
+        @Override
+        boolean equalValues(YamlColumn other) {
+            if (!(other instanceof IntColumn)) return super.equalValues(other);
+            IntColumn column = (IntColumn) other;
+            return nulls.equals(column.nulls) && Arrays.equals(values, column.values);
+        }
+
+        @Override
+        int size() {
+            return values.length;
+        }
+    }
+
+    static class LongColumn extends PrimitiveColumn {
+        final long[] values;
+
+        LongColumn(int size) {
+            values = new long[size];
+        }
+
+        @Override
+        Object box(int row) {
+            return Long.valueOf(values[row]);
+        }
+
+        @Override
+        int hashCode(int row) {
+            if (nulls.get(row)) return 0;
+            long value = values[row];
+            return (int) (value ^ (value >>> 32));
+        }
+
+        @Override
+        boolean equalValues(YamlColumn other) {
+            if (!(other instanceof LongColumn)) return super.equalValues(other);
+            LongColumn column = (LongColumn) other;
+            return nulls.equals(column.nulls) && Arrays.equals(values, column.values);
+        }
+
+        @Override
+        int size() {
+            return values.length;
+        }
+    }
+
+    static class DoubleColumn extends PrimitiveColumn {
+        final double[] values;
+
+        DoubleColumn(int size) {
+            values = new double[size];
+        }
+
+        @Override
+        Object box(int row) {
+            return Double.valueOf(values[row]);
+        }
+
+        @Override
+        int hashCode(int row) {
+            if (nulls.get(row)) return 0;
+            long bits = Double.doubleToLongBits(values[row]);
+            return (int) (bits ^ (bits >>> 32));
+        }
+
+        @Override
+        boolean equalValues(YamlColumn other) {
+            if (!(other instanceof DoubleColumn)) return super.equalValues(other);
+            DoubleColumn column = (DoubleColumn) other;
+            return nulls.equals(column.nulls) && Arrays.equals(values, column.values);
+        }
+
+        @Override
+        int size() {
+            return values.length;
+        }
+    }
+
+    static class BooleanColumn extends YamlColumn {
+        final int size;
+        final BitSet values = new BitSet();
+        final BitSet nulls = new BitSet();
+
+        BooleanColumn(int size) {
+            this.size = size;
+        }
+
+        @Override
+        Object get(int row) {
+            return nulls.get(row) ? null : Boolean.valueOf(values.get(row));
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
+    }
+
+    static class StringColumn extends YamlColumn {
+        final String[] values;
+
+        StringColumn(int size) {
+            values = new String[size];
+        }
+
+        @Override
+        Object get(int row) {
+            return values[row];
+        }
+
+        @Override
+        int size() {
+            return values.length;
+        }
+    }
+
+    static class ObjectColumn extends YamlColumn {
+        final Object[] values;
+
+        ObjectColumn(Object[] values) {
+            this.values = values;
+        }
+
+        @Override
+        Object get(int row) {
+            return values[row];
+        }
+
+        @Override
+        int size() {
+            return values.length;
+        }
+    }
+}
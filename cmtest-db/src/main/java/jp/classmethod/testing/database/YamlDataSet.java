@@ -19,10 +19,12 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -34,6 +36,7 @@ import org.dbunit.dataset.ITableIterator;
 import org.dbunit.dataset.ITableMetaData;
 import org.dbunit.dataset.RowOutOfBoundsException;
 import org.dbunit.dataset.datatype.DataType;
+import org.dbunit.dataset.stream.StreamingDataSet;
 import org.yaml.snakeyaml.Yaml;
 import org.yaml.snakeyaml.error.YAMLException;
 
@@ -166,14 +169,32 @@ public class YamlDataSet implements IDataSet {
         }
     }
 
+    /**
+     * YAMLで定義されたテーブル。
+     * <p>レコードはカラム毎の配列（{@link YamlColumn}）に変換して保持する。</p>
+     */
     static class YamlTable implements ITable {
 
-        final List<Map<String, Object>> rows;
+        final int rowCount;
+        final YamlColumn[] columns;
         final YamlTableMeta tableMetaData;
 
         public YamlTable(final String tableName, List<Map<String, Object>> rows) {
-            this.rows = rows;
+            if (rows == null) rows = Collections.emptyList();
+            this.rowCount = rows.size();
             this.tableMetaData = new YamlTableMeta(tableName, rows);
+            Object[][] values = new Object[tableMetaData.columns.length][rowCount];
+            int row = 0;
+            for (Map<String, Object> entries : rows) {
+                for (Entry<String, Object> entry : entries.entrySet()) {
+                    values[tableMetaData.indexOf(entry.getKey())][row] = entry.getValue();
+                }
+                row++;
+            }
+            this.columns = new YamlColumn[values.length];
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = YamlColumn.of(values[i]);
+            }
         }
 
         @Override
@@ -183,22 +204,23 @@ public class YamlDataSet implements IDataSet {
 
         @Override
         public int getRowCount() {
-            return rows.size();
+            return rowCount;
         }
 
         @Override
         public Object getValue(int row, String column) throws DataSetException {
-            if (row < 0 || rows.size() <= row) {
+            if (row < 0 || rowCount <= row) {
                 throw new RowOutOfBoundsException();
             }
-            return rows.get(row).get(column);
+            int index = tableMetaData.indexOf(column);
+            return index < 0 ? null : columns[index].get(row);
         }
 
         @Override
         public int hashCode() {
             final int prime = 31;
             int result = 1;
-            result = prime * result + ((rows == null) ? 0 : rows.hashCode());
+            result = prime * result + Arrays.hashCode(columns);
             result = prime * result + ((tableMetaData == null) ? 0 : tableMetaData.hashCode());
             return result;
         }
@@ -209,9 +231,8 @@ public class YamlDataSet implements IDataSet {
             if (obj == null) return false;
             if (getClass() != obj.getClass()) return false;
             YamlTable other = (YamlTable) obj;
-            if (rows == null) {
-                if (other.rows != null) return false;
-            } else if (!rows.equals(other.rows)) return false;
+            if (rowCount != other.rowCount) return false;
+            if (!Arrays.equals(columns, other.columns)) return false;
             if (tableMetaData == null) {
                 if (other.tableMetaData != null) return false;
             } else if (!tableMetaData.equals(other.tableMetaData)) return false;
@@ -227,9 +248,9 @@ public class YamlDataSet implements IDataSet {
                 str.append(column.getColumnName()).append("\t");
             }
             str.append("\n");
-            for (Map<String, Object> row : rows) {
-                for (Column column : tableMetaData.columns) {
-                    str.append(row.get(column.getColumnName())).append("\t");
+            for (int row = 0; row < rowCount; row++) {
+                for (YamlColumn column : columns) {
+                    str.append(column.get(row)).append("\t");
                 }
                 str.append("\n");
             }
@@ -239,25 +260,49 @@ public class YamlDataSet implements IDataSet {
 
     }
 
+    /**
+     * YAMLで定義されたテーブルのメタデータ。
+     * <p>
+     * カラムはすべてのレコードに含まれるカラム名の和集合とし、最初に現れた順に並べる。
+     * カラム名は大文字と小文字を区別しない。
+     * </p>
+     */
     static class YamlTableMeta implements ITableMetaData {
 
         final String tableName;
         final Column[] columns;
-        final List<String> columnNames;
+        final Map<String, Integer> columnIndexes = new HashMap<>();
+        final Map<String, Integer> ignoreCaseColumnIndexes = new HashMap<>();
 
         YamlTableMeta(String tableName, List<Map<String, Object>> rows) {
             this.tableName = tableName;
             ArrayList<Column> cols = new ArrayList<>();
-            columnNames = new ArrayList<>();
-            if (!rows.isEmpty()) {
-                for (Entry<String, Object> entry : rows.get(0).entrySet()) {
-                    columnNames.add(entry.getKey());
-                    cols.add(new Column(entry.getKey(), DataType.UNKNOWN));
+            for (Map<String, Object> row : rows) {
+                for (String columnName : row.keySet()) {
+                    if (columnIndexes.containsKey(columnName)) continue;
+                    String key = toKey(columnName);
+                    Integer index = ignoreCaseColumnIndexes.get(key);
+                    if (index == null) {
+                        index = cols.size();
+                        ignoreCaseColumnIndexes.put(key, index);
+                        cols.add(new Column(columnName, DataType.UNKNOWN));
+                    }
+                    columnIndexes.put(columnName, index);
                 }
             }
             columns = cols.toArray(new Column[cols.size()]);
         }
 
+        int indexOf(String columnName) {
+            Integer index = columnIndexes.get(columnName);
+            if (index == null) index = ignoreCaseColumnIndexes.get(toKey(columnName));
+            return index == null ? -1 : index;
+        }
+
+        static String toKey(String columnName) {
+            return columnName.toUpperCase(Locale.ENGLISH);
+        }
+
         @Override
         public String getTableName() {
             return tableName;
@@ -275,7 +320,7 @@ public class YamlDataSet implements IDataSet {
 
         @Override
         public int getColumnIndex(String columnName) throws DataSetException {
-            return columnNames.indexOf(columnName);
+            return indexOf(columnName);
         }
 
         @Override
@@ -325,4 +370,21 @@ public class YamlDataSet implements IDataSet {
         return new YamlDataSet((Map<String, List<Map<String, Object>>>) new Yaml().load(input));
     }
 
+    /**
+     * YAMLリソースを指定して、レコードを順次読み込むデータセットを生成する。
+     * <p>
+     * 返されるデータセットはYAML全体をメモリ上に展開せず、テーブルとレコードを読み込みながらDbUnitに渡す。
+     * 反復は一度しか行えず、{@link IDataSet#reverseIterator()}や{@link ITable#getRowCount()}には対応しない。
+     * そのため、DbUnitのCLEAN_INSERTではなく、{@link BatchInsertOperation#INSERT}などの挿入のみを行うオペレーションと組み合わせること。
+     * </p>
+     * @param input YAMLリソース
+     * @return データセット
+     * @throws DataSetException データセットの生成に失敗した場合
+     * @see YamlProducer
+     * @since 1.0
+     */
+    public static IDataSet stream(InputStream input) throws DataSetException {
+        return new StreamingDataSet(new YamlProducer(input));
+    }
+
 }
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2013 Classmethod, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package jp.classmethod.testing.database;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.dbunit.dataset.Column;
+import org.dbunit.dataset.DataSetException;
+import org.dbunit.dataset.DefaultTableMetaData;
+import org.dbunit.dataset.datatype.DataType;
+import org.dbunit.dataset.stream.DefaultConsumer;
+import org.dbunit.dataset.stream.IDataSetConsumer;
+import org.dbunit.dataset.stream.IDataSetProducer;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.Constructor;
+import org.yaml.snakeyaml.error.YAMLException;
+import org.yaml.snakeyaml.events.Event;
+import org.yaml.snakeyaml.events.ScalarEvent;
+import org.yaml.snakeyaml.nodes.NodeId;
+import org.yaml.snakeyaml.nodes.ScalarNode;
+import org.yaml.snakeyaml.nodes.Tag;
+import org.yaml.snakeyaml.reader.UnicodeReader;
+import org.yaml.snakeyaml.resolver.Resolver;
+
+/**
+ * YAML形式のリソースをイベント単位で読み込み、テーブルとレコードを順次DbUnitに渡すプロデューサ。
+ * <p>
+ * {@link YamlDataSet#load(InputStream)}と異なり、YAML全体をメモリ上に展開しないため、
+ * 巨大なフィクスチャでも一定のメモリで読み込むことができる。
+ * テーブルのカラムは各テーブルの最初のレコードから決定し、以降のレコードにのみ存在するカラムがある場合は例外をスローする。
+ * アンカーとエイリアス、ネストした値には対応しない。
+ * </p>
+ * 
+ * @see YamlDataSet#stream(InputStream)
+ * @since 1.0
+ * @author shuji
+ */
+public class YamlProducer implements IDataSetProducer {
+
+    private final InputStream input;
+    private final ScalarConstructor constructor = new ScalarConstructor();
+    private IDataSetConsumer consumer = new DefaultConsumer();
+    private Iterator<Event> events;
+
+    /**
+     * YAMLリソースを指定して、インスタンスを生成する。
+     * @param input YAMLリソース
+     * @since 1.0
+     */
+    public YamlProducer(InputStream input) {
+        this.input = input;
+    }
+
+    @Override
+    public void setConsumer(IDataSetConsumer consumer) throws DataSetException {
+        this.consumer = consumer;
+    }
+
+    @Override
+    public void produce() throws DataSetException {
+        try (Reader reader = new UnicodeReader(input)) {
+            events = new Yaml().parse(reader).iterator();
+            consumer.startDataSet();
+            expect(Event.ID.StreamStart);
+            Event event = nextEvent();
+            if (event.is(Event.ID.DocumentStart)) {
+                event = nextEvent();
+                if (event.is(Event.ID.MappingStart)) {
+                    produceTables();
+                } else if (!isNull(event)) {
+                    throw unexpected(event);
+                }
+                expect(Event.ID.DocumentEnd);
+                event = nextEvent();
+            }
+            if (!event.is(Event.ID.StreamEnd)) throw unexpected(event);
+            consumer.endDataSet();
+        } catch (IOException | YAMLException e) {
+            throw new DataSetException(e);
+        }
+    }
+
+    /**
+     * YAMLリソースのテーブル名を、レコードの値を構築せずに読み込む。
+     * <p>トップレベルのマッピングのキーだけを取り出し、レコードはイベントを読み飛ばす。</p>
+     * @param input YAMLリソース
+     * @return テーブル名。YAMLの順に並べる
+     * @throws DataSetException YAMLの構造が正しくない場合
+     * @since 1.0
+     */
+    public static String[] tableNames(InputStream input) throws DataSetException {
+        List<String> tableNames = new ArrayList<>();
+        try (Reader reader = new UnicodeReader(input)) {
+            Iterator<Event> events = new Yaml().parse(reader).iterator();
+            int depth = 0;
+            boolean key = false;
+            while (events.hasNext()) {
+                Event event = events.next();
+                boolean start = event.is(Event.ID.MappingStart) || event.is(Event.ID.SequenceStart);
+                boolean end = event.is(Event.ID.MappingEnd) || event.is(Event.ID.SequenceEnd);
+                if (depth == 1 && key) {
+                    if (end) {
+                        depth--;
+                        continue;
+                    }
+                    tableNames.add(scalar(event).getValue());
+                    key = false;
+                } else if (start) {
+                    depth++;
+                    if (depth == 1) key = true;
+                } else if (end) {
+                    depth--;
+                    if (depth == 1) key = true;
+                } else if (depth == 1) {
+                    key = true;
+                }
+            }
+        } catch (IOException | YAMLException e) {
+            throw new DataSetException(e);
+        }
+        return tableNames.toArray(new String[tableNames.size()]);
+    }
+
+    private void produceTables() throws DataSetException {
+        for (;;) {
+            Event event = nextEvent();
+            if (event.is(Event.ID.MappingEnd)) return;
+            String tableName = scalar(event).getValue();
+            event = nextEvent();
+            if (event.is(Event.ID.SequenceStart)) {
+                produceRows(tableName);
+            } else if (isNull(event)) {
+                consumer.startTable(new DefaultTableMetaData(tableName, new Column[0]));
+                consumer.endTable();
+            } else {
+                throw unexpected(event);
+            }
+        }
+    }
+
+    private void produceRows(String tableName) throws DataSetException {
+        Event event = nextEvent();
+        if (event.is(Event.ID.SequenceEnd)) {
+            consumer.startTable(new DefaultTableMetaData(tableName, new Column[0]));
+            consumer.endTable();
+            return;
+        }
+        Map<String, Object> row = readRow(event);
+        int rowIndex = 0;
+        List<String> columnNames = new ArrayList<>(row.keySet());
+        Column[] columns = new Column[columnNames.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = new Column(columnNames.get(i), DataType.UNKNOWN);
+        }
+        consumer.startTable(new DefaultTableMetaData(tableName, columns));
+        for (;;) {
+            Object[] values = new Object[columns.length];
+            int found = 0;
+            for (int i = 0; i < columns.length; i++) {
+                String columnName = columnNames.get(i);
+                if (row.containsKey(columnName)) found++;
+                values[i] = row.get(columnName);
+            }
+            if (found < row.size()) throw unknownColumn(tableName, rowIndex, row, columnNames, event);
+            consumer.row(values);
+            event = nextEvent();
+            if (event.is(Event.ID.SequenceEnd)) break;
+            row = readRow(event);
+            rowIndex++;
+        }
+        consumer.endTable();
+    }
+
+    private Map<String, Object> readRow(Event event) throws DataSetException {
+        if (!event.is(Event.ID.MappingStart)) throw unexpected(event);
+        Map<String, Object> row = new LinkedHashMap<>();
+        for (;;) {
+            event = nextEvent();
+            if (event.is(Event.ID.MappingEnd)) return row;
+            String column = scalar(event).getValue();
+            row.put(column, constructor.construct(scalar(nextEvent())));
+        }
+    }
+
+    private Event nextEvent() throws DataSetException {
+        if (!events.hasNext()) throw new DataSetException("Unexpected end of YAML.");
+        return events.next();
+    }
+
+    private void expect(Event.ID id) throws DataSetException {
+        Event event = nextEvent();
+        if (!event.is(id)) throw unexpected(event);
+    }
+
+    private static ScalarEvent scalar(Event event) throws DataSetException {
+        if (!event.is(Event.ID.Scalar)) throw unexpected(event);
+        return (ScalarEvent) event;
+    }
+
+    private boolean isNull(Event event) {
+        return event.is(Event.ID.Scalar) && constructor.construct((ScalarEvent) event) == null;
+    }
+
+    private static DataSetException unknownColumn(String tableName, int rowIndex, Map<String, Object> row,
+            List<String> columnNames, Event event) {
+        for (String column : row.keySet()) {
+            if (!columnNames.contains(column)) {
+                return new DataSetException("Unknown column '" + column + "' in row " + rowIndex + " of table '"
+                        + tableName + "' at " + event.getStartMark() + ". Columns are defined by the first row: "
+                        + columnNames);
+            }
+        }
+        throw new AssertionError();
+    }
+
+    private static DataSetException unexpected(Event event) {
+        return new DataSetException("Unsupported YAML structure: " + event + " at " + event.getStartMark());
+    }
+
+    /**
+     * スカラー値をYAMLの暗黙の型解決に従って構築するコンストラクタ。
+     */
+    static class ScalarConstructor extends Constructor {
+        private final Resolver resolver = new Resolver();
+
+        Object construct(ScalarEvent event) {
+            String tag = event.getTag();
+            Tag nodeTag;
+            if (tag == null || tag.equals("!")) {
+                nodeTag = resolver.resolve(NodeId.scalar, event.getValue(),
+                        event.getImplicit().canOmitTagInPlainScalar());
+            } else {
+                nodeTag = new Tag(tag);
+            }
+            return constructObject(new ScalarNode(nodeTag, event.getValue(), event.getStartMark(),
+                    event.getEndMark(), event.getStyle()));
+        }
+    }
+}
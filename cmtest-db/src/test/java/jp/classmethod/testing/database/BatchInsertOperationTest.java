@@ -0,0 +1,84 @@
+package jp.classmethod.testing.database;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import org.dbunit.database.DatabaseConnection;
+import org.dbunit.dataset.Column;
+import org.dbunit.dataset.DefaultDataSet;
+import org.dbunit.dataset.DefaultTable;
+import org.dbunit.dataset.ITable;
+import org.dbunit.dataset.datatype.DataType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class BatchInsertOperationTest {
+
+    Connection conn;
+
+    @Before
+    public void setUp() throws Exception {
+        Class.forName("org.h2.Driver");
+        conn = DriverManager.getConnection("jdbc:h2:mem:BatchInsertOperationTest");
+        try (Statement stat = conn.createStatement()) {
+            stat.execute("CREATE TABLE users (id INT PRIMARY KEY, name VARCHAR(32) DEFAULT 'guest')");
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        conn.close();
+    }
+
+    @Test
+    public void バッチサイズを超えるレコードを挿入する() throws Exception {
+        // Setup
+        DefaultTable table = new DefaultTable("users", new Column[] {
+                new Column("id", DataType.UNKNOWN), new Column("name", DataType.UNKNOWN) });
+        for (int i = 0; i < 2345; i++) {
+            table.addRow(new Object[] { i, i % 10 == 0 ? null : "user" + i });
+        }
+        // Exercise
+        BatchInsertOperation.cleanInsert(1000).execute(new DatabaseConnection(conn), new DefaultDataSet(table));
+        // Verify
+        try (Statement stat = conn.createStatement();
+                ResultSet rs = stat.executeQuery("SELECT COUNT(*), COUNT(name), MAX(id) FROM users")) {
+            rs.next();
+            assertThat(rs.getInt(1), is(2345));
+            assertThat(rs.getInt(2), is(2345 - 235));
+            assertThat(rs.getInt(3), is(2344));
+        }
+    }
+
+    @Test
+    public void 値のないカラムはデフォルト値で挿入する() throws Exception {
+        // Setup
+        DefaultTable table = new DefaultTable("users", new Column[] {
+                new Column("id", DataType.UNKNOWN), new Column("name", DataType.UNKNOWN) });
+        table.addRow(new Object[] { 1, "shuji" });
+        table.addRow(new Object[] { 2, ITable.NO_VALUE });
+        table.addRow(new Object[] { 3, ITable.NO_VALUE });
+        table.addRow(new Object[] { 4, null });
+        // Exercise
+        BatchInsertOperation.cleanInsert(2).execute(new DatabaseConnection(conn), new DefaultDataSet(table));
+        // Verify
+        try (Statement stat = conn.createStatement();
+                ResultSet rs = stat.executeQuery("SELECT name FROM users ORDER BY id")) {
+            rs.next();
+            assertThat(rs.getString(1), is("shuji"));
+            rs.next();
+            assertThat(rs.getString(1), is("guest"));
+            rs.next();
+            assertThat(rs.getString(1), is("guest"));
+            rs.next();
+            assertThat(rs.getString(1), is((String) null));
+        }
+    }
+}
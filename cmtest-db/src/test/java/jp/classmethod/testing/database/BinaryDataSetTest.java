@@ -0,0 +1,88 @@
+package jp.classmethod.testing.database;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.dbunit.dataset.IDataSet;
+import org.dbunit.dataset.ITable;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+@SuppressWarnings("javadoc")
+public class BinaryDataSetTest {
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void YAMLをコンパイルしたファイルは値と型を保持する() throws Exception {
+        // Setup
+        File source = write(tmp.newFile("users.yaml"), "users:\n"
+                + "  - {id: 1, name: shuji, score: 1.5, admin: true}\n"
+                + "  - {id: 2, name: null, score: 2.0, admin: false}\n"
+                + "items:\n"
+                + "  - {id: 10000000000}\n");
+        File target = new File(tmp.getRoot(), "users.bin");
+        // Exercise
+        int count = BinaryFixtureCompiler.compile(source, target);
+        IDataSet actual = BinaryDataSet.load(target);
+        // Verify
+        assertThat(count, is(1));
+        assertThat(Arrays.asList(actual.getTableNames()), is(Arrays.asList("users", "items")));
+        ITable users = actual.getTable("USERS");
+        assertThat(users.getRowCount(), is(2));
+        assertThat(users.getValue(0, "id"), is((Object) 1));
+        assertThat(users.getValue(0, "name"), is((Object) "shuji"));
+        assertThat(users.getValue(0, "score"), is((Object) 1.5));
+        assertThat(users.getValue(0, "admin"), is((Object) true));
+        assertThat(users.getValue(1, "NAME"), is(nullValue()));
+        assertThat(users.getValue(1, "admin"), is((Object) false));
+        assertThat(actual.getTable("items").getValue(0, "id"), is((Object) 10000000000L));
+    }
+
+    @Test
+    public void CSVのディレクトリをコンパイルできる() throws Exception {
+        // Setup
+        File source = tmp.newFolder("csv");
+        write(new File(source, "table-ordering.txt"), "users\n");
+        write(new File(source, "users.csv"), "id,name\n1,shuji\n2,tom\n");
+        File target = tmp.newFolder("bin");
+        // Exercise
+        int count = BinaryFixtureCompiler.compile(tmp.getRoot(), target);
+        ITable actual = BinaryDataSet.load(new File(target, "csv.bin")).getTable("users");
+        // Verify
+        assertThat(count, is(1));
+        assertThat(actual.getRowCount(), is(2));
+        assertThat(actual.getValue(1, "name"), is((Object) "tom"));
+    }
+
+    @Test
+    public void ストリームから読み込める() throws Exception {
+        // Setup
+        IDataSet dataSet = YamlDataSet.load(getClass().getResourceAsStream("one_table.yaml"));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryDataSet.write(dataSet, bytes);
+        // Exercise
+        ITable actual = BinaryDataSet.load(new ByteArrayInputStream(bytes.toByteArray())).getTable("users");
+        // Verify
+        assertThat(actual.getRowCount(), is(1));
+        assertThat(actual.getValue(0, "name"), is((Object) "shuji"));
+    }
+
+    static File write(File file, String content) throws IOException {
+        Files.write(file.toPath(), content.getBytes(UTF8));
+        return file;
+    }
+}
@@ -0,0 +1,175 @@
+package jp.classmethod.testing.database;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.dbunit.database.IDatabaseConnection;
+import org.dbunit.dataset.DefaultDataSet;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+@SuppressWarnings("javadoc")
+public class ConnectionPoolTest {
+
+    @After
+    public void closePools() {
+        ConnectionPool.closeAll();
+    }
+
+    static JdbcDatabaseConnectionManager pooled(String name, int maxSize, long idleTimeoutMillis) {
+        JdbcDatabaseConnectionManager cm = new JdbcDatabaseConnectionManager("org.h2.Driver", "jdbc:h2:mem:" + name);
+        cm.maxPoolSize = maxSize;
+        cm.idleTimeoutMillis = idleTimeoutMillis;
+        return cm;
+    }
+
+    @Test
+    public void 返却したコネクションを再利用する() throws Exception {
+        // Setup
+        JdbcDatabaseConnectionManager cm = pooled("ConnectionPoolTest1", 2, 60000);
+        long connects = ConnectionMetrics.getConnectCount();
+        // Exercise
+        IDatabaseConnection first = cm.getConnection();
+        first.close();
+        IDatabaseConnection second = cm.getConnection();
+        second.close();
+        // Verify
+        assertThat(second, is(sameInstance(first)));
+        assertThat(ConnectionMetrics.getConnectCount() - connects, is(1L));
+        assertThat(ConnectionPool.of(cm).size(), is(1));
+    }
+
+    @Test
+    public void 上限に達した場合は返却を待ってタイムアウトする() throws Exception {
+        // Setup
+        JdbcDatabaseConnectionManager cm = pooled("ConnectionPoolTest2", 1, 60000);
+        ConnectionPool.of(cm).maxWaitMillis = 10;
+        IDatabaseConnection borrowed = cm.getConnection();
+        // Exercise
+        try {
+            cm.getConnection();
+            fail();
+        } catch (SQLException e) {
+            // Verify
+            assertThat(e.getMessage(), containsString("Connection pool is exhausted"));
+        } finally {
+            borrowed.close();
+        }
+    }
+
+    @Test
+    public void 接続中もプールのロックを保持しない() throws Exception {
+        // Setup
+        final CountDownLatch connecting = new CountDownLatch(1);
+        final CountDownLatch connected = new CountDownLatch(1);
+        final JdbcDatabaseConnectionManager cm = new JdbcDatabaseConnectionManager("org.h2.Driver",
+                "jdbc:h2:mem:ConnectionPoolTest6") {
+            @Override
+            protected Connection connect() throws SQLException {
+                connecting.countDown();
+                try {
+                    connected.await();
+                } catch (InterruptedException e) {
+                    throw new SQLException(e);
+                }
+                return super.connect();
+            }
+        };
+        cm.maxPoolSize = 2;
+        final ConnectionPool pool = ConnectionPool.of(cm);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<IDatabaseConnection> borrowing = executor.submit(new Callable<IDatabaseConnection>() {
+                @Override
+                public IDatabaseConnection call() throws Exception {
+                    return pool.borrow();
+                }
+            });
+            connecting.await();
+            // Exercise
+            Future<Integer> size = executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    return pool.size();
+                }
+            });
+            // Verify
+            try {
+                assertThat(size.get(1, TimeUnit.SECONDS), is(1));
+            } finally {
+                connected.countDown();
+            }
+            borrowing.get().close();
+            assertThat(pool.size(), is(1));
+        } finally {
+            connected.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void 上限に達していなくても返却されないコネクションを検出する() throws Exception {
+        // Setup
+        JdbcDatabaseConnectionManager cm = pooled("ConnectionPoolTest7", 3, 60000);
+        cm.leakThresholdMillis = 0;
+        ConnectionPool.PooledConnection leaked = (ConnectionPool.PooledConnection) cm.getConnection();
+        try {
+            // Exercise
+            cm.getConnection().close();
+            // Verify
+            assertThat(leaked.leakReported, is(true));
+            assertThat(ConnectionPool.of(cm).size(), is(2));
+        } finally {
+            leaked.close();
+        }
+    }
+
+    @Test
+    public void アイドル時間を過ぎたコネクションは破棄する() throws Exception {
+        // Setup
+        JdbcDatabaseConnectionManager cm = pooled("ConnectionPoolTest3", 1, 0);
+        IDatabaseConnection first = cm.getConnection();
+        first.close();
+        // Exercise
+        IDatabaseConnection second = cm.getConnection();
+        second.close();
+        // Verify
+        assertThat(second, is(not(sameInstance(first))));
+        assertThat(first.getConnection().isClosed(), is(true));
+    }
+
+    @Test
+    public void テスト対象のコードがクローズしたコネクションはプールに返却する() throws Throwable {
+        // Setup
+        JdbcDatabaseConnectionManager cm = pooled("ConnectionPoolTest4", 1, 60000);
+        ConnectionPool.of(cm).maxWaitMillis = 10;
+        final DbUnitTester sut = new DbUnitTester(cm, new DefaultDataSet());
+        // Exercise
+        for (int i = 0; i < 3; i++) {
+            sut.apply(new Statement() {
+                @Override
+                public void evaluate() throws Throwable {
+                    sut.getConnection().getConnection().close();
+                    sut.getConnection();
+                }
+            }, Description.createTestDescription(ConnectionPoolTest.class, "test")).evaluate();
+        }
+        // Verify
+        assertThat(ConnectionPool.of(cm).size(), is(1));
+    }
+}
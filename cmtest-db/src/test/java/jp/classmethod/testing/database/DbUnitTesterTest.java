@@ -0,0 +1,445 @@
+package jp.classmethod.testing.database;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.dbunit.DatabaseUnitException;
+import org.dbunit.database.IDatabaseConnection;
+import org.dbunit.dataset.Column;
+import org.dbunit.dataset.DefaultDataSet;
+import org.dbunit.dataset.DefaultTable;
+import org.dbunit.dataset.IDataSet;
+import org.dbunit.dataset.ITable;
+import org.dbunit.dataset.datatype.DataType;
+import org.dbunit.operation.DatabaseOperation;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.Description;
+
+@SuppressWarnings("javadoc")
+public class DbUnitTesterTest {
+
+    static final String URL = "jdbc:h2:mem:DbUnitTesterTest;DB_CLOSE_DELAY=-1";
+
+    @BeforeClass
+    public static void createTable() throws Exception {
+        Class.forName("org.h2.Driver");
+        try (Connection conn = DriverManager.getConnection(URL); Statement stat = conn.createStatement()) {
+            stat.execute("CREATE TABLE IF NOT EXISTS users (id INT PRIMARY KEY, name VARCHAR(32))");
+            stat.execute("CREATE TABLE IF NOT EXISTS roles (id INT PRIMARY KEY, name VARCHAR(32))");
+            stat.execute("CREATE TABLE IF NOT EXISTS codes (code VARCHAR(8) PRIMARY KEY, name VARCHAR(32))");
+        }
+    }
+
+    static IDataSet oneUser() throws Exception {
+        DefaultTable table = new DefaultTable("users", new Column[] {
+                new Column("ID", DataType.INTEGER), new Column("NAME", DataType.VARCHAR) });
+        table.addRow(new Object[] { 1, "shuji" });
+        return new DefaultDataSet(table);
+    }
+
+    @Test
+    public void ロールバックモードではテストの変更が破棄される() throws Throwable {
+        // Setup
+        final DbUnitTester sut = DbUnitTester.forJdbc("org.h2.Driver", URL).rollback().create(oneUser());
+        Description description = Description.createTestDescription(getClass(), "test");
+        // Exercise
+        sut.apply(new org.junit.runners.model.Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                Connection conn = sut.getConnection().getConnection();
+                try (Statement stat = conn.createStatement()) {
+                    stat.executeUpdate("INSERT INTO users VALUES (2, 'tom')");
+                }
+                assertThat(countUsers(conn), is(2));
+            }
+        }, description).evaluate();
+        // Verify
+        try (Connection conn = DriverManager.getConnection(URL)) {
+            assertThat(countUsers(conn), is(1));
+        }
+    }
+
+    @Test
+    public void 読み取り専用テストの後は同じフィクスチャのセットアップを省略する() throws Throwable {
+        // Setup
+        IDataSet dataSet = oneUser();
+        CountingOperation operation = new CountingOperation();
+        // Exercise
+        runReadOnly(operation, dataSet);
+        runReadOnly(operation, dataSet);
+        // Verify
+        assertThat(operation.count, is(1));
+    }
+
+    @Test
+    public void ロールバックモードのセットアップの後は読み取り専用テストでもセットアップする() throws Throwable {
+        // Setup
+        IDataSet dataSet = oneUser();
+        CountingOperation operation = new CountingOperation();
+        runReadOnly(operation, dataSet);
+        DbUnitTester rollback = DbUnitTester.forJdbc("org.h2.Driver", URL).rollback().create(twoUsers());
+        run(rollback, new org.junit.runners.model.Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+            }
+        });
+        // Exercise
+        runReadOnly(operation, dataSet);
+        // Verify
+        assertThat(operation.count, is(2));
+        try (Connection conn = DriverManager.getConnection(URL)) {
+            assertThat(countUsers(conn), is(1));
+        }
+    }
+
+    @Test
+    public void verifyTableは主キーで突き合わせるためレコードの順序を問わない() throws Throwable {
+        // Setup
+        DbUnitTester sut = DbUnitTester.forJdbc("org.h2.Driver", URL).schema("PUBLIC").create(twoUsers());
+        DefaultTable expected = usersTable();
+        expected.addRow(new Object[] { 2, "tom" });
+        expected.addRow(new Object[] { 1, "shuji" });
+        // Exercise & Verify
+        run(sut, verifyTable(sut, expected));
+    }
+
+    @Test
+    public void 主キーを無視するカラムに指定した場合は主キーの順にレコードを検証する() throws Throwable {
+        // Setup
+        DefaultTable codes = new DefaultTable("codes", new Column[] {
+                new Column("code", DataType.UNKNOWN), new Column("name", DataType.UNKNOWN) });
+        codes.addRow(new Object[] { "c", "C" });
+        codes.addRow(new Object[] { "a", "A" });
+        codes.addRow(new Object[] { "b", "B" });
+        final DbUnitTester sut = DbUnitTester.forJdbc("org.h2.Driver", URL).schema("PUBLIC")
+                .create(new DefaultDataSet(codes));
+        final DefaultTable expected = new DefaultTable("codes", new Column[] {
+                new Column("code", DataType.UNKNOWN), new Column("name", DataType.UNKNOWN) });
+        expected.addRow(new Object[] { "x", "A" });
+        expected.addRow(new Object[] { "y", "B" });
+        expected.addRow(new Object[] { "z", "C" });
+        // Exercise & Verify
+        run(sut, new org.junit.runners.model.Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                sut.verifyTable("codes", expected, "code");
+                assertThat(sut.getTable("codes", null).getValue(0, "name"), is((Object) "A"));
+            }
+        });
+    }
+
+    @Test
+    public void verifyTableは不足と値の異なるレコードを報告する() throws Throwable {
+        // Setup
+        DbUnitTester sut = DbUnitTester.forJdbc("org.h2.Driver", URL).schema("PUBLIC").create(twoUsers());
+        DefaultTable expected = usersTable();
+        expected.addRow(new Object[] { 1, "SHUJI" });
+        expected.addRow(new Object[] { 2, "tom" });
+        expected.addRow(new Object[] { 3, "mike" });
+        // Exercise
+        try {
+            run(sut, verifyTable(sut, expected));
+            fail();
+        } catch (AssertionError e) {
+            // Verify
+            assertThat(e.getMessage(), containsString("missing: 1, extra: 0, changed: 1"));
+            assertThat(e.getMessage(), containsString("[ID=3]"));
+            assertThat(e.getMessage(), containsString("NAME: expected <SHUJI> but was <shuji>"));
+        }
+    }
+
+    @Test
+    public void verifyTableは期待されるレコードの主キーの重複を報告する() throws Throwable {
+        // Setup
+        DbUnitTester sut = DbUnitTester.forJdbc("org.h2.Driver", URL).schema("PUBLIC").create(twoUsers());
+        DefaultTable expected = usersTable();
+        expected.addRow(new Object[] { 1, "shuji" });
+        expected.addRow(new Object[] { 2, "tom" });
+        expected.addRow(new Object[] { 2, "bob" });
+        // Exercise
+        try {
+            run(sut, verifyTable(sut, expected));
+            fail();
+        } catch (AssertionError e) {
+            // Verify
+            assertThat(e.getMessage(), is("Duplicate key in expected table 'users': [ID=2]"));
+        }
+    }
+
+    @Test
+    public void verifyTableはWHERE句に一致するレコードだけを検証する() throws Throwable {
+        // Setup
+        final DbUnitTester sut = DbUnitTester.forJdbc("org.h2.Driver", URL).schema("PUBLIC").create(twoUsers());
+        final DefaultTable expected = usersTable();
+        expected.addRow(new Object[] { 2, "tom" });
+        // Exercise & Verify
+        run(sut, new org.junit.runners.model.Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                sut.verifyTable("users", "id = 2", expected);
+                assertThat(sut.getTable("users", "id = 2").getRowCount(), is(1));
+            }
+        });
+    }
+
+    @Test
+    public void verifyRowsは期待されるレコードの主キーだけを検証する() throws Throwable {
+        // Setup
+        final DbUnitTester sut = DbUnitTester.forJdbc("org.h2.Driver", URL).schema("PUBLIC").create(twoUsers());
+        final DefaultTable expected = usersTable();
+        expected.addRow(new Object[] { 2, "TOM" });
+        expected.addRow(new Object[] { 3, "mike" });
+        // Exercise
+        try {
+            run(sut, new org.junit.runners.model.Statement() {
+                @Override
+                public void evaluate() throws Throwable {
+                    sut.verifyRows("users", expected);
+                }
+            });
+            fail();
+        } catch (AssertionError e) {
+            // Verify
+            assertThat(e.getMessage(), containsString("missing: 1, extra: 0, changed: 1"));
+            assertThat(e.getMessage(), containsString("[ID=3]"));
+            assertThat(e.getMessage(), containsString("NAME: expected <TOM> but was <tom>"));
+        }
+    }
+
+    @Test
+    public void verifyRowsはパラメータの上限を超える主キーを複数のクエリに分けて検証する() throws Throwable {
+        // Setup
+        int count = TableQuery.MAX_PARAMETERS * 2 + 1;
+        DefaultTable users = usersTable();
+        final DefaultTable expected = usersTable();
+        for (int id = 1; id <= count; id++) {
+            users.addRow(new Object[] { id, "user" + id });
+            expected.addRow(new Object[] { id, id == count ? "changed" : "user" + id });
+        }
+        expected.addRow(new Object[] { count + 1, "missing" });
+        final DbUnitTester sut = DbUnitTester.forJdbc("org.h2.Driver", URL).schema("PUBLIC")
+                .create(new DefaultDataSet(users));
+        // Exercise
+        try {
+            run(sut, new org.junit.runners.model.Statement() {
+                @Override
+                public void evaluate() throws Throwable {
+                    sut.verifyRows("users", expected);
+                }
+            });
+            fail();
+        } catch (AssertionError e) {
+            // Verify
+            assertThat(e.getMessage(), containsString("missing: 1, extra: 0, changed: 1"));
+            assertThat(e.getMessage(), containsString("[ID=" + (count + 1) + "]"));
+            assertThat(e.getMessage(), containsString("NAME: expected <changed> but was <user" + count + ">"));
+        }
+    }
+
+    @Test
+    public void テスト毎に借りるコネクションは1つ() throws Throwable {
+        // Setup
+        final DbUnitTester sut = DbUnitTester.forJdbc("org.h2.Driver", URL).schema("PUBLIC").create(twoUsers());
+        final DefaultTable expected = usersTable();
+        expected.addRow(new Object[] { 1, "shuji" });
+        expected.addRow(new Object[] { 2, "tom" });
+        long leases = ConnectionMetrics.getLeaseCount();
+        long connects = ConnectionMetrics.getConnectCount();
+        // Exercise
+        run(sut, new org.junit.runners.model.Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                sut.verifyTable("users", expected);
+                sut.getTable("users");
+                assertThat(sut.getConnection(), is(sameInstance(sut.getConnection())));
+            }
+        });
+        // Verify
+        assertThat(ConnectionMetrics.getLeaseCount() - leases, is(1L));
+        assertThat(ConnectionMetrics.getConnectCount() - connects, is(1L));
+        assertThat(sut.connection, is(nullValue()));
+    }
+
+    @Test
+    public void ワーカー毎に異なるデータベースにフィクスチャをセットアップする() throws Throwable {
+        // Setup
+        final DbUnitTester sut = DbUnitTester.forJdbc("org.h2.Driver", "jdbc:h2:mem:DbUnitTesterTest_{worker};"
+                + "DB_CLOSE_DELAY=-1;INIT=CREATE TABLE IF NOT EXISTS users (id INT PRIMARY KEY, name VARCHAR(32))")
+                .workers(2).create(oneUser());
+        final DbUnitTester other = DbUnitTester.forJdbc("org.h2.Driver", "jdbc:h2:mem:DbUnitTesterTest_{worker};"
+                + "DB_CLOSE_DELAY=-1;INIT=CREATE TABLE IF NOT EXISTS users (id INT PRIMARY KEY, name VARCHAR(32))")
+                .workers(2).create(oneUser());
+        final CountDownLatch latch = new CountDownLatch(2);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // Exercise
+            Future<String> first = executor.submit(insertUser(sut, latch));
+            Future<String> second = executor.submit(insertUser(other, latch));
+            // Verify
+            assertThat(first.get(), is(not(second.get())));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void フェーズ毎の時間をリスナーに通知する() throws Throwable {
+        // Setup
+        TimingReporter reporter = new TimingReporter();
+        final DbUnitTester sut = DbUnitTester.forJdbc("org.h2.Driver", URL).schema("PUBLIC").timing(reporter)
+                .create(twoUsers());
+        final DefaultTable expected = usersTable();
+        expected.addRow(new Object[] { 1, "shuji" });
+        expected.addRow(new Object[] { 2, "tom" });
+        // Exercise
+        run(sut, new org.junit.runners.model.Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                Thread.sleep(20);
+                sut.verifyTable("users", expected);
+            }
+        });
+        // Verify
+        assertThat(reporter.getTestCount(), is(1));
+        TestTiming timing = reporter.getSlowestTests().get(0);
+        assertThat(timing.getElapsedNanos(TestPhase.BODY) >= TimeUnit.MILLISECONDS.toNanos(20), is(true));
+        assertThat(timing.getElapsedNanos(TestPhase.SET_UP) > 0, is(true));
+        assertThat(timing.getElapsedNanos(TestPhase.VERIFY) > 0, is(true));
+        assertThat(timing.getElapsedNanos(TestPhase.CONNECTION) > 0, is(true));
+        assertThat(timing.getSetUpNanos().keySet().toString(), is("[users]"));
+        long phases = 0;
+        for (TestPhase phase : TestPhase.values()) {
+            phases += timing.getElapsedNanos(phase);
+        }
+        assertThat(phases <= timing.getElapsedNanos(), is(true));
+        assertThat(reporter.summary(), containsString("slowest set up tables:"));
+        assertThat(sut.timing, is(nullValue()));
+    }
+
+    @Test
+    public void 複数のフィクスチャは必要になった時に読み込む() throws Throwable {
+        // Setup
+        final DbUnitTester sut = DbUnitTester.forJdbc("org.h2.Driver", URL).schema("PUBLIC").create();
+        Description description = Description.createTestDescription(MultipleFixturesTest.class, "test");
+        // Exercise
+        org.junit.runners.model.Statement statement = sut.apply(new org.junit.runners.model.Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                assertThat(countUsers(sut.getConnection().getConnection()), is(2));
+            }
+        }, description);
+        // Verify
+        LazyCompositeDataSet dataSet = (LazyCompositeDataSet) sut.getDataSet();
+        assertThat(dataSet.getLoadedCount(), is(0));
+        statement.evaluate();
+        assertThat(dataSet.getLoadedCount(), is(2));
+    }
+
+    static Callable<String> insertUser(final DbUnitTester sut, final CountDownLatch latch) {
+        return new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                final String[] url = new String[1];
+                try {
+                    run(sut, new org.junit.runners.model.Statement() {
+                        @Override
+                        public void evaluate() throws Throwable {
+                            Connection conn = sut.getConnection().getConnection();
+                            try (Statement stat = conn.createStatement()) {
+                                stat.executeUpdate("INSERT INTO users VALUES (2, 'tom')");
+                            }
+                            latch.countDown();
+                            latch.await();
+                            assertThat(countUsers(conn), is(2));
+                            url[0] = conn.getMetaData().getURL();
+                        }
+                    });
+                } catch (Exception | Error e) {
+                    throw e;
+                } catch (Throwable e) {
+                    throw new AssertionError(e);
+                }
+                return url[0];
+            }
+        };
+    }
+
+    static DefaultTable usersTable() {
+        return new DefaultTable("users", new Column[] {
+                new Column("id", DataType.UNKNOWN), new Column("name", DataType.UNKNOWN) });
+    }
+
+    static IDataSet twoUsers() throws Exception {
+        DefaultTable table = usersTable();
+        table.addRow(new Object[] { 1, "shuji" });
+        table.addRow(new Object[] { 2, "tom" });
+        return new DefaultDataSet(table);
+    }
+
+    static org.junit.runners.model.Statement verifyTable(final DbUnitTester sut, final ITable expected) {
+        return new org.junit.runners.model.Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                sut.verifyTable("users", expected);
+            }
+        };
+    }
+
+    static void run(DbUnitTester sut, org.junit.runners.model.Statement statement) throws Throwable {
+        sut.apply(statement, Description.createTestDescription(DbUnitTesterTest.class, "test")).evaluate();
+    }
+
+    @ReadOnly
+    static class ReadOnlyTest {
+    }
+
+    @Fixture(resources = { "one_table.yaml", "roles_and_users.yaml" })
+    static class MultipleFixturesTest {
+    }
+
+    static void runReadOnly(DatabaseOperation operation, IDataSet dataSet) throws Throwable {
+        DbUnitTester sut = DbUnitTester.forJdbc("org.h2.Driver", URL).create(dataSet);
+        sut.setSetUpOperation(operation);
+        sut.apply(new org.junit.runners.model.Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+            }
+        }, Description.createTestDescription(ReadOnlyTest.class, "test")).evaluate();
+    }
+
+    static class CountingOperation extends DatabaseOperation {
+        int count = 0;
+
+        @Override
+        public void execute(IDatabaseConnection connection, IDataSet dataSet) throws DatabaseUnitException,
+                SQLException {
+            count++;
+            DatabaseOperation.CLEAN_INSERT.execute(connection, dataSet);
+        }
+    }
+
+    static int countUsers(Connection conn) throws Exception {
+        try (Statement stat = conn.createStatement(); ResultSet rs = stat.executeQuery("SELECT COUNT(*) FROM users")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
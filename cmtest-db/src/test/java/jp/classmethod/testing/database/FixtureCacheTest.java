@@ -0,0 +1,84 @@
+package jp.classmethod.testing.database;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.dbunit.dataset.IDataSet;
+import org.dbunit.dataset.ITable;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+@SuppressWarnings("javadoc")
+public class FixtureCacheTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Before
+    public void setUp() throws Exception {
+        FixtureCache.clear();
+    }
+
+    @Test
+    public void 同じリソースは一度だけ読み込まれる() throws Exception {
+        // Setup
+        URL url = getClass().getResource("one_table.yaml");
+        // Exercise
+        IDataSet first = FixtureCache.load(Fixture.Type.YAML, url);
+        IDataSet second = FixtureCache.load(Fixture.Type.YAML, url);
+        // Verify
+        assertThat(second, is(sameInstance(first)));
+        assertThat(FixtureCache.getMissCount(), is(1L));
+        assertThat(FixtureCache.getHitCount(), is(1L));
+        assertThat(FixtureCache.size(), is(1));
+    }
+
+    @Test
+    public void 異なるリソースは別々にキャッシュされる() throws Exception {
+        // Exercise
+        FixtureCache.load(Fixture.Type.YAML, getClass().getResource("one_table.yaml"));
+        FixtureCache.load(Fixture.Type.YAML, getClass().getResource("no_tables.yaml"));
+        // Verify
+        assertThat(FixtureCache.getMissCount(), is(2L));
+        assertThat(FixtureCache.getHitCount(), is(0L));
+        assertThat(FixtureCache.size(), is(2));
+    }
+
+    @Test
+    public void JARファイルのCSVフィクスチャを展開せずに読み込む() throws Exception {
+        // Setup
+        File jar = tmp.newFile("fixtures.jar");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+            putEntry(out, "fixtures/users/table-ordering.txt", "users\n");
+            putEntry(out, "fixtures/users/users.csv", "id,name\n1,shuji\n2,\"tom, jr.\"\n");
+        }
+        try (URLClassLoader loader = new URLClassLoader(new URL[] { jar.toURI().toURL() }, null)) {
+            URL url = loader.getResource("fixtures/users/" + FixtureCache.TABLE_ORDERING);
+            // Exercise
+            IDataSet dataSet = FixtureCache.load(Fixture.Type.CSV, url);
+            FixtureCache.load(Fixture.Type.CSV, url);
+            // Verify
+            ITable users = dataSet.getTable("users");
+            assertThat(users.getRowCount(), is(2));
+            assertThat(users.getValue(1, "name"), is((Object) "tom, jr."));
+            assertThat(FixtureCache.getHitCount(), is(1L));
+        }
+    }
+
+    static void putEntry(ZipOutputStream out, String name, String content) throws Exception {
+        out.putNextEntry(new ZipEntry(name));
+        out.write(content.getBytes(StandardCharsets.UTF_8));
+        out.closeEntry();
+    }
+}
@@ -0,0 +1,154 @@
+package jp.classmethod.testing.database;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.net.URL;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+
+import org.dbunit.database.DatabaseConnection;
+import org.dbunit.database.IDatabaseConnection;
+import org.dbunit.dataset.DataSetException;
+import org.dbunit.dataset.ITable;
+import org.dbunit.dataset.RowOutOfBoundsException;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class GeneratedDataSetTest {
+
+    static final URL GENERATED = GeneratedDataSetTest.class.getResource("generated.yaml");
+
+    @Test
+    public void 生成規則から行番号毎の値を生成する() throws Exception {
+        // Exercise
+        GeneratedDataSet sut = GeneratedDataSet.load(GENERATED);
+        // Verify
+        assertThat(sut.getTableNames().length, is(3));
+        ITable roles = sut.getTable("roles");
+        assertThat(roles.getRowCount(), is(3));
+        assertThat(roles.getValue(2, "id"), is((Object) 3L));
+        assertThat(roles.getValue(2, "name"), is((Object) "role-3"));
+        ITable users = sut.getTable("users");
+        assertThat(users.getRowCount(), is(1000));
+        assertThat(users.getValue(999, "id"), is((Object) 2098L));
+        assertThat(users.getValue(3, "status"), is((Object) "suspended"));
+        for (int row = 0; row < users.getRowCount(); row++) {
+            long roleId = (Long) users.getValue(row, "role_id");
+            assertThat(1 <= roleId && roleId <= 3, is(true));
+        }
+        try {
+            users.getValue(1000, "id");
+            fail("RowOutOfBoundsException expected");
+        } catch (RowOutOfBoundsException e) {
+        }
+    }
+
+    @Test
+    public void 乱数は同じシードと行番号に対して同じ値を返す() throws Exception {
+        // Setup
+        ITable users = GeneratedDataSet.load(GENERATED).getTable("users");
+        ITable other = GeneratedDataSet.load(GENERATED).getTable("users");
+        // Verify
+        boolean differs = false;
+        for (int row = 0; row < 100; row++) {
+            assertThat(users.getValue(row, "role_id"), is(other.getValue(row, "role_id")));
+            differs |= !users.getValue(row, "role_id").equals(users.getValue(0, "role_id"));
+        }
+        assertThat(differs, is(true));
+    }
+
+    @Test
+    public void 雛形のレコードを繰り返しキーをずらす() throws Exception {
+        // Exercise
+        ITable orders = GeneratedDataSet.load(GENERATED).getTable("orders");
+        // Verify
+        assertThat(orders.getRowCount(), is(6));
+        assertThat(orders.getValue(4, "id"), is((Object) 5L));
+        assertThat(orders.getValue(5, "id"), is((Object) 6L));
+        assertThat(orders.getValue(5, "user_id"), is((Object) 102));
+        assertThat(orders.getValue(5, "amount"), is((Object) 1000));
+    }
+
+    @Test
+    public void 倍率を掛けた件数を生成する() throws Exception {
+        // Exercise
+        GeneratedDataSet sut = new GeneratedDataSet(GeneratedDataSet.load(GENERATED).definition(), 0.5);
+        // Verify
+        assertThat(sut.getTable("roles").getRowCount(), is(2));
+        assertThat(sut.getTable("users").getRowCount(), is(500));
+        assertThat(sut.getTable("orders").getRowCount(), is(4));
+        assertThat(sut, is(not(GeneratedDataSet.load(GENERATED))));
+    }
+
+    @Test
+    public void 生成規則が正しくない場合は例外を送出する() throws Exception {
+        try {
+            GeneratedDataSet.load(new ByteArrayInputStream("users:\n  count: 1\n  columns:\n    id: {random: [3, 1]}\n"
+                    .getBytes("UTF-8")));
+            fail("DataSetException expected");
+        } catch (DataSetException e) {
+            assertThat(e.getMessage(), is("random of column id is empty: [3, 1]"));
+        }
+    }
+
+    @Test
+    public void テンプレートの行がマッピングでない場合は例外を送出する() throws Exception {
+        try {
+            GeneratedDataSet.load(new ByteArrayInputStream("users:\n  rows:\n  - {id: 1}\n  - 2\n"
+                    .getBytes("UTF-8")));
+            fail("DataSetException expected");
+        } catch (DataSetException e) {
+            assertThat(e.getMessage(), is("row 1 of table users must be a mapping: 2"));
+        }
+    }
+
+    @Test
+    public void オフセットがマッピングでない場合は例外を送出する() throws Exception {
+        try {
+            GeneratedDataSet.load(new ByteArrayInputStream("users:\n  rows:\n  - {id: 1}\n  offsets: [id]\n"
+                    .getBytes("UTF-8")));
+            fail("DataSetException expected");
+        } catch (DataSetException e) {
+            assertThat(e.getMessage(), is("offsets of table users must be a mapping: [id]"));
+        }
+    }
+
+    @Test
+    public void テンプレートの繰り返しが大きすぎる場合は例外を送出する() throws Exception {
+        try {
+            GeneratedDataSet.load(new ByteArrayInputStream(
+                    "users:\n  rows:\n  - {id: 1}\n  - {id: 2}\n  repeat: 2000000000\n".getBytes("UTF-8")));
+            fail("DataSetException expected");
+        } catch (DataSetException e) {
+            assertThat(e.getMessage(), is("rows of table users is too large: 4000000000"));
+        }
+    }
+
+    @Test
+    public void 生成したレコードをバッチ更新で挿入する() throws Exception {
+        // Setup
+        Class.forName("org.h2.Driver");
+        Connection conn = DriverManager.getConnection("jdbc:h2:mem:GeneratedDataSetTest");
+        try (Statement stat = conn.createStatement()) {
+            stat.execute("CREATE TABLE roles (id INT PRIMARY KEY, name VARCHAR(20))");
+            stat.execute("CREATE TABLE users (id INT PRIMARY KEY, role_id INT REFERENCES roles(id),"
+                    + " name VARCHAR(20), status VARCHAR(20))");
+            stat.execute("CREATE TABLE orders (id INT PRIMARY KEY, user_id INT REFERENCES users(id), amount INT)");
+        }
+        IDatabaseConnection connection = new DatabaseConnection(conn);
+        try {
+            // Exercise
+            BatchInsertOperation.CLEAN_INSERT.execute(connection, GeneratedDataSet.load(GENERATED));
+            // Verify
+            assertThat(connection.getRowCount("users"), is(1000));
+            assertThat(connection.getRowCount("orders"), is(6));
+        } finally {
+            connection.close();
+        }
+    }
+}
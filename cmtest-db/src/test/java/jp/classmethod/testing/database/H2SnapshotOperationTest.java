@@ -0,0 +1,132 @@
+package jp.classmethod.testing.database;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+
+import org.dbunit.database.DatabaseConnection;
+import org.dbunit.database.IDatabaseConnection;
+import org.dbunit.dataset.IDataSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class H2SnapshotOperationTest {
+
+    static final String URL = "jdbc:h2:mem:H2SnapshotOperationTest;DB_CLOSE_DELAY=-1";
+
+    IDatabaseConnection connection;
+
+    @Before
+    public void setUp() throws Exception {
+        Class.forName("org.h2.Driver");
+        Connection conn = DriverManager.getConnection(URL);
+        try (Statement stat = conn.createStatement()) {
+            stat.execute("CREATE TABLE IF NOT EXISTS users (id INT PRIMARY KEY, name VARCHAR(32))");
+            stat.execute("CREATE TABLE IF NOT EXISTS logs (id INT PRIMARY KEY)");
+            stat.execute("DELETE FROM logs");
+        }
+        connection = new DatabaseConnection(conn, "PUBLIC");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        connection.close();
+    }
+
+    @Test
+    public void 同じデータセットはスナップショットから復元する() throws Exception {
+        // Setup
+        H2SnapshotOperation sut = new H2SnapshotOperation(BatchInsertOperation.CLEAN_INSERT);
+        IDataSet dataSet = DbUnitTesterTest.twoUsers();
+        sut.execute(connection, dataSet);
+        try (Statement stat = connection.getConnection().createStatement()) {
+            stat.executeUpdate("DELETE FROM users WHERE id = 1");
+            stat.executeUpdate("INSERT INTO users VALUES (3, 'mike')");
+        }
+        // Exercise
+        sut.execute(connection, dataSet);
+        // Verify
+        assertThat(sut.getSnapshotCount(), is(1L));
+        assertThat(sut.getRestoreCount(), is(1L));
+        assertThat(DbUnitTesterTest.countUsers(connection.getConnection()), is(2));
+        TableDiff.assertEquals(DbUnitTesterTest.twoUsers().getTable("users"),
+                connection.createDataSet().getTable("users"), new String[] { "ID" });
+    }
+
+    @Test
+    public void スナップショットの数が上限を超えると古いものから破棄する() throws Exception {
+        // Setup
+        H2SnapshotOperation sut = new H2SnapshotOperation(BatchInsertOperation.CLEAN_INSERT, 1);
+        IDataSet first = DbUnitTesterTest.oneUser();
+        IDataSet second = DbUnitTesterTest.twoUsers();
+        // Exercise
+        sut.execute(connection, first);
+        sut.execute(connection, second);
+        sut.execute(connection, first);
+        // Verify
+        assertThat(sut.getSnapshotCount(), is(3L));
+        assertThat(sut.getRestoreCount(), is(0L));
+        assertThat(DbUnitTesterTest.countUsers(connection.getConnection()), is(1));
+    }
+
+    @Test
+    public void データセットに含まれないテーブルは復元しない() throws Exception {
+        // Setup
+        H2SnapshotOperation sut = new H2SnapshotOperation(BatchInsertOperation.CLEAN_INSERT);
+        IDataSet dataSet = DbUnitTesterTest.oneUser();
+        sut.execute(connection, dataSet);
+        try (Statement stat = connection.getConnection().createStatement()) {
+            stat.executeUpdate("INSERT INTO users VALUES (2, 'tom')");
+            stat.executeUpdate("INSERT INTO logs VALUES (1)");
+        }
+        // Exercise
+        sut.execute(connection, dataSet);
+        // Verify
+        assertThat(sut.getRestoreCount(), is(1L));
+        assertThat(DbUnitTesterTest.countUsers(connection.getConnection()), is(1));
+        assertThat(connection.getRowCount("logs"), is(1));
+    }
+
+    @Test
+    public void 内容が等しい別のデータセットもスナップショットから復元する() throws Exception {
+        // Setup
+        H2SnapshotOperation sut = new H2SnapshotOperation(BatchInsertOperation.CLEAN_INSERT);
+        IDataSet dataSet = YamlDataSet.load(getClass().getResourceAsStream("one_table.yaml"));
+        sut.execute(connection, dataSet);
+        // Exercise
+        sut.execute(connection, YamlDataSet.load(getClass().getResourceAsStream("one_table.yaml")));
+        // Verify
+        assertThat(sut.getSnapshotCount(), is(1L));
+        assertThat(sut.getRestoreCount(), is(1L));
+    }
+
+    @Test
+    public void コネクションのスキーマのテーブルを復元する() throws Exception {
+        // Setup
+        Connection conn = connection.getConnection();
+        try (Statement stat = conn.createStatement()) {
+            stat.execute("CREATE SCHEMA IF NOT EXISTS snap");
+            stat.execute("CREATE TABLE IF NOT EXISTS snap.users (id INT PRIMARY KEY, name VARCHAR(32))");
+            stat.execute("DELETE FROM users");
+        }
+        IDatabaseConnection snapConnection = new DatabaseConnection(conn, "SNAP");
+        H2SnapshotOperation sut = new H2SnapshotOperation(BatchInsertOperation.CLEAN_INSERT);
+        IDataSet dataSet = DbUnitTesterTest.twoUsers();
+        sut.execute(snapConnection, dataSet);
+        try (Statement stat = conn.createStatement()) {
+            stat.executeUpdate("DELETE FROM snap.users WHERE id = 1");
+            stat.executeUpdate("INSERT INTO users VALUES (3, 'mike')");
+        }
+        // Exercise
+        sut.execute(snapConnection, dataSet);
+        // Verify
+        assertThat(sut.getRestoreCount(), is(1L));
+        assertThat(snapConnection.getRowCount("users"), is(2));
+        assertThat(DbUnitTesterTest.countUsers(conn), is(1));
+    }
+}
@@ -0,0 +1,161 @@
+package jp.classmethod.testing.database;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.dbunit.database.DatabaseConnection;
+import org.dbunit.database.IDatabaseConnection;
+import org.dbunit.dataset.Column;
+import org.dbunit.dataset.DefaultDataSet;
+import org.dbunit.dataset.DefaultTable;
+import org.dbunit.dataset.IDataSet;
+import org.dbunit.dataset.ITable;
+import org.dbunit.dataset.datatype.DataType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class IncrementalOperationTest {
+
+    static final String URL = "jdbc:h2:mem:IncrementalOperationTest;DB_CLOSE_DELAY=-1";
+
+    IDatabaseConnection connection;
+
+    @Before
+    public void setUp() throws Exception {
+        Class.forName("org.h2.Driver");
+        Connection conn = DriverManager.getConnection(URL);
+        try (Statement stat = conn.createStatement()) {
+            stat.execute("DROP ALL OBJECTS");
+            stat.execute("CREATE TABLE users (id INT PRIMARY KEY, name VARCHAR(32))");
+            stat.execute("CREATE TABLE logs (message VARCHAR(32))");
+            stat.execute("CREATE TABLE items (id INT PRIMARY KEY, user_id INT REFERENCES users(id))");
+        }
+        connection = new DatabaseConnection(conn, "PUBLIC");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        connection.close();
+    }
+
+    @Test
+    public void 差分のレコードだけを削除更新挿入する() throws Exception {
+        // Setup
+        IncrementalOperation sut = new IncrementalOperation(2);
+        IDataSet dataSet = users();
+        sut.execute(connection, dataSet);
+        execute("UPDATE users SET name = 'TOM' WHERE id = 2");
+        execute("DELETE FROM users WHERE id = 3");
+        execute("INSERT INTO users VALUES (4, 'mike')");
+        // Exercise
+        sut.execute(connection, dataSet);
+        // Verify
+        assertThat(sut.getInsertCount(), is(4L));
+        assertThat(sut.getUpdateCount(), is(1L));
+        assertThat(sut.getDeleteCount(), is(1L));
+        assertThat(sut.getUnchangedCount(), is(1L));
+        TableDiff.assertEquals(users().getTable("users"), connection.createDataSet().getTable("users"),
+                new String[] { "ID" });
+    }
+
+    @Test
+    public void 主キーのないテーブルは全レコードを挿入し直す() throws Exception {
+        // Setup
+        IncrementalOperation sut = IncrementalOperation.CLEAN_INSERT;
+        DefaultTable logs = new DefaultTable("logs", new Column[] { new Column("message", DataType.UNKNOWN) });
+        logs.addRow(new Object[] { "started" });
+        execute("INSERT INTO logs VALUES ('old')");
+        // Exercise
+        sut.execute(connection, new DefaultDataSet(logs));
+        // Verify
+        assertThat(connection.getRowCount("logs"), is(1));
+        assertThat(connection.createDataSet().getTable("logs").getValue(0, "message"), is((Object) "started"));
+    }
+
+    @Test
+    public void 外部キー制約で差分の更新に失敗した場合は全レコードを挿入し直す() throws Exception {
+        // Setup
+        IncrementalOperation sut = new IncrementalOperation(10);
+        DefaultTable items = new DefaultTable("items", new Column[] {
+                new Column("id", DataType.UNKNOWN), new Column("user_id", DataType.UNKNOWN) });
+        items.addRow(new Object[] { "1", "1" });
+        IDataSet dataSet = new DefaultDataSet(new DefaultTable[] { (DefaultTable) users().getTable("users"), items });
+        sut.execute(connection, dataSet);
+        execute("INSERT INTO users VALUES (9, 'mike')");
+        execute("UPDATE items SET user_id = 9");
+        // Exercise
+        sut.execute(connection, dataSet);
+        // Verify
+        assertThat(sut.getReloadCount(), is(1L));
+        assertThat(connection.getRowCount("users"), is(3));
+        assertThat(connection.createDataSet().getTable("items").getValue(0, "user_id"), is((Object) 1));
+    }
+
+    @Test
+    public void 値のないカラムを含むテーブルは全レコードを挿入し直す() throws Exception {
+        // Setup
+        IncrementalOperation sut = IncrementalOperation.CLEAN_INSERT;
+        sut.execute(connection, users());
+        DefaultTable table = DbUnitTesterTest.usersTable();
+        table.addRow(new Object[] { "1", "shuji" });
+        table.addRow(new Object[] { "2", ITable.NO_VALUE });
+        // Exercise
+        sut.execute(connection, new DefaultDataSet(table));
+        // Verify
+        assertThat(sut.getUnchangedCount(), is(0L));
+        assertThat(connection.getRowCount("users"), is(2));
+        assertThat(connection.createDataSet().getTable("users").getValue(1, "name"), is((Object) null));
+    }
+
+    @Test
+    public void 差分の適用に成功した場合はセーブポイントを解放する() throws Exception {
+        // Setup
+        final Connection conn = connection.getConnection();
+        final AtomicInteger released = new AtomicInteger();
+        Connection proxy = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { Connection.class }, new InvocationHandler() {
+
+                    @Override
+                    public Object invoke(Object p, Method method, Object[] args) throws Throwable {
+                        if (method.getName().equals("releaseSavepoint")) released.incrementAndGet();
+                        try {
+                            return method.invoke(conn, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    }
+                });
+        conn.setAutoCommit(false);
+        IncrementalOperation sut = new IncrementalOperation(2);
+        // Exercise
+        sut.execute(new DatabaseConnection(proxy, "PUBLIC"), users());
+        // Verify
+        assertThat(released.get(), is(1));
+        assertThat(connection.getRowCount("users"), is(3));
+    }
+
+    static IDataSet users() throws Exception {
+        DefaultTable table = DbUnitTesterTest.usersTable();
+        table.addRow(new Object[] { "1", "shuji" });
+        table.addRow(new Object[] { "2", "tom" });
+        table.addRow(new Object[] { "3", "bob" });
+        return new DefaultDataSet(table);
+    }
+
+    void execute(String sql) throws Exception {
+        try (Statement stat = connection.getConnection().createStatement()) {
+            stat.executeUpdate(sql);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package jp.classmethod.testing.database;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.net.URL;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+
+import org.dbunit.database.DatabaseConnection;
+import org.dbunit.database.IDatabaseConnection;
+import org.dbunit.dataset.ITable;
+import org.dbunit.dataset.ITableIterator;
+import org.dbunit.dataset.RowOutOfBoundsException;
+import org.dbunit.operation.DatabaseOperation;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class LazyCompositeDataSetTest {
+
+    static final URL USERS = LazyCompositeDataSetTest.class.getResource("one_table.yaml");
+    static final URL ROLES_AND_USERS = LazyCompositeDataSetTest.class.getResource("roles_and_users.yaml");
+
+    @Test
+    public void イテレータが進んだ時にリソースを読み込み同じ名前のテーブルを連結する() throws Exception {
+        // Setup
+        LazyCompositeDataSet sut = new LazyCompositeDataSet(Fixture.Type.YAML, USERS, ROLES_AND_USERS);
+        assertThat(sut.getLoadedCount(), is(0));
+        // Exercise
+        ITableIterator iterator = sut.iterator();
+        // Verify
+        assertThat(iterator.next(), is(true));
+        ITable users = iterator.getTable();
+        assertThat(users.getTableMetaData().getTableName(), is("users"));
+        assertThat(users.getValue(0, "name"), is((Object) "shuji"));
+        assertThat(sut.getLoadedCount(), is(1));
+        assertThat(users.getValue(1, "name"), is((Object) "tom"));
+        assertThat(sut.getLoadedCount(), is(2));
+        try {
+            users.getValue(2, "name");
+            fail("RowOutOfBoundsException expected");
+        } catch (RowOutOfBoundsException e) {
+        }
+        assertThat(iterator.next(), is(true));
+        assertThat(iterator.getTableMetaData().getTableName(), is("roles"));
+        assertThat(iterator.next(), is(false));
+    }
+
+    @Test
+    public void テーブル名だけを参照する削除ではリソースを読み込まない() throws Exception {
+        // Setup
+        LazyCompositeDataSet sut = new LazyCompositeDataSet(Fixture.Type.YAML, USERS, ROLES_AND_USERS);
+        Class.forName("org.h2.Driver");
+        Connection conn = DriverManager.getConnection("jdbc:h2:mem:LazyCompositeDataSetTest");
+        try (Statement stat = conn.createStatement()) {
+            stat.execute("CREATE TABLE roles (id INT PRIMARY KEY, name VARCHAR(20))");
+            stat.execute("CREATE TABLE users (id INT PRIMARY KEY, name VARCHAR(20))");
+            stat.execute("INSERT INTO users VALUES (9, 'old')");
+        }
+        IDatabaseConnection connection = new DatabaseConnection(conn);
+        try {
+            // Exercise
+            DatabaseOperation.DELETE_ALL.execute(connection, sut);
+            // Verify
+            assertThat(connection.getRowCount("users"), is(0));
+            assertThat(sut.getTableNames().length, is(2));
+            assertThat(sut.getLoadedCount(), is(0));
+            assertThat(sut.getTable("USERS").getRowCount(), is(2));
+            assertThat(sut.getLoadedCount(), is(2));
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void 同じリソースのデータセットは読み込まずに等しいと判定する() throws Exception {
+        // Setup
+        LazyCompositeDataSet sut = new LazyCompositeDataSet(Fixture.Type.YAML, USERS, ROLES_AND_USERS);
+        // Exercise
+        LazyCompositeDataSet same = new LazyCompositeDataSet(Fixture.Type.YAML, USERS, ROLES_AND_USERS);
+        LazyCompositeDataSet reversed = new LazyCompositeDataSet(Fixture.Type.YAML, ROLES_AND_USERS, USERS);
+        // Verify
+        assertThat(sut.equals(same), is(true));
+        assertThat(sut.hashCode(), is(same.hashCode()));
+        assertThat(sut, is(not(reversed)));
+        assertThat(sut.getLoadedCount(), is(0));
+    }
+}
@@ -0,0 +1,133 @@
+package jp.classmethod.testing.database;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.dbunit.database.DatabaseConnection;
+import org.dbunit.database.IDatabaseConnection;
+import org.dbunit.dataset.Column;
+import org.dbunit.dataset.DefaultDataSet;
+import org.dbunit.dataset.DefaultTable;
+import org.dbunit.dataset.IDataSet;
+import org.dbunit.dataset.ITable;
+import org.dbunit.dataset.datatype.DataType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class ParallelInsertOperationTest {
+
+    static final String URL = "jdbc:h2:mem:ParallelInsertOperationTest;DB_CLOSE_DELAY=-1";
+
+    IDatabaseConnection connection;
+    ParallelInsertOperation sut;
+
+    @Before
+    public void setUp() throws Exception {
+        Class.forName("org.h2.Driver");
+        Connection conn = DriverManager.getConnection(URL);
+        try (Statement stat = conn.createStatement()) {
+            stat.execute("DROP ALL OBJECTS");
+            stat.execute("CREATE TABLE roles (id INT PRIMARY KEY)");
+            stat.execute("CREATE TABLE items (id INT PRIMARY KEY)");
+            stat.execute("CREATE TABLE users (id INT PRIMARY KEY, role_id INT REFERENCES roles(id))");
+        }
+        connection = new DatabaseConnection(conn, "PUBLIC");
+        sut = ParallelInsertOperation.cleanInsert(DbUnitTester.forJdbc("org.h2.Driver", URL).schema("PUBLIC")
+                .create().connectionManager, 2);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        connection.close();
+    }
+
+    @Test
+    public void 外部キーで依存しないテーブルを同じ段に並べる() throws Exception {
+        // Setup
+        IDataSet dataSet = dataSet();
+        List<ITable> tables = new ArrayList<>();
+        for (String name : dataSet.getTableNames()) {
+            tables.add(dataSet.getTable(name));
+        }
+        // Exercise
+        List<List<ITable>> actual = sut.levels(connection, connection.createDataSet(), tables);
+        // Verify
+        assertThat(actual.size(), is(2));
+        assertThat(names(actual.get(0)), is("[roles, items]"));
+        assertThat(names(actual.get(1)), is("[users]"));
+    }
+
+    @Test
+    public void 全レコードを削除して並列に挿入する() throws Exception {
+        // Setup
+        sut.execute(connection, dataSet());
+        // Exercise
+        sut.execute(connection, dataSet());
+        // Verify
+        assertThat(connection.getRowCount("roles"), is(2));
+        assertThat(connection.getRowCount("items"), is(1));
+        assertThat(connection.getRowCount("users"), is(1));
+    }
+
+    @Test
+    public void 挿入に使ったスレッドはセットアップの後に終了する() throws Exception {
+        // Exercise
+        for (int i = 0; i < 5; i++) {
+            sut.execute(connection, dataSet());
+        }
+        // Verify
+        long deadline = System.currentTimeMillis() + 5000;
+        while (insertThreads() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(insertThreads(), is(0));
+    }
+
+    @Test
+    public void オートコミットが無効な場合はセットアップ用のコネクションで挿入する() throws Exception {
+        // Setup
+        connection.getConnection().setAutoCommit(false);
+        // Exercise
+        sut.execute(connection, dataSet());
+        // Verify
+        assertThat(connection.getRowCount("users"), is(1));
+        connection.getConnection().rollback();
+        assertThat(connection.getRowCount("users"), is(0));
+    }
+
+    static IDataSet dataSet() throws Exception {
+        DefaultTable users = new DefaultTable("users", new Column[] {
+                new Column("id", DataType.UNKNOWN), new Column("role_id", DataType.UNKNOWN) });
+        users.addRow(new Object[] { "1", "2" });
+        DefaultTable roles = new DefaultTable("roles", new Column[] { new Column("id", DataType.UNKNOWN) });
+        roles.addRow(new Object[] { "1" });
+        roles.addRow(new Object[] { "2" });
+        DefaultTable items = new DefaultTable("items", new Column[] { new Column("id", DataType.UNKNOWN) });
+        items.addRow(new Object[] { "1" });
+        return new DefaultDataSet(new ITable[] { users, roles, items });
+    }
+
+    static int insertThreads() {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.isAlive() && thread.getName().startsWith("cmtest-parallel-insert-")) count++;
+        }
+        return count;
+    }
+
+    static String names(List<ITable> tables) {
+        List<String> names = new ArrayList<>();
+        for (ITable table : tables) {
+            names.add(table.getTableMetaData().getTableName());
+        }
+        return names.toString();
+    }
+}
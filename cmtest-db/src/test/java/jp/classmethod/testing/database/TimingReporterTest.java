@@ -0,0 +1,83 @@
+package jp.classmethod.testing.database;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runner.Result;
+import org.junit.runners.model.Statement;
+
+@SuppressWarnings("javadoc")
+public class TimingReporterTest {
+
+    @Test
+    public void 時間のかかったテストとテーブルを上限まで報告する() throws Exception {
+        // Setup
+        TimingReporter sut = new TimingReporter(2);
+        // Exercise
+        sut.testFinished(timing("fast", 1, "users", 1));
+        sut.testFinished(timing("slow", 30, "users", 20));
+        sut.testFinished(timing("middle", 10, "items", 5));
+        // Verify
+        assertThat(sut.getTestCount(), is(3));
+        assertThat(sut.getSlowestTests().size(), is(2));
+        assertThat(sut.getSlowestTests().get(0).getDescription().getMethodName(), is("slow"));
+        assertThat(sut.getSlowestTests().get(1).getDescription().getMethodName(), is("middle"));
+        String summary = sut.summary();
+        assertThat(summary, containsString("timing: 3 tests"));
+        assertThat(summary, containsString("users: 21.0ms (2 times, max 20.0ms)"));
+        assertThat(summary.indexOf("users:") < summary.indexOf("items:"), is(true));
+    }
+
+    @Test
+    public void resetで集計結果を破棄する() throws Exception {
+        // Setup
+        TimingReporter sut = new TimingReporter();
+        sut.testFinished(timing("test", 1, "users", 1));
+        // Exercise
+        sut.reset();
+        // Verify
+        assertThat(sut.getTestCount(), is(0));
+        assertThat(sut.getSlowestTests().isEmpty(), is(true));
+        assertThat(sut.summary().contains("slowest"), is(false));
+    }
+
+    @Test
+    public void ClassRuleとして指定するとテストクラスの実行後に集計結果を破棄する() throws Throwable {
+        // Setup
+        final TimingReporter sut = new TimingReporter();
+        Statement statement = new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                sut.testFinished(timing("test", 1, "users", 1));
+            }
+        };
+        // Exercise
+        sut.apply(statement, Description.createSuiteDescription(TimingReporterTest.class)).evaluate();
+        // Verify
+        assertThat(sut.getTestCount(), is(0));
+    }
+
+    @Test
+    public void TimingRunListenerはテストの実行の終了時に共有のリスナーの集計結果を出力して破棄する() throws Exception {
+        // Setup
+        TimingReporter sut = TimingReporter.getDefault();
+        sut.testFinished(timing("test1", 1, "users", 1));
+        sut.testFinished(new TestTiming(Description.createTestDescription(TimingReporter.class, "other"), 0));
+        assertThat(sut.getTestCount(), is(2));
+        // Exercise
+        new TimingRunListener().testRunFinished(new Result());
+        // Verify
+        assertThat(sut.getTestCount(), is(0));
+    }
+
+    static TestTiming timing(String name, long loadMillis, String tableName, long setUpMillis) {
+        TestTiming timing = new TestTiming(Description.createTestDescription(TimingReporterTest.class, name),
+                loadMillis * 1000000L);
+        timing.addSetUp(tableName, setUpMillis * 1000000L);
+        timing.finish();
+        return timing;
+    }
+}
@@ -0,0 +1,63 @@
+package jp.classmethod.testing.database;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class WorkersTest {
+
+    @Test
+    public void スレッドは前回と同じワーカーを借りる() throws Exception {
+        // Setup
+        final Workers sut = new Workers(3);
+        sut.lease();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Callable<Integer> leaseAndRelease = new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                int worker = sut.lease();
+                sut.release();
+                return worker;
+            }
+        };
+        try {
+            executor.submit(leaseAndRelease).get();
+            sut.release();
+            // Exercise
+            int actual = executor.submit(leaseAndRelease).get();
+            // Verify
+            assertThat(actual, is(1));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void 同時に実行されるスレッドには異なるワーカーを割り当てる() throws Exception {
+        // Setup
+        final Workers sut = new Workers(2);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Callable<Integer> lease = new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    return sut.lease();
+                }
+            };
+            // Exercise
+            Future<Integer> first = executor.submit(lease);
+            Future<Integer> second = executor.submit(lease);
+            // Verify
+            assertThat(first.get() + second.get(), is(1));
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
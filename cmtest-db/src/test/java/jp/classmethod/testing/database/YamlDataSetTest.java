@@ -1,14 +1,19 @@
 package jp.classmethod.testing.database;
 
+import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -16,6 +21,9 @@ import java.util.Map;
 import jp.classmethod.testing.database.YamlDataSet.YamlTable;
 import jp.classmethod.testing.verifier.IterableVerifier;
 
+import org.dbunit.dataset.CachedDataSet;
+import org.dbunit.dataset.Column;
+import org.dbunit.dataset.DataSetException;
 import org.dbunit.dataset.ITable;
 import org.dbunit.dataset.ITableIterator;
 import org.junit.Test;
@@ -70,6 +78,129 @@ public class YamlDataSetTest {
         verify(actual.reverseIterator(), tables);
     }
 
+    @Test
+    public void nullや型の異なる値を含むカラムの値を取得する() throws Exception {
+        // Setup
+        Map<String, Object> row1 = new LinkedHashMap<>();
+        row1.put("id", 1);
+        row1.put("score", 1L);
+        row1.put("admin", true);
+        Map<String, Object> row2 = new LinkedHashMap<>();
+        row2.put("id", null);
+        row2.put("score", "high");
+        row2.put("admin", null);
+        // Exercise
+        YamlTable actual = new YamlTable("users", Arrays.asList(row1, row2));
+        // Verify
+        assertThat(actual.getRowCount(), is(2));
+        assertThat(actual.getValue(0, "id"), is((Object) 1));
+        assertThat(actual.getValue(1, "id"), is(nullValue()));
+        assertThat(actual.getValue(0, "score"), is((Object) 1L));
+        assertThat(actual.getValue(1, "score"), is((Object) "high"));
+        assertThat(actual.getValue(0, "admin"), is((Object) true));
+        assertThat(actual.getValue(1, "admin"), is(nullValue()));
+    }
+
+    @Test
+    public void カラムはすべてのレコードのカラムの和集合となり_大文字小文字を区別しない() throws Exception {
+        // Setup
+        Map<String, Object> row1 = new LinkedHashMap<>();
+        row1.put("id", 1);
+        Map<String, Object> row2 = new LinkedHashMap<>();
+        row2.put("ID", 2);
+        row2.put("name", "tom");
+        // Exercise
+        YamlTable actual = new YamlTable("users", Arrays.asList(row1, row2));
+        // Verify
+        Column[] columns = actual.getTableMetaData().getColumns();
+        assertThat(columns.length, is(2));
+        assertThat(columns[0].getColumnName(), is("id"));
+        assertThat(columns[1].getColumnName(), is("name"));
+        assertThat(actual.getTableMetaData().getColumnIndex("NAME"), is(1));
+        assertThat(actual.getValue(1, "id"), is((Object) 2));
+        assertThat(actual.getValue(0, "NAME"), is(nullValue()));
+        assertThat(actual.getValue(1, "Name"), is((Object) "tom"));
+    }
+
+    @Test
+    public void streamではテーブルとレコードを順次読み込む() throws Exception {
+        // Setup
+        InputStream input = this.getClass().getResourceAsStream("one_table.yaml");
+        // Exercise
+        ITableIterator actual = YamlDataSet.stream(input).iterator();
+        // Verify
+        assertThat(actual.next(), is(true));
+        assertThat(actual.getTableMetaData().getTableName(), is("users"));
+        ITable table = actual.getTable();
+        assertThat(table.getValue(0, "id"), is((Object) 1));
+        assertThat(table.getValue(0, "name"), is((Object) "shuji"));
+        assertThat(actual.next(), is(false));
+    }
+
+    @Test
+    public void streamで空ファイルの場合_テーブルはない() throws Exception {
+        // Setup
+        InputStream input = this.getClass().getResourceAsStream("no_tables.yaml");
+        // Exercise
+        ITableIterator actual = YamlDataSet.stream(input).iterator();
+        // Verify
+        assertThat(actual.next(), is(false));
+    }
+
+    @Test
+    public void streamでデータのないテーブルの場合() throws Exception {
+        // Setup
+        InputStream input = this.getClass().getResourceAsStream("no_data_table.yaml");
+        // Exercise
+        ITableIterator actual = YamlDataSet.stream(input).iterator();
+        // Verify
+        assertThat(actual.next(), is(true));
+        assertThat(actual.getTableMetaData().getTableName(), is("users"));
+        assertThat(actual.getTableMetaData().getColumns().length, is(0));
+        assertThat(actual.next(), is(false));
+    }
+
+    @Test
+    public void streamで最初のレコードにないカラムがある場合_行とカラムを示す例外をスローする() throws Exception {
+        // Setup
+        InputStream input = new ByteArrayInputStream(
+                "users:\n- id: 1\n  name: shuji\n- id: 2\n  nmae: tom\n".getBytes("UTF-8"));
+        // Exercise
+        try {
+            new CachedDataSet(new YamlProducer(input));
+            fail();
+        } catch (DataSetException e) {
+            // Verify
+            assertThat(e.getMessage(), containsString("Unknown column 'nmae' in row 1 of table 'users'"));
+        }
+    }
+
+    @Test
+    public void 数値のカラムは値とnullを保持し_同じ内容のテーブルと等しい() throws Exception {
+        // Setup
+        String yaml = "items:\n- id: 1000\n  price: 1.5\n- id: 2000\n  price: null\n";
+        // Exercise
+        ITable table = YamlDataSet.load(new ByteArrayInputStream(yaml.getBytes("UTF-8"))).getTable("items");
+        // Verify
+        assertThat(table.getValue(0, "id"), is((Object) 1000));
+        assertThat(table.getValue(0, "price"), is((Object) 1.5));
+        assertThat(table.getValue(1, "price"), is(nullValue()));
+        ITable other = YamlDataSet.load(new ByteArrayInputStream(yaml.getBytes("UTF-8"))).getTable("items");
+        assertThat(other, is(table));
+        assertThat(other.hashCode(), is(table.hashCode()));
+    }
+
+    @Test
+    public void tableNamesはトップレベルのキーだけを読み込む() throws Exception {
+        // Setup
+        InputStream input = new ByteArrayInputStream(
+                "users:\n- id: 1\n  tags: {a: [1, 2]}\nempty:\nroles: []\n".getBytes("UTF-8"));
+        // Exercise
+        String[] actual = YamlProducer.tableNames(input);
+        // Verify
+        assertThat(actual, is(new String[] { "users", "empty", "roles" }));
+    }
+
     static void verify(ITableIterator actual, List<ITable> expected) throws Exception {
         List<ITable> actualTables = new LinkedList<>();
         while (actual.next()) {
@@ -8,6 +8,7 @@ import java.util.List;
 
 import jp.classmethod.testing.database.DbUnitTester;
 import jp.classmethod.testing.database.Fixture;
+import jp.classmethod.testing.database.ReadOnly;
 import jp.classmethod.testing.database.Fixture.Type;
 import jp.classmethod.testing.database.YamlDataSet;
 
@@ -25,6 +26,7 @@ public class DataSourceUserRepositoryTest {
         @Rule
         public DbUnitTester tester = createDbUnitTester();
 
+        @ReadOnly
         @Test
         public void findAllは0件のレコードを返す() throws Exception {
             // Setup
@@ -42,6 +44,7 @@ public class DataSourceUserRepositoryTest {
         @Rule
         public DbUnitTester tester = createDbUnitTester();
 
+        @ReadOnly
         @Test
         public void findAllは2件のレコードを返す() throws Exception {
             // Setup
@@ -74,6 +77,7 @@ public class DataSourceUserRepositoryTest {
         @Rule
         public DbUnitTester tester = createDbUnitTester();
 
+        @ReadOnly
         @Test
         public void findAllは2件のレコードを返す() throws Exception {
             // Setup
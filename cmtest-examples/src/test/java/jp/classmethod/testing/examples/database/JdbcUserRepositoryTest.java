@@ -8,6 +8,7 @@ import java.util.List;
 
 import jp.classmethod.testing.database.DbUnitTester;
 import jp.classmethod.testing.database.Fixture;
+import jp.classmethod.testing.database.ReadOnly;
 import jp.classmethod.testing.database.YamlDataSet;
 
 import org.dbunit.dataset.IDataSet;
@@ -24,6 +25,7 @@ public class JdbcUserRepositoryTest {
         @Rule
         public DbUnitTester tester = createDbUnitTester();
 
+        @ReadOnly
         @Test
         public void findAllは0件のレコードを返す() throws Exception {
             // Setup
@@ -41,6 +43,7 @@ public class JdbcUserRepositoryTest {
         @Rule
         public DbUnitTester tester = createDbUnitTester();
 
+        @ReadOnly
         @Test
         public void findAllは2件のレコードを返す() throws Exception {
             // Setup